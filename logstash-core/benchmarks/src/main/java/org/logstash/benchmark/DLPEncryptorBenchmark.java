@@ -0,0 +1,81 @@
+package org.logstash.benchmark;
+
+import com.bnp.logstash.dlp.DLPEncryptor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.logstash.Event;
+import org.logstash.plugins.ConfigurationImpl;
+import org.logstash.plugins.ContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Hashing throughput of {@link DLPEncryptor}, serial and fork-join batches. Run {@link #main(String[])}
+ * to get allocation rates from the GC profiler as well.
+ */
+@Warmup(iterations = 3, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class DLPEncryptorBenchmark {
+
+    @Param({"125", "8192"})
+    public int batchSize;
+
+    @Param({"16", "256"})
+    public int valueLength;
+
+    @Param({"SHA256", "SHA512", "MD5"})
+    public String algorithm;
+
+    @Param({"0", "4096"})
+    public long parallelBatchSize;
+
+    private DLPEncryptor encryptor;
+
+    private String[] values;
+
+    private List<co.elastic.logstash.api.Event> events;
+
+    @Setup
+    public void setUp() {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPEncryptor.HASH_ALGORITHM_CONFIG.name(), algorithm);
+        config.put(DLPEncryptor.PARALLEL_BATCH_SIZE_CONFIG.name(), parallelBatchSize);
+        encryptor = new DLPEncryptor("bench", new ConfigurationImpl(config), new ContextImpl(null));
+        values = new String[batchSize];
+        events = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; ++i) {
+            values[i] = DlpBenchmarkData.message(valueLength, 1, 1, i);
+            events.add(new Event());
+        }
+    }
+
+    @Benchmark
+    public final void filter(final Blackhole blackhole) {
+        for (int i = 0; i < batchSize; ++i) {
+            events.get(i).setField("message", values[i]);
+        }
+        blackhole.consume(encryptor.filter(events, e -> { }));
+    }
+
+    public static void main(final String... args) throws RunnerException {
+        DlpBenchmarkData.runWithGcProfiler(DLPEncryptorBenchmark.class);
+    }
+}
@@ -0,0 +1,113 @@
+package org.logstash.benchmark;
+
+import com.bnp.logstash.dlp.DLPProcessor;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.logstash.Event;
+import org.logstash.plugins.ConfigurationImpl;
+import org.logstash.plugins.ContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Masking throughput of {@link DLPProcessor}. Run {@link #main(String[])} to get allocation rates from
+ * the GC profiler as well.
+ *
+ * <p>A referential of 10 million hashes is left out of the default run because writing its file takes minutes for
+ * every combination of parameters. Opt in with {@code -p referentialSize=10000000}. A SHA256 table of that size takes
+ * 512 MB of direct memory. 50 million hashes is not supported: the table would need 2^27 slots, which exceeds the
+ * 2 GB limit of a single digest table.</p>
+ */
+@Warmup(iterations = 3, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class DLPProcessorBenchmark {
+
+    private static final int EVENTS_PER_INVOCATION = 125;
+
+    private static final String APP = "bench";
+
+    @Param({"128", "4096"})
+    public int messageLength;
+
+    @Param({"16", "128"})
+    public int tokenCount;
+
+    @Param({"10000", "1000000"})
+    public int referentialSize;
+
+    @Param({"SHA256", "MD5"})
+    public String algorithm;
+
+    @Param({"0", "4096"})
+    public long tokenCacheSize;
+
+    private File directory;
+
+    private DLPProcessor processor;
+
+    private String[] messages;
+
+    private List<co.elastic.logstash.api.Event> events;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDir();
+        DlpBenchmarkData.writeReferential(directory.toPath(), APP, referentialSize, algorithm);
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPProcessor.HASH_REFERENCE_PATH_CONFIG.name(), directory.getAbsolutePath() + File.separator);
+        config.put(DLPProcessor.HASH_ALGORITHM_CONFIG.name(), algorithm);
+        config.put(DLPProcessor.APPLICATION_CODE_FIELD_CONFIG.name(), "app");
+        config.put(DLPProcessor.TOKEN_CACHE_SIZE_CONFIG.name(), tokenCacheSize);
+        processor = new DLPProcessor("bench", new ConfigurationImpl(config), new ContextImpl(null));
+        messages = new String[EVENTS_PER_INVOCATION];
+        events = new ArrayList<>(EVENTS_PER_INVOCATION);
+        for (int i = 0; i < EVENTS_PER_INVOCATION; ++i) {
+            messages[i] = DlpBenchmarkData.message(messageLength, tokenCount, referentialSize, i);
+            final Event event = new Event();
+            event.setField("app", APP);
+            events.add(event);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public final void filter(final Blackhole blackhole) {
+        for (int i = 0; i < EVENTS_PER_INVOCATION; ++i) {
+            events.get(i).setField("message", messages[i]);
+        }
+        blackhole.consume(processor.filter(events, e -> { }));
+    }
+
+    public static void main(final String... args) throws RunnerException {
+        DlpBenchmarkData.runWithGcProfiler(DLPProcessorBenchmark.class);
+    }
+}
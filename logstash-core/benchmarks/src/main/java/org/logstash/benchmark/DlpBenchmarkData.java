@@ -0,0 +1,73 @@
+package org.logstash.benchmark;
+
+import com.bnp.logstash.dlp.TokenDigester;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Test data shared by the DLP benchmarks.
+ */
+final class DlpBenchmarkData {
+
+    private DlpBenchmarkData() {
+    }
+
+    /**
+     * @return the i-th value of the generated referentials.
+     */
+    static String sensitiveValue(final int i) {
+        return "4970" + (100_000_000 + i);
+    }
+
+    /**
+     * Writes {@code <dir>/<app>.data} holding the hex digests of the first {@code size} sensitive values.
+     */
+    static Path writeReferential(final Path dir, final String app, final int size, final String algorithm)
+        throws IOException {
+        final Path data = dir.resolve(app + ".data");
+        final TokenDigester digester = new TokenDigester(algorithm);
+        try (BufferedWriter writer = Files.newBufferedWriter(data, StandardCharsets.ISO_8859_1)) {
+            for (int i = 0; i < size; ++i) {
+                writer.write(digester.hexDigest(sensitiveValue(i)));
+                writer.newLine();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Builds a message of about {@code length} chars split into {@code tokenCount} tokens, one in ten
+     * of them being a value of a referential of {@code referentialSize} entries.
+     */
+    static String message(final int length, final int tokenCount, final int referentialSize, final int seed) {
+        final StringBuilder message = new StringBuilder(length);
+        final int tokenLength = Math.max(1, length / tokenCount - 1);
+        for (int i = 0; i < tokenCount; ++i) {
+            if (i > 0) {
+                message.append(' ');
+            }
+            if (i % 10 == 9) {
+                message.append(sensitiveValue((seed * 31 + i) % referentialSize));
+            } else {
+                for (int j = 0; j < tokenLength; ++j) {
+                    message.append((char) ('a' + (seed + i + j) % 26));
+                }
+            }
+        }
+        return message.toString();
+    }
+
+    /**
+     * Runs the benchmarks of {@code benchmark} with the GC profiler, reporting allocation rates and GC counts.
+     */
+    static void runWithGcProfiler(final Class<?> benchmark) throws RunnerException {
+        new Runner(new OptionsBuilder().include(benchmark.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+}
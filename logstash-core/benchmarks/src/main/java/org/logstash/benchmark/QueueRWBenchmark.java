@@ -3,6 +3,8 @@ package org.logstash.benchmark;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -43,6 +45,10 @@ public class QueueRWBenchmark {
 
     private static final int ACK_INTERVAL = 1024;
 
+    private static final int CONTENDED_WRITERS = 4;
+
+    private static final int CONTENDED_PAGE_CAPACITY = 4 * 1024 * 1024;
+
     private static final Event EVENT = new Event();
 
     private ArrayBlockingQueue<Event> queueArrayBlocking;
@@ -53,6 +59,12 @@ public class QueueRWBenchmark {
 
     private ExecutorService exec;
 
+    private Queue queueContended;
+
+    private String contendedPath;
+
+    private ExecutorService contendedExec;
+
     @Setup
     public void setUp() throws IOException {
         final Settings settingsPersisted = settings();
@@ -66,6 +78,15 @@ public class QueueRWBenchmark {
         queueArrayBlocking = new ArrayBlockingQueue<>(ACK_INTERVAL);
         queuePersisted.open();
         exec = Executors.newSingleThreadExecutor();
+        final Settings settingsContended = contendedSettings();
+        contendedPath = settingsContended.getDirPath();
+        queueContended = new Queue(settingsContended);
+        queueContended.open();
+        // a backlog of one invocation keeps the reader on tail pages while the writers append to the head page
+        for (int i = 0; i < EVENTS_PER_INVOCATION; ++i) {
+            queueContended.write(EVENT);
+        }
+        contendedExec = Executors.newFixedThreadPool(CONTENDED_WRITERS);
     }
 
     @TearDown
@@ -74,6 +95,9 @@ public class QueueRWBenchmark {
         queueArrayBlocking.clear();
         FileUtils.deleteDirectory(new File(path));
         exec.shutdownNow();
+        queueContended.close();
+        FileUtils.deleteDirectory(new File(contendedPath));
+        contendedExec.shutdownNow();
     }
 
     @Benchmark
@@ -98,6 +122,36 @@ public class QueueRWBenchmark {
         future.get();
     }
 
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public final void readTailPagesWhileWritingPersistedQueue(final Blackhole blackhole) throws Exception {
+        final List<Future<?>> futures = new ArrayList<>(CONTENDED_WRITERS);
+        for (int w = 0; w < CONTENDED_WRITERS; ++w) {
+            futures.add(contendedExec.submit(() -> {
+                for (int i = 0; i < EVENTS_PER_INVOCATION / CONTENDED_WRITERS; ++i) {
+                    try {
+                        this.queueContended.write(EVENT);
+                    } catch (final IOException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            }));
+        }
+        int read = 0;
+        while (read < EVENTS_PER_INVOCATION) {
+            // batches stop at page boundaries so they can be smaller than BATCH_SIZE
+            try (Batch batch = queueContended.readBatch(BATCH_SIZE, TimeUnit.SECONDS.toMillis(1))) {
+                for (final Queueable elem : batch.getElements()) {
+                    blackhole.consume(elem);
+                }
+                read += batch.size();
+            }
+        }
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+    }
+
     @Benchmark
     @OperationsPerInvocation(EVENTS_PER_INVOCATION)
     public final void readFromArrayBlockingQueue(final Blackhole blackhole) throws Exception {
@@ -124,4 +178,13 @@ public class QueueRWBenchmark {
             .checkpointMaxAcks(ACK_INTERVAL)
             .elementClass(Event.class).build();
     }
+
+    private static Settings contendedSettings() {
+        return SettingsImpl.fileSettingsBuilder(Files.createTempDir().getPath())
+            .capacity(CONTENDED_PAGE_CAPACITY)
+            .queueMaxBytes(Long.MAX_VALUE)
+            .checkpointMaxWrites(ACK_INTERVAL)
+            .checkpointMaxAcks(ACK_INTERVAL)
+            .elementClass(Event.class).build();
+    }
 }
@@ -0,0 +1,89 @@
+package org.logstash.benchmark;
+
+import com.bnp.logstash.dlp.Referential;
+import com.bnp.logstash.dlp.ReferentialConverter;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Time to load a referential, from its text file or from its binary index. Run {@link #main(String[])}
+ * to get allocation rates from the GC profiler as well.
+ *
+ * <p>A referential of 10 million hashes is left out of the default run. Opt in with
+ * {@code -p referentialSize=10000000}; its SHA256 text file is about 650 MB. 50 million hashes is not supported: the
+ * table would need 2^27 slots, which exceeds the 2 GB limit of a single digest table.</p>
+ */
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ReferentialLoadBenchmark {
+
+    private static final String APP = "bench";
+
+    @Param({"100000", "1000000"})
+    public int referentialSize;
+
+    @Param({"SHA256", "MD5"})
+    public String algorithm;
+
+    @Param({"text", "index"})
+    public String format;
+
+    private File directory;
+
+    private Referential loaded;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDir();
+        final Path data = DlpBenchmarkData.writeReferential(directory.toPath(), APP, referentialSize, algorithm);
+        if ("index".equals(format)) {
+            ReferentialConverter.convert(data, ReferentialConverter.indexPathFor(data));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    // loading the text file writes a snapshot which the next load would map instead of parsing the text
+    @TearDown(Level.Invocation)
+    public void deleteSnapshot() throws IOException {
+        if (loaded != null) {
+            java.nio.file.Files.deleteIfExists(loaded.getSnapshotFile());
+            loaded = null;
+        }
+    }
+
+    @Benchmark
+    public final Referential load() throws IOException {
+        loaded = Referential.load(directory.getAbsolutePath() + File.separator, APP);
+        return loaded;
+    }
+
+    public static void main(final String... args) throws RunnerException {
+        DlpBenchmarkData.runWithGcProfiler(ReferentialLoadBenchmark.class);
+    }
+}
@@ -26,8 +26,10 @@ module LogStash
       "pipeline.system",
       "pipeline.workers",
       "queue.checkpoint.acks",
+      "queue.checkpoint.group_commit_latency",
       "queue.checkpoint.interval",
       "queue.checkpoint.writes",
+      "queue.compression",
       "queue.checkpoint.retry",
       "queue.drain",
       "queue.max_bytes",
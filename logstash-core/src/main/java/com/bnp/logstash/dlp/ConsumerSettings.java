@@ -0,0 +1,87 @@
+package com.bnp.logstash.dlp;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+
+/**
+ * Kafka source and target referential file of a {@link ReferentialConsumer}.
+ */
+final class ConsumerSettings {
+	private final String kafkaServer;
+	private final String hashKafkaTopic;
+	private final String kafkaGroupId;
+	private final String hashReferentialFile;
+
+	ConsumerSettings(String kafkaServer, String hashKafkaTopic, String kafkaGroupId, String hashReferentialFile) {
+		this.kafkaServer = kafkaServer;
+		this.hashKafkaTopic = hashKafkaTopic;
+		this.kafkaGroupId = kafkaGroupId;
+		this.hashReferentialFile = hashReferentialFile;
+	}
+
+	String getHashKafkaTopic() {
+		return hashKafkaTopic;
+	}
+
+	Path getHashReferentialFile() {
+		return Paths.get(hashReferentialFile);
+	}
+
+	/**
+	 * @return the {@code hash_path} under which {@link ReferentialHash} knows
+	 *         the referential file, or {@code null} if it is not a {@code .data} file.
+	 */
+	String getHashReferencePath() {
+		final Path parent = getHashReferentialFile().toAbsolutePath().getParent();
+		return getApplicationCode() == null || parent == null ? null : parent.toString() + File.separator;
+	}
+
+	String getApplicationCode() {
+		final String name = getHashReferentialFile().getFileName().toString();
+		return name.endsWith(ReferentialConverter.DATA_EXTENSION)
+				? name.substring(0, name.length() - ReferentialConverter.DATA_EXTENSION.length()) : null;
+	}
+
+	/**
+	 * Offsets are committed by the consumer once the hashes are persisted.
+	 */
+	Properties kafkaProperties(String offsetReset) {
+		Properties kafkaProperties = new Properties();
+		kafkaProperties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaServer);
+		kafkaProperties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+		kafkaProperties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+		kafkaProperties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, kafkaGroupId);
+		kafkaProperties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, offsetReset);
+		kafkaProperties.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+		return kafkaProperties;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ConsumerSettings)) {
+			return false;
+		}
+		ConsumerSettings other = (ConsumerSettings) o;
+		return kafkaServer.equals(other.kafkaServer) && hashKafkaTopic.equals(other.hashKafkaTopic)
+				&& kafkaGroupId.equals(other.kafkaGroupId) && hashReferentialFile.equals(other.hashReferentialFile);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(kafkaServer, hashKafkaTopic, kafkaGroupId, hashReferentialFile);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s/%s[%s] -> %s", kafkaServer, hashKafkaTopic, kafkaGroupId, hashReferentialFile);
+	}
+}
@@ -1,9 +1,11 @@
 package com.bnp.logstash.dlp;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
-
-import org.apache.commons.codec.digest.DigestUtils;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import co.elastic.logstash.api.Configuration;
 import co.elastic.logstash.api.Context;
@@ -20,20 +22,44 @@ public class DLPEncryptor implements Filter {
 	
 	public static final PluginConfigSpec<String> HASH_ALGORITHM_CONFIG = 
 			PluginConfigSpec.stringSetting("hashing_algorithm", "SHA256");
+	
+	public static final PluginConfigSpec<String> HASHING_MODE_CONFIG = 
+			PluginConfigSpec.stringSetting("hashing_mode", HashingKey.PLAIN);
+	
+	public static final PluginConfigSpec<String> KEYSTORE_FILE_CONFIG = 
+			PluginConfigSpec.stringSetting("keystore_file", "");
+	
+	public static final PluginConfigSpec<String> HASHING_KEY_ID_CONFIG = 
+			PluginConfigSpec.stringSetting("hashing_key_id", "dlp.hashing.key");
+	
+	public static final PluginConfigSpec<List<Object>> FIELDS_CONFIG = 
+			PluginConfigSpec.arraySetting("fields", Collections.emptyList(), false, false);
+	
+	public static final PluginConfigSpec<Long> PARALLEL_BATCH_SIZE_CONFIG = 
+			PluginConfigSpec.numSetting("parallel_batch_size", 4096);
 
     private String id;
     private String sourceField;
-    private static String hashingAlgorithm;
+    private final List<EventField> fields;
+    private final String hashingAlgorithm;
+    private final int parallelBatchSize;
+    private final ThreadLocal<TokenDigester> tokenDigester;
     
-    protected static final String SHA1 = "SHA1";
-    protected static final String SHA256 = "SHA256";
-    protected static final String SHA512 = "SHA512";
-    protected static final String MD5 = "MD5";
+    protected static final String SHA1 = TokenDigester.SHA1;
+    protected static final String SHA256 = TokenDigester.SHA256;
+    protected static final String SHA512 = TokenDigester.SHA512;
+    protected static final String MD5 = TokenDigester.MD5;
 
 	public DLPEncryptor(String id, Configuration config, Context context) {
         this.id = id;
         this.sourceField = config.get(SOURCE_CONFIG);
-        hashingAlgorithm = config.get(HASH_ALGORITHM_CONFIG);
+        this.hashingAlgorithm = config.get(HASH_ALGORITHM_CONFIG);
+        final List<Object> references = config.get(FIELDS_CONFIG);
+        this.fields = EventField.of(references.isEmpty() ? Collections.singletonList(sourceField) : references);
+        this.parallelBatchSize = config.get(PARALLEL_BATCH_SIZE_CONFIG).intValue();
+        final HashingKey hashingKey = HashingKey.load(config.get(HASHING_MODE_CONFIG), hashingAlgorithm,
+        		config.get(KEYSTORE_FILE_CONFIG), config.get(HASHING_KEY_ID_CONFIG));
+        this.tokenDigester = ThreadLocal.withInitial(() -> new TokenDigester(hashingAlgorithm, hashingKey));
     }
 
 	@Override
@@ -41,6 +67,11 @@ public class DLPEncryptor implements Filter {
 		Collection<PluginConfigSpec<?>> list = new LinkedList<PluginConfigSpec<?>>(); 
 		list.add(SOURCE_CONFIG);
 		list.add(HASH_ALGORITHM_CONFIG);
+		list.add(HASHING_MODE_CONFIG);
+		list.add(KEYSTORE_FILE_CONFIG);
+		list.add(HASHING_KEY_ID_CONFIG);
+		list.add(FIELDS_CONFIG);
+		list.add(PARALLEL_BATCH_SIZE_CONFIG);
 		return list;
 	}
 
@@ -51,28 +82,45 @@ public class DLPEncryptor implements Filter {
 
 	@Override
 	public Collection<Event> filter(Collection<Event> events, FilterMatchListener matchListener) {
+		// collect every value of the batch, hash them all, then write them back
+		final List<Event> valueEvents = new ArrayList<>();
+		final List<EventField> valueFields = new ArrayList<>();
+		final List<String> values = new ArrayList<>();
 		for (Event e : events) {
-            Object f = e.getField(sourceField);
-            if (f instanceof String) {
-                e.setField(sourceField, getProcessHashByAlgorithm((String)f));
-                matchListener.filterMatched(e);
-            }
-        }
+			for (EventField field : fields) {
+				Object f = field.get(e);
+				if (f instanceof String) {
+					valueEvents.add(e);
+					valueFields.add(field);
+					values.add((String) f);
+				}
+			}
+		}
+		final String[] hashes = hash(values);
+		Event previous = null;
+		for (int i = 0; i < hashes.length; i++) {
+			final Event e = valueEvents.get(i);
+			valueFields.get(i).set(e, hashes[i]);
+			if (e != previous) {
+				matchListener.filterMatched(e);
+				previous = e;
+			}
+		}
         return events;
 	}
 
-	private static String getProcessHashByAlgorithm(String dataToEncrypt) {
-		switch (hashingAlgorithm) {
-		case SHA256:
-			return DigestUtils.sha256Hex(dataToEncrypt);
-		case SHA1:
-			return DigestUtils.sha1Hex(dataToEncrypt);
-		case SHA512:
-			return DigestUtils.sha512Hex(dataToEncrypt);
-		case MD5:
-			return DigestUtils.md5Hex(dataToEncrypt);
-		default:
-			return DigestUtils.sha256Hex(dataToEncrypt);
+	// large batches are split over the fork-join common pool, each of its threads keeping its own digester
+	private String[] hash(List<String> values) {
+		final String[] hashes = new String[values.size()];
+		if (parallelBatchSize > 0 && hashes.length >= parallelBatchSize) {
+			IntStream.range(0, hashes.length).parallel()
+					.forEach(i -> hashes[i] = tokenDigester.get().hexDigest(values.get(i)));
+		} else {
+			final TokenDigester digester = tokenDigester.get();
+			for (int i = 0; i < hashes.length; i++) {
+				hashes[i] = digester.hexDigest(values.get(i));
+			}
 		}
+		return hashes;
 	}
 }
@@ -1,29 +1,18 @@
 package com.bnp.logstash.dlp;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.OpenOption;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Properties;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 
-import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.json.JSONObject;
-
-import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import org.logstash.instrument.metrics.Metric;
+import org.logstash.instrument.metrics.MetricSource;
 
 import co.elastic.logstash.api.Configuration;
 import co.elastic.logstash.api.Context;
@@ -34,8 +23,10 @@ import co.elastic.logstash.api.LogstashPlugin;
 import co.elastic.logstash.api.PluginConfigSpec;
 
 @LogstashPlugin(name = "dlp_hash_consumer")
-public class DLPHashConsumer implements Filter {
+public class DLPHashConsumer implements Filter, MetricSource {
 	public static final PluginConfigSpec<String> SOURCE_CONFIG = PluginConfigSpec.stringSetting("source", "message");
+	public static final PluginConfigSpec<List<Object>> FIELDS_CONFIG = PluginConfigSpec
+			.arraySetting("fields", Collections.emptyList(), false, false);
 	public static final PluginConfigSpec<String> KAFKA_SERVER_CONFIG = PluginConfigSpec
 			.stringSetting("kafka_server_and_port", "kafka:9092");
 	public static final PluginConfigSpec<String> HASH_KAFKA_TOPIC_CONFIG = PluginConfigSpec
@@ -44,42 +35,34 @@ public class DLPHashConsumer implements Filter {
 			.stringSetting("kafka_group_id", "logstash-1");
 	public static final PluginConfigSpec<String> HASH_REFERENTIAL_FILE = PluginConfigSpec
 			.stringSetting("hash_referential_file", "/data/elk/hash_referential/app.data");
-	private final static int REFERENTIAL_SIZE = 1_000_000;
 
-	private Properties kafkaProperties = null;
 	private String id;
 	private String sourceField;
+	private final List<EventField> fields;
 	private String kafkaServerField;
-	private String kafkaServer;
 	private String hashKafkaTopicField;
-	private String hashKafkaTopic;
 	private String kafkaGroupIdField;
-	private String kafkaGroupId;
 	private String hashReferentialFileField;
-	private String hashReferentialFile;
+	// consumers started by this filter, for the pipeline stats
+	private final ConcurrentMap<ConsumerSettings, ReferentialConsumer> consumers = new ConcurrentHashMap<>();
 
 	public DLPHashConsumer(String id, Configuration config, Context context) {
 		this.id = id;
 		this.sourceField = config.get(SOURCE_CONFIG);
+		final List<Object> references = config.get(FIELDS_CONFIG);
+		this.fields = EventField.of(references.isEmpty() ? Collections.singletonList(sourceField) : references);
 		this.kafkaServerField = config.get(KAFKA_SERVER_CONFIG);
 		this.hashKafkaTopicField = config.get(HASH_KAFKA_TOPIC_CONFIG);
 		this.kafkaGroupIdField = config.get(KAFKA_GROUP_ID_CONFIG);
 		this.hashReferentialFileField = config.get(HASH_REFERENTIAL_FILE);
 	}
 	
-	private void initializeKafka() {
-		kafkaProperties = new Properties();
-		kafkaProperties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaServer);
-		kafkaProperties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        kafkaProperties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        kafkaProperties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, kafkaGroupIdField);
-        kafkaProperties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-	}
-
 	@Override
 	public Collection<PluginConfigSpec<?>> configSchema() {
 		Collection<PluginConfigSpec<?>> list = new LinkedList<PluginConfigSpec<?>>();
 		list.add(SOURCE_CONFIG);
+		list.add(FIELDS_CONFIG);
+		list.add(KAFKA_SERVER_CONFIG);
 		list.add(HASH_KAFKA_TOPIC_CONFIG);
 		list.add(KAFKA_GROUP_ID_CONFIG);
 		list.add(HASH_REFERENTIAL_FILE);
@@ -93,93 +76,50 @@ public class DLPHashConsumer implements Filter {
 
 	@Override
 	public Collection<Event> filter(Collection<Event> events, FilterMatchListener matchListener) {
+		// settings are resolved per event, hashes are consumed by one background consumer per distinct settings
+		Set<ConsumerSettings> batchSettings = new HashSet<ConsumerSettings>();
 		for (Event e : events) {
-			Object kafkaField = e.getField(kafkaServerField);
-			if (kafkaField instanceof String) {
-				kafkaServer = (String) kafkaField;
-			}
-			
-			Object topicField = e.getField(hashKafkaTopicField);
-			if (topicField instanceof String) {
-				hashKafkaTopic = (String) topicField;
-			}
-
-			Object groupField = e.getField(kafkaGroupIdField);
-			if (groupField instanceof String) {
-				kafkaGroupId = (String) groupField;
-			}
-
-			Object hashFileField = e.getField(hashReferentialFileField);
-			if (hashFileField instanceof String) {
-				hashReferentialFile = (String) hashFileField;
-			}
-			
-			if(kafkaProperties == null)
-				initializeKafka();
-
-			Object f = e.getField(sourceField);
-			if (f instanceof String) {
-				produceReferentialFile((String) f);
+			if (hasStringField(e)) {
+				batchSettings.add(new ConsumerSettings(
+						resolve(e, kafkaServerField), resolve(e, hashKafkaTopicField),
+						resolve(e, kafkaGroupIdField), resolve(e, hashReferentialFileField)));
 				matchListener.filterMatched(e);
 			}
 		}
-		return events;
-	}
-
-	private void produceReferentialFile(String sensitiveDataRow) {
-		Set<String> newSensitiveData = null;
-		kafkaProperties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, kafkaGroupId);
-		
-		if (Files.exists(Paths.get(hashReferentialFile))) {
-			kafkaProperties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
-			
-			try {
-				Stream<String> existingReferential = Files.lines(Paths.get(hashReferentialFile));
-				Set<String> referentialHash = new HashSet<String>((int) existingReferential.count());
-				referentialHash.addAll(existingReferential.collect(Collectors.toList()));
-				
-				newSensitiveData = processSensitiveData();
-				
-				//remove possible duplicate entries in the file
-				newSensitiveData.removeIf(s -> referentialHash.contains(s));
-				persistToFile(newSensitiveData, StandardOpenOption.APPEND);
-			} catch(IOException e) {
-				e.printStackTrace();
+		for (ConsumerSettings settings : batchSettings) {
+			final ReferentialConsumer consumer = ReferentialConsumer.ensureRunning(settings);
+			if (consumers.get(settings) != consumer) {
+				consumers.put(settings, consumer);
 			}
-		} else {
-			kafkaProperties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-			persistToFile(processSensitiveData(), StandardOpenOption.CREATE);
 		}
+		return events;
 	}
-	
-	// List level processing
-	private Set<String> processSensitiveData() {
-		Set<String> masterSensitiveList = new HashSet<String>();
-		KafkaConsumer<String, String> consumer = new KafkaConsumer<String, String>(kafkaProperties);
-		consumer.subscribe(Arrays.asList(hashKafkaTopic));
-		
-		ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
-    	records.forEach(record -> getValuesFromJSONObject(new JSONObject(record.value())));
-    	return masterSensitiveList;
-	}
-	
-	// Row level processing
-	private Set<String> getValuesFromJSONObject(JSONObject sensitiveJSONData) {
-		Set<String> sensitiveList = new HashSet<String>();
-		sensitiveJSONData.keySet().forEach(keyStr ->
-	    {
-	    	if(!"app_id".equals(keyStr))
-	    		sensitiveList.add(sensitiveJSONData.getString(keyStr));
-	    });
 
-		return sensitiveList;
+	/**
+	 * Publishes the counters of every consumer started by this filter under
+	 * {@code consumers/<referential file>}.
+	 */
+	@Override
+	public void collectMetrics(BiConsumer<List<String>, Metric<?>> collector) {
+		consumers.forEach((settings, consumer) -> {
+			final List<String> namespace = Arrays.asList("consumers", settings.getHashReferentialFile().toString());
+			collector.accept(namespace, consumer.getConsumedRecords());
+			collector.accept(namespace, consumer.getAppendedHashes());
+		});
 	}
 
-	private void persistToFile(Set<String> sensitiveData, OpenOption defaultOption) {
-		try {
-			Files.write(Paths.get(hashReferentialFile), sensitiveData, defaultOption);
-		} catch (IOException e) {
-			e.printStackTrace();
+	private boolean hasStringField(Event e) {
+		for (EventField field : fields) {
+			if (field.get(e) instanceof String) {
+				return true;
+			}
 		}
+		return false;
+	}
+
+	// the setting names the event field holding the value, the setting itself is the value when the field is absent
+	private static String resolve(Event e, String setting) {
+		Object field = e.getField(setting);
+		return field instanceof String ? (String) field : setting;
 	}
 }
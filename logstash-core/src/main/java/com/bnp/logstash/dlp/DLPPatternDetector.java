@@ -0,0 +1,148 @@
+package com.bnp.logstash.dlp;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import org.logstash.instrument.metrics.Metric;
+import org.logstash.instrument.metrics.MetricSource;
+import org.logstash.instrument.metrics.counter.LongCounter;
+
+import co.elastic.logstash.api.Configuration;
+import co.elastic.logstash.api.Context;
+import co.elastic.logstash.api.Event;
+import co.elastic.logstash.api.Filter;
+import co.elastic.logstash.api.FilterMatchListener;
+import co.elastic.logstash.api.LogstashPlugin;
+import co.elastic.logstash.api.PluginConfigSpec;
+
+@LogstashPlugin(name = "dlp_pattern_detector")
+public class DLPPatternDetector implements Filter, MetricSource {
+	public static final PluginConfigSpec<String> SOURCE_CONFIG =
+			PluginConfigSpec.stringSetting("source", "message");
+
+	public static final PluginConfigSpec<List<Object>> FIELDS_CONFIG =
+			PluginConfigSpec.arraySetting("fields", Collections.emptyList(), false, false);
+
+	public static final PluginConfigSpec<List<Object>> DETECTORS_CONFIG =
+			PluginConfigSpec.arraySetting("detectors",
+					Arrays.asList(PatternTokenScanner.CREDIT_CARD, PatternTokenScanner.IBAN, PatternTokenScanner.EMAIL),
+					false, false);
+
+	public static final PluginConfigSpec<Map<String, Object>> PATTERNS_CONFIG =
+			PluginConfigSpec.hashSetting("patterns", Collections.emptyMap(), false, false);
+
+	public static final PluginConfigSpec<Map<String, Object>> VALIDATORS_CONFIG =
+			PluginConfigSpec.hashSetting("validators", Collections.emptyMap(), false, false);
+
+	public static final PluginConfigSpec<String> HASH_ALGORITHM_CONFIG =
+			PluginConfigSpec.stringSetting("hashing_algorithm", "SHA256");
+
+	public static final PluginConfigSpec<String> MASKING_STRATEGY_CONFIG =
+			PluginConfigSpec.stringSetting("masking_strategy", TokenMaskers.FULL);
+
+	public static final PluginConfigSpec<Long> MASKING_LENGTH_CONFIG =
+			PluginConfigSpec.numSetting("masking_length", 4);
+
+	public static final PluginConfigSpec<Map<String, Object>> FIELD_MASKING_STRATEGIES_CONFIG =
+			PluginConfigSpec.hashSetting("field_masking_strategies", Collections.emptyMap(), false, false);
+
+	private final String id;
+	private final List<EventField> fields;
+	private final TokenMasker[] fieldMaskers;
+	private final PatternTokenScanner tokenScanner;
+	private final TokenMatcher matchCounter;
+
+	private final LongCounter valuesMasked = new LongCounter("pattern_values_masked");
+
+	public DLPPatternDetector(String id, Configuration config, Context context) {
+		this.id = id;
+		final String hashingAlgorithm = config.get(HASH_ALGORITHM_CONFIG);
+		final ThreadLocal<TokenDigester> tokenDigester = ThreadLocal.withInitial(() -> new TokenDigester(hashingAlgorithm));
+		this.tokenScanner = PatternTokenScanner.of(
+				config.get(DETECTORS_CONFIG).stream().map(Object::toString).collect(Collectors.toList()),
+				strings(config.get(PATTERNS_CONFIG)), strings(config.get(VALIDATORS_CONFIG)));
+		this.matchCounter = (seq, start, end) -> {
+			valuesMasked.increment();
+			return true;
+		};
+		final TokenMasker tokenMasker = TokenMaskers.of(config.get(MASKING_STRATEGY_CONFIG),
+				config.get(MASKING_LENGTH_CONFIG).intValue(), tokenDigester::get);
+		final List<Object> references = config.get(FIELDS_CONFIG);
+		this.fields = EventField.of(references.isEmpty() ? Collections.singletonList(config.get(SOURCE_CONFIG)) : references);
+		final Map<String, Object> strategies = config.get(FIELD_MASKING_STRATEGIES_CONFIG);
+		this.fieldMaskers = new TokenMasker[fields.size()];
+		for (int i = 0; i < fieldMaskers.length; i++) {
+			final Object strategy = strategies.get(fields.get(i).getReference());
+			fieldMaskers[i] = strategy == null ? tokenMasker
+					: TokenMaskers.parse(strategy.toString(), config.get(MASKING_LENGTH_CONFIG).intValue(), tokenDigester::get);
+		}
+	}
+
+	private static Map<String, String> strings(Map<String, Object> settings) {
+		final Map<String, String> strings = new LinkedHashMap<>();
+		settings.forEach((key, value) -> strings.put(key, value.toString()));
+		return strings;
+	}
+
+	@Override
+	public Collection<PluginConfigSpec<?>> configSchema() {
+		Collection<PluginConfigSpec<?>> list = new LinkedList<PluginConfigSpec<?>>();
+		list.add(SOURCE_CONFIG);
+		list.add(FIELDS_CONFIG);
+		list.add(DETECTORS_CONFIG);
+		list.add(PATTERNS_CONFIG);
+		list.add(VALIDATORS_CONFIG);
+		list.add(HASH_ALGORITHM_CONFIG);
+		list.add(MASKING_STRATEGY_CONFIG);
+		list.add(MASKING_LENGTH_CONFIG);
+		list.add(FIELD_MASKING_STRATEGIES_CONFIG);
+		return list;
+	}
+
+	@Override
+	public String getId() {
+		return this.id;
+	}
+
+	@Override
+	public Collection<Event> filter(Collection<Event> events, FilterMatchListener matchListener) {
+		final StringBuilder buffer = TokenMaskers.outputBuffer();
+		for (Event e : events) {
+			boolean matched = false;
+			for (int i = 0; i < fieldMaskers.length; i++) {
+				final EventField field = fields.get(i);
+				Object f = field.get(e);
+				if (f instanceof String) {
+					final String message = (String) f;
+					buffer.setLength(0);
+					tokenScanner.scan(message, matchCounter, fieldMaskers[i], buffer);
+					// fields without candidate are left untouched
+					if (!message.contentEquals(buffer)) {
+						field.set(e, buffer.toString());
+						matched = true;
+					}
+				}
+			}
+			if (matched) {
+				matchListener.filterMatched(e);
+			}
+		}
+		return events;
+	}
+
+	@Override
+	public void collectMetrics(BiConsumer<List<String>, Metric<?>> collector) {
+		collector.accept(Collections.emptyList(), valuesMasked);
+	}
+
+	public LongCounter getValuesMasked() {
+		return valuesMasked;
+	}
+}
@@ -1,14 +1,25 @@
 package com.bnp.logstash.dlp;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
-import org.apache.commons.codec.digest.DigestUtils;
-
-import com.google.common.base.Splitter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.logstash.instrument.metrics.Metric;
+import org.logstash.instrument.metrics.MetricSource;
+import org.logstash.instrument.metrics.counter.LongCounter;
 
 import co.elastic.logstash.api.Configuration;
 import co.elastic.logstash.api.Context;
@@ -19,7 +30,7 @@ import co.elastic.logstash.api.LogstashPlugin;
 import co.elastic.logstash.api.PluginConfigSpec;
 
 @LogstashPlugin(name = "dlp_processor")
-public class DLPProcessor implements Filter {
+public class DLPProcessor implements Filter, MetricSource {
 	public static final PluginConfigSpec<String> SOURCE_CONFIG = 
 			PluginConfigSpec.stringSetting("source", "message");
 	
@@ -29,21 +40,78 @@ public class DLPProcessor implements Filter {
 	public static final PluginConfigSpec<String> HASH_ALGORITHM_CONFIG = 
 			PluginConfigSpec.stringSetting("hashing_algorithm", "SHA256");
 	
+	public static final PluginConfigSpec<String> HASHING_MODE_CONFIG = 
+			PluginConfigSpec.stringSetting("hashing_mode", HashingKey.PLAIN);
+	
+	public static final PluginConfigSpec<String> KEYSTORE_FILE_CONFIG = 
+			PluginConfigSpec.stringSetting("keystore_file", "");
+	
+	public static final PluginConfigSpec<String> HASHING_KEY_ID_CONFIG = 
+			PluginConfigSpec.stringSetting("hashing_key_id", "dlp.hashing.key");
+	
 	public static final PluginConfigSpec<String> APPLICATION_CODE_FIELD_CONFIG = 
 			PluginConfigSpec.stringSetting("application_code_field", "elk");
 	
+	public static final PluginConfigSpec<List<Object>> PRELOAD_APPLICATION_CODES_CONFIG = 
+			PluginConfigSpec.arraySetting("preload_application_codes", Collections.emptyList(), false, false);
+	
+	public static final PluginConfigSpec<Long> TOKEN_CACHE_SIZE_CONFIG = 
+			PluginConfigSpec.numSetting("token_cache_size", 4096);
+	
+	public static final PluginConfigSpec<Boolean> PRUNE_TOKENS_CONFIG = 
+			PluginConfigSpec.booleanSetting("prune_tokens", false);
+	
+	public static final PluginConfigSpec<String> MASKING_STRATEGY_CONFIG = 
+			PluginConfigSpec.stringSetting("masking_strategy", TokenMaskers.FULL);
+	
+	public static final PluginConfigSpec<Long> MASKING_LENGTH_CONFIG = 
+			PluginConfigSpec.numSetting("masking_length", 4);
+	
+	public static final PluginConfigSpec<String> TOKENIZER_CONFIG = 
+			PluginConfigSpec.stringSetting("tokenizer", "space");
+	
+	public static final PluginConfigSpec<String> DELIMITERS_CONFIG = 
+			PluginConfigSpec.stringSetting("delimiters", DelimiterTokenScanner.DEFAULT_DELIMITERS);
+	
+	public static final PluginConfigSpec<List<Object>> FIELDS_CONFIG = 
+			PluginConfigSpec.arraySetting("fields", Collections.emptyList(), false, false);
+	
+	public static final PluginConfigSpec<Map<String, Object>> FIELD_MASKING_STRATEGIES_CONFIG = 
+			PluginConfigSpec.hashSetting("field_masking_strategies", Collections.emptyMap(), false, false);
+	
+	public static final PluginConfigSpec<String> TAG_ON_UNMASKED_CONFIG = 
+			PluginConfigSpec.stringSetting("tag_on_unmasked", "_dlp_unmasked");
+	
+	private static final Logger LOGGER = LogManager.getLogger(DLPProcessor.class);
+	private static final long UNMASKED_WARNING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+	
 	private String id;
     private String sourceField;
 	private String hashReferencePath;
 	private String hashingAlgorithm;
 	private String applicationCodeField;
-	private String applicationCode;
+	private final TokenScanner tokenScanner;
+	private final DelimiterTokenScanner substringFallback;
+	private final ThreadLocal<TokenDigester> tokenDigester;
+	private final List<EventField> fields;
+	private final TokenMasker[] fieldMaskers;
+	private final int tokenCacheSize;
+	private final boolean pruneTokens;
+	private final String unmaskedTag;
+	private final AtomicLong lastUnmaskedWarning = new AtomicLong(System.nanoTime() - UNMASKED_WARNING_INTERVAL_NANOS);
+	private final ThreadLocal<Map<Referential, TokenCache>> tokenCaches = ThreadLocal.withInitial(HashMap::new);
+	// referentials used by this filter, by application code, for the pipeline stats
+	private final ConcurrentMap<String, Referential> referentials = new ConcurrentHashMap<>();
 	
-    protected static final String SPACE = " ";
-    protected static final String SHA1 = "SHA1";
-    protected static final String SHA256 = "SHA256";
-    protected static final String SHA512 = "SHA512";
-    protected static final String MD5 = "MD5";
+	private final LongCounter tokensPruned = new LongCounter("tokens_pruned");
+	private final LongCounter tokenCacheHits = new LongCounter("token_cache_hits");
+	private final LongCounter tokenCacheMisses = new LongCounter("token_cache_misses");
+	private final LongCounter eventsUnmasked = new LongCounter("events_unmasked");
+	
+    protected static final String SHA1 = TokenDigester.SHA1;
+    protected static final String SHA256 = TokenDigester.SHA256;
+    protected static final String SHA512 = TokenDigester.SHA512;
+    protected static final String MD5 = TokenDigester.MD5;
     
     public DLPProcessor(String id, Configuration config, Context context) {
         this.id = id;
@@ -51,15 +119,71 @@ public class DLPProcessor implements Filter {
         this.hashReferencePath = config.get(HASH_REFERENCE_PATH_CONFIG);
         this.hashingAlgorithm = config.get(HASH_ALGORITHM_CONFIG);
         this.applicationCodeField = config.get(APPLICATION_CODE_FIELD_CONFIG);
+        final HashingKey hashingKey = HashingKey.load(config.get(HASHING_MODE_CONFIG), hashingAlgorithm,
+        		config.get(KEYSTORE_FILE_CONFIG), config.get(HASHING_KEY_ID_CONFIG));
+        this.tokenDigester = ThreadLocal.withInitial(() -> new TokenDigester(hashingAlgorithm, hashingKey));
+        this.tokenCacheSize = config.get(TOKEN_CACHE_SIZE_CONFIG).intValue();
+        this.pruneTokens = config.get(PRUNE_TOKENS_CONFIG);
+        this.unmaskedTag = config.get(TAG_ON_UNMASKED_CONFIG);
+        // substring detection falls back to delimited tokens for referentials without token shape
+        this.substringFallback = "substring".equals(config.get(TOKENIZER_CONFIG))
+        		? new DelimiterTokenScanner(config.get(DELIMITERS_CONFIG)) : null;
+        this.tokenScanner = substringFallback != null ? substringFallback
+        		: tokenScanner(config.get(TOKENIZER_CONFIG), config.get(DELIMITERS_CONFIG));
+        final TokenMasker tokenMasker = TokenMaskers.of(config.get(MASKING_STRATEGY_CONFIG),
+        		config.get(MASKING_LENGTH_CONFIG).intValue(), tokenDigester::get);
+        // fields, when set, replace source; every field may override the masking strategy
+        final List<Object> references = config.get(FIELDS_CONFIG);
+        this.fields = EventField.of(references.isEmpty() ? Collections.singletonList(sourceField) : references);
+        final Map<String, Object> strategies = config.get(FIELD_MASKING_STRATEGIES_CONFIG);
+        this.fieldMaskers = new TokenMasker[fields.size()];
+        for (int i = 0; i < fieldMaskers.length; i++) {
+        	final Object strategy = strategies.get(fields.get(i).getReference());
+        	fieldMaskers[i] = strategy == null ? tokenMasker
+        			: TokenMaskers.parse(strategy.toString(), config.get(MASKING_LENGTH_CONFIG).intValue(), tokenDigester::get);
+        }
+        final List<String> preloaded = config.get(PRELOAD_APPLICATION_CODES_CONFIG).stream().map(Object::toString)
+        		.collect(Collectors.toList());
+        ReferentialHash.getInstance().preload(hashReferencePath, preloaded);
+        for (String code : preloaded) {
+        	final Referential referential = ReferentialHash.getInstance().getReferentialHash(hashReferencePath, code);
+        	if (referential != null) {
+        		referentials.put(code, referential);
+        	}
+        }
     }
 
+	private static TokenScanner tokenScanner(String tokenizer, String delimiters) {
+		switch (tokenizer) {
+		case "space":
+			return SpaceTokenScanner.INSTANCE;
+		case "delimiters":
+			return new DelimiterTokenScanner(delimiters);
+		default:
+			throw new IllegalArgumentException("Unknown tokenizer " + tokenizer);
+		}
+	}
+
 	@Override
 	public Collection<PluginConfigSpec<?>> configSchema() {
 		Collection<PluginConfigSpec<?>> list = new LinkedList<PluginConfigSpec<?>>(); 
 		list.add(SOURCE_CONFIG);
         list.add(HASH_REFERENCE_PATH_CONFIG);
         list.add(HASH_ALGORITHM_CONFIG);
+        list.add(HASHING_MODE_CONFIG);
+        list.add(KEYSTORE_FILE_CONFIG);
+        list.add(HASHING_KEY_ID_CONFIG);
         list.add(APPLICATION_CODE_FIELD_CONFIG);
+        list.add(PRELOAD_APPLICATION_CODES_CONFIG);
+        list.add(TOKEN_CACHE_SIZE_CONFIG);
+        list.add(PRUNE_TOKENS_CONFIG);
+        list.add(MASKING_STRATEGY_CONFIG);
+        list.add(MASKING_LENGTH_CONFIG);
+        list.add(TOKENIZER_CONFIG);
+        list.add(DELIMITERS_CONFIG);
+        list.add(FIELDS_CONFIG);
+        list.add(FIELD_MASKING_STRATEGIES_CONFIG);
+        list.add(TAG_ON_UNMASKED_CONFIG);
         return list;
 	}
 
@@ -70,67 +194,142 @@ public class DLPProcessor implements Filter {
 
 	@Override
 	public Collection<Event> filter(Collection<Event> events, FilterMatchListener matchListener) {
+		// one referential lookup per application code of the batch
+		final Map<String, List<Event>> eventsByApplicationCode = new HashMap<>();
 		for (Event e : events) {
 			Object appField = e.getField(applicationCodeField);
-            if (appField instanceof String) {
-            	applicationCode = (String) appField;
-            }
-            
-            Object f = e.getField(sourceField);
-            if (f instanceof String) {
-                e.setField(sourceField, tokenizeData(new StringBuilder((String)f)));
-                matchListener.filterMatched(e);
-            }
-        }
-        return events;
+			if (appField instanceof String) {
+				eventsByApplicationCode.computeIfAbsent((String) appField, code -> new ArrayList<>()).add(e);
+			} else {
+				tagUnmasked(e, "no application code in field " + applicationCodeField);
+			}
+		}
+		final StringBuilder buffer = TokenMaskers.outputBuffer();
+		final TokenDigester digester = tokenDigester.get();
+		for (Map.Entry<String, List<Event>> group : eventsByApplicationCode.entrySet()) {
+			final Referential referential = ReferentialHash.getInstance().getReferentialHash(hashReferencePath, group.getKey());
+			if (referential == null) {
+				for (Event e : group.getValue()) {
+					tagUnmasked(e, "hash referential of application code " + group.getKey() + " cannot be loaded");
+				}
+				continue;
+			}
+			if (referentials.get(group.getKey()) != referential) {
+				referentials.put(group.getKey(), referential);
+			}
+			final TokenMatcher lookup = tokenCacheSize > 0
+					? cachingMatcher(referential, digester, tokenCaches.get().computeIfAbsent(referential, r -> new TokenCache(tokenCacheSize)))
+					: (seq, start, end) -> encryptandFind(referential, digester.digest(seq, start, end));
+			final TokenShape shape = referential.getTokenShape();
+			// without a current token shape, values of a length it does not know are still looked up as whole tokens
+			final TokenScanner scanner = substringFallback != null
+					? SubstringTokenScanner.of(referential.getWindowShape(), substringFallback, shape == null) : tokenScanner;
+			// substring windows already have the shape of the referential values
+			final TokenMatcher matcher = shape == null || !pruneTokens || scanner != tokenScanner
+					? lookup : pruningMatcher(shape, lookup);
+			for (Event e : group.getValue()) {
+				boolean matched = false;
+				for (int i = 0; i < fieldMaskers.length; i++) {
+					final EventField field = fields.get(i);
+					Object f = field.get(e);
+					if (f instanceof String) {
+						field.set(e, tokenizeData((String) f, scanner, matcher, fieldMaskers[i], buffer));
+						matched = true;
+					}
+				}
+				if (matched) {
+					matchListener.filterMatched(e);
+				}
+			}
+		}
+		return events;
 	}
 
-	private String tokenizeData(StringBuilder message) {
-		return String.join(SPACE, Splitter.on(SPACE).trimResults().splitToList(message).stream().map(str -> encryptandFind(str)).collect(Collectors.toList()));
+	// events which may hold sensitive values but cannot be checked are let through tagged, with a warning at most
+	// once per interval
+	private void tagUnmasked(Event e, String reason) {
+		boolean hasValue = false;
+		for (EventField field : fields) {
+			hasValue |= field.get(e) instanceof String;
+		}
+		if (!hasValue) {
+			return;
+		}
+		e.tag(unmaskedTag);
+		eventsUnmasked.increment();
+		final long now = System.nanoTime();
+		final long last = lastUnmaskedWarning.get();
+		if (now - last >= UNMASKED_WARNING_INTERVAL_NANOS && lastUnmaskedWarning.compareAndSet(last, now)) {
+			LOGGER.warn("Events left unmasked and tagged {}, {}", unmaskedTag, reason);
+		}
+	}
+
+	private static String tokenizeData(String message, TokenScanner scanner, TokenMatcher matcher, TokenMasker masker,
+			StringBuilder buffer) {
+		buffer.setLength(0);
+		scanner.scan(message, matcher, masker, buffer);
+		return buffer.toString();
 	}
 	
-	private String encryptandFind(String datatoEncrypt) {
-		if (ReferentialHash.getInstance().getReferentialHash(hashReferencePath, applicationCode).contains(getProcessHashByAlgorithm(datatoEncrypt)))
-			return masker(datatoEncrypt);
-		return datatoEncrypt;
+	// tokens that cannot have the shape of a referential value are neither cached nor hashed
+	private TokenMatcher pruningMatcher(TokenShape shape, TokenMatcher lookup) {
+		return (seq, start, end) -> {
+			if (!shape.accepts(seq, start, end)) {
+				tokensPruned.increment();
+				return false;
+			}
+			return lookup.matches(seq, start, end);
+		};
 	}
 	
-	private String getProcessHashByAlgorithm(String dataToEncrypt) {
-		switch (hashingAlgorithm) {
-		case SHA256:
-			return DigestUtils.sha256Hex(dataToEncrypt);
-		case SHA1:
-			return DigestUtils.sha1Hex(dataToEncrypt);
-		case SHA512:
-			return DigestUtils.sha512Hex(dataToEncrypt);
-		case MD5:
-			return DigestUtils.md5Hex(dataToEncrypt);
-		default:
-			return DigestUtils.sha256Hex(dataToEncrypt);
+	private TokenMatcher cachingMatcher(Referential referential, TokenDigester digester, TokenCache cache) {
+		return (seq, start, end) -> {
+			final int hash = TokenCache.hash(seq, start, end);
+			if (cache.contains(hash, seq, start, end, referential.generation())) {
+				tokenCacheHits.increment();
+				return false;
+			}
+			tokenCacheMisses.increment();
+			final boolean sensitive = encryptandFind(referential, digester.digest(seq, start, end));
+			if (!sensitive) {
+				cache.add(hash, seq, start, end);
+			}
+			return sensitive;
+		};
+	}
+	
+	private static boolean encryptandFind(Referential referential, byte[] digest) {
+		return referential.contains(digest);
+	}
+	
+	/**
+	 * Publishes the counters of this filter and, under {@code referentials/<application code>}, the metrics of
+	 * every referential it has used.
+	 */
+	@Override
+	public void collectMetrics(BiConsumer<List<String>, Metric<?>> collector) {
+		for (Metric<?> metric : Arrays.<Metric<?>>asList(tokensPruned, tokenCacheHits, tokenCacheMisses, eventsUnmasked)) {
+			collector.accept(Collections.emptyList(), metric);
 		}
+		referentials.forEach((code, referential) -> {
+			final List<String> namespace = Arrays.asList("referentials", code);
+			referential.metrics().forEach(metric -> collector.accept(namespace, metric));
+		});
 	}
 	
-	private static String masker(String datatoEncrypt) {
-//		return datatoEncrypt.substring(0, datatoEncrypt.length()-1).replaceAll(".", "#") + datatoEncrypt.charAt(datatoEncrypt.length()-1);
-		return datatoEncrypt.replaceAll(".", "#");
+	public LongCounter getTokensPruned() {
+		return tokensPruned;
 	}
 	
+	public LongCounter getTokenCacheHits() {
+		return tokenCacheHits;
+	}
 	
-	private static String encryptandFindTest(String datatoEncrypt) {
-		Set<String> s = new HashSet<String>();
-//		s.add(DigestUtils.sha256Hex("brown"));
-		s.add(DigestUtils.sha1Hex("The"));
-		s.add(DigestUtils.sha1Hex("jump"));
-		s.add(DigestUtils.sha1Hex("river"));
-		
-		if (s.contains(DigestUtils.sha256Hex(datatoEncrypt)))
-			return masker(datatoEncrypt);
-		return datatoEncrypt;
+	public LongCounter getTokenCacheMisses() {
+		return tokenCacheMisses;
 	}
 	
-	public static void main(String[] args) {
-		StringBuilder s2 = new StringBuilder("The quick brown fox jump in the river");
-		System.out.println(String.join(" ", Splitter.on(" ").trimResults().splitToList(s2).stream().map(DLPProcessor::encryptandFindTest).collect(Collectors.toList())));
+	public LongCounter getEventsUnmasked() {
+		return eventsUnmasked;
 	}
-
 }
@@ -0,0 +1,63 @@
+package com.bnp.logstash.dlp;
+
+import java.util.BitSet;
+
+import com.google.common.base.CharMatcher;
+
+/**
+ * Splits the message on any whitespace or any of the configured delimiter
+ * characters. Tokens are the maximal runs of other characters; everything
+ * outside of masked tokens, delimiters included, is copied unchanged so the
+ * message keeps its exact layout.
+ */
+public final class DelimiterTokenScanner implements TokenScanner {
+
+	public static final String DEFAULT_DELIMITERS = ",;:=\"'`(){}[]<>|";
+
+	private static final CharMatcher WHITESPACE = CharMatcher.whitespace();
+
+	private final BitSet delimiters = new BitSet();
+
+	/**
+	 * @param delimiters Delimiter characters in addition to whitespace.
+	 */
+	public DelimiterTokenScanner(String delimiters) {
+		for (int i = 0; i < delimiters.length(); i++) {
+			this.delimiters.set(delimiters.charAt(i));
+		}
+		// CharMatcher.whitespace() matches nothing above U+3000
+		for (char c = 0; c <= 0x3000; c++) {
+			if (WHITESPACE.matches(c)) {
+				this.delimiters.set(c);
+			}
+		}
+	}
+
+	boolean isDelimiter(char c) {
+		return delimiters.get(c);
+	}
+
+	@Override
+	public void scan(CharSequence message, TokenMatcher matcher, TokenMasker masker, StringBuilder out) {
+		final int length = message.length();
+		int i = 0;
+		while (i < length) {
+			final int start = i;
+			while (i < length && delimiters.get(message.charAt(i))) {
+				i++;
+			}
+			out.append(message, start, i);
+			final int tokenStart = i;
+			while (i < length && !delimiters.get(message.charAt(i))) {
+				i++;
+			}
+			if (tokenStart < i) {
+				if (matcher.matches(message, tokenStart, i)) {
+					masker.mask(message, tokenStart, i, out);
+				} else {
+					out.append(message, tokenStart, i);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.bnp.logstash.dlp;
+
+import java.util.function.Consumer;
+
+/**
+ * Read side of a set of fixed-length raw digests.
+ */
+public interface DigestSet {
+
+	boolean contains(byte[] digest);
+
+	int size();
+
+	int digestLength();
+
+	/**
+	 * Calls {@code action} with every digest; the array passed to the action
+	 * may be reused between calls.
+	 */
+	void forEach(Consumer<byte[]> action);
+
+	/**
+	 * @return number of bytes used by the digests storage.
+	 */
+	long byteSize();
+}
@@ -0,0 +1,308 @@
+package com.bnp.logstash.dlp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Open-addressed hash table of fixed-length raw digests kept outside of the
+ * Java heap, either in a direct buffer or in a memory mapped index file.
+ *
+ * <p>Index file layout (big endian):</p>
+ * <pre>
+ * magic (int) | version (byte) | flags (byte) | digest length (short) | capacity (int) | size (int) | padding | slots
+ * </pre>
+ * An all-zero slot is empty; the all-zero digest itself is recorded in the flags.
+ */
+public final class DigestTable implements DigestSet {
+
+	public static final int MAGIC = 0x444C5048; // "DLPH"
+	public static final byte VERSION_ONE = (byte) 1;
+	public static final int HEADER_SIZE = 32;
+	private static final byte FLAG_ZERO_DIGEST = (byte) 1;
+	private static final double LOAD_FACTOR = 0.7;
+	private static final int MIN_CAPACITY = 16;
+
+	private final ByteBuffer slots;
+	private final int digestLength;
+	private final int capacity;
+	private final int mask;
+	private final int threshold;
+	private int size;
+	private boolean zeroDigest;
+
+	private DigestTable(ByteBuffer slots, int digestLength, int capacity, int size, boolean zeroDigest) {
+		this.slots = slots;
+		this.digestLength = digestLength;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.threshold = (int) (capacity * LOAD_FACTOR);
+		this.size = size;
+		this.zeroDigest = zeroDigest;
+	}
+
+	/**
+	 * Allocates an empty off-heap table sized to hold {@code expectedEntries} digests.
+	 */
+	public static DigestTable allocate(int digestLength, int expectedEntries) {
+		if (digestLength < Integer.BYTES || digestLength > Short.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("invalid digest length=%d", digestLength));
+		}
+		final long wanted = Math.max(MIN_CAPACITY, (long) Math.ceil(expectedEntries / LOAD_FACTOR));
+		final long capacity = Long.highestOneBit(wanted - 1) << 1;
+		if (capacity * digestLength > Integer.MAX_VALUE - HEADER_SIZE) {
+			throw new IllegalArgumentException(String.format(
+					"%d digests of %d bytes do not fit in a single table", expectedEntries, digestLength));
+		}
+		final ByteBuffer slots = ByteBuffer.allocateDirect((int) capacity * digestLength);
+		return new DigestTable(slots, digestLength, (int) capacity, 0, false);
+	}
+
+	/**
+	 * Memory maps a table previously written by {@link #write(Path)}, read only.
+	 */
+	public static DigestTable open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(String.format("invalid digest table size=%d for file=%s", channel.size(), file));
+			}
+			return open(channel, 0L, channel.size(), file);
+		}
+	}
+
+	/**
+	 * Memory maps the table written at {@code position} of {@code channel}, read only.
+	 *
+	 * @param length Number of bytes from {@code position} to the end of the table.
+	 */
+	static DigestTable open(FileChannel channel, long position, long length, Path file) throws IOException {
+		if (length < HEADER_SIZE || length > Integer.MAX_VALUE || position + length > channel.size()) {
+			throw new IOException(String.format("invalid digest table size=%d at position=%d for file=%s", length, position, file));
+		}
+		final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		final int magic = buffer.getInt(0);
+		final byte version = buffer.get(4);
+		if (magic != MAGIC || version != VERSION_ONE) {
+			throw new IOException(String.format("unexpected digest table magic=%x version=%d in file=%s", magic, version, file));
+		}
+		final boolean zeroDigest = (buffer.get(5) & FLAG_ZERO_DIGEST) != 0;
+		final int digestLength = buffer.getShort(6);
+		final int capacity = buffer.getInt(8);
+		final int size = buffer.getInt(12);
+		if (digestLength <= 0 || capacity <= 0 || Integer.bitCount(capacity) != 1
+				|| (long) capacity * digestLength != buffer.capacity() - HEADER_SIZE) {
+			throw new IOException(String.format("corrupted digest table header in file=%s", file));
+		}
+		// a table above its load factor may have no empty slot left to end a probe
+		if (size < 0 || size > (int) (capacity * LOAD_FACTOR)) {
+			throw new IOException(String.format(
+					"invalid digest table size=%d for capacity=%d in file=%s", size, capacity, file));
+		}
+		buffer.position(HEADER_SIZE);
+		return new DigestTable(buffer.slice(), digestLength, capacity, size, zeroDigest);
+	}
+
+	/**
+	 * Writes header and slots to {@code file}, replacing it atomically: a running
+	 * pipeline may have the previous file mapped, truncating it in place would fault
+	 * its lookups and expose a half written table to the referential watcher.
+	 */
+	public void write(Path file) throws IOException {
+		final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(channel, null);
+			channel.force(false);
+		}
+		try {
+			Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes header and slots at the current position of {@code channel}.
+	 *
+	 * @param crc32 Updated with the written bytes when not {@code null}.
+	 */
+	void write(FileChannel channel, CRC32 crc32) throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.put(VERSION_ONE);
+		header.put(zeroDigest ? FLAG_ZERO_DIGEST : 0);
+		header.putShort((short) digestLength);
+		header.putInt(capacity);
+		header.putInt(size);
+		header.rewind();
+		final ByteBuffer body = slots.duplicate();
+		body.clear();
+		if (crc32 != null) {
+			crc32.update(header.duplicate());
+			crc32.update(body.duplicate());
+		}
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		while (body.hasRemaining()) {
+			channel.write(body);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the digest was added, {@code false} if it was already present.
+	 * @throws IllegalStateException if the table reached its maximum load.
+	 */
+	public boolean add(byte[] digest) {
+		checkLength(digest);
+		if (isZero(digest)) {
+			final boolean added = !zeroDigest;
+			zeroDigest = true;
+			return added;
+		}
+		final int slot = probe(digest);
+		if (slot >= 0) {
+			return false;
+		}
+		if (size >= threshold) {
+			throw new IllegalStateException(String.format("digest table is full, size=%d capacity=%d", size, capacity));
+		}
+		final int offset = (-slot - 1) * digestLength;
+		for (int i = 0; i < digestLength; i++) {
+			slots.put(offset + i, digest[i]);
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Copies every digest of {@code other} into this table.
+	 */
+	public void addAll(DigestTable other) {
+		if (other.digestLength != digestLength) {
+			throw new IllegalArgumentException(String.format(
+					"digest length=%d does not match table digest length=%d", other.digestLength, digestLength));
+		}
+		other.forEach(this::add);
+	}
+
+	@Override
+	public void forEach(Consumer<byte[]> action) {
+		final byte[] digest = new byte[digestLength];
+		if (zeroDigest) {
+			action.accept(digest);
+		}
+		for (int slot = 0; slot < capacity; slot++) {
+			final int offset = slot * digestLength;
+			if (!isEmpty(offset)) {
+				for (int i = 0; i < digestLength; i++) {
+					digest[i] = slots.get(offset + i);
+				}
+				action.accept(digest);
+			}
+		}
+	}
+
+	@Override
+	public boolean contains(byte[] digest) {
+		if (digest.length != digestLength) {
+			return false;
+		}
+		if (isZero(digest)) {
+			return zeroDigest;
+		}
+		return probe(digest) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return zeroDigest ? size + 1 : size;
+	}
+
+	/**
+	 * @return how many more digests can be added before the table is full.
+	 */
+	public int remaining() {
+		return threshold - size;
+	}
+
+	@Override
+	public int digestLength() {
+		return digestLength;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	@Override
+	public long byteSize() {
+		return (long) capacity * digestLength;
+	}
+
+	// returns the slot holding digest, or -(slot + 1) of the empty slot where it belongs.
+	// the probe is bounded by the capacity in case a mapped file holds more digests than its header says.
+	private int probe(byte[] digest) {
+		int slot = slotOf(digest);
+		for (int probes = 0; probes < capacity; probes++) {
+			final int offset = slot * digestLength;
+			if (matches(offset, digest)) {
+				return slot;
+			}
+			if (isEmpty(offset)) {
+				return -slot - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		throw new IllegalStateException(String.format("digest table has no empty slot, capacity=%d", capacity));
+	}
+
+	// digests are uniformly distributed so their leading bytes are a good enough slot hash
+	private int slotOf(byte[] digest) {
+		return ((digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | (digest[3] & 0xFF)) & mask;
+	}
+
+	private boolean matches(int offset, byte[] digest) {
+		for (int i = 0; i < digestLength; i++) {
+			if (slots.get(offset + i) != digest[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isEmpty(int offset) {
+		for (int i = 0; i < digestLength; i++) {
+			if (slots.get(offset + i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void checkLength(byte[] digest) {
+		if (digest.length != digestLength) {
+			throw new IllegalArgumentException(String.format(
+					"digest length=%d does not match table digest length=%d", digest.length, digestLength));
+		}
+	}
+
+	private static boolean isZero(byte[] digest) {
+		for (byte b : digest) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
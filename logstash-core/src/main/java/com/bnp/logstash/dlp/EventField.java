@@ -0,0 +1,58 @@
+package com.bnp.logstash.dlp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.logstash.FieldReference;
+import org.logstash.Javafier;
+
+import co.elastic.logstash.api.Event;
+
+/**
+ * Field reference such as {@code message} or {@code [user][card]} parsed once
+ * at configuration time, instead of once per event and access.
+ */
+final class EventField {
+
+	private final String reference;
+	private final FieldReference field;
+
+	EventField(String reference) {
+		this.reference = reference;
+		this.field = FieldReference.from(reference);
+	}
+
+	static List<EventField> of(Collection<?> references) {
+		final List<EventField> fields = new ArrayList<>(references.size());
+		for (Object reference : references) {
+			fields.add(new EventField(reference.toString()));
+		}
+		return fields;
+	}
+
+	Object get(Event e) {
+		if (e instanceof org.logstash.Event) {
+			final Object value = ((org.logstash.Event) e).getUnconvertedField(field);
+			return value == null ? null : Javafier.deep(value);
+		}
+		return e.getField(reference);
+	}
+
+	void set(Event e, Object value) {
+		if (e instanceof org.logstash.Event) {
+			((org.logstash.Event) e).setField(field, value);
+		} else {
+			e.setField(reference, value);
+		}
+	}
+
+	String getReference() {
+		return reference;
+	}
+
+	@Override
+	public String toString() {
+		return reference;
+	}
+}
@@ -0,0 +1,132 @@
+package com.bnp.logstash.dlp;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.logstash.secret.SecretIdentifier;
+import org.logstash.secret.store.SecretStore;
+import org.logstash.secret.store.SecretStoreFactory;
+import org.logstash.secret.store.SecureConfig;
+
+/**
+ * Key material of the keyed hashing modes, read once from the Logstash secret
+ * store. In {@link #HMAC} mode a {@link Mac} is initialized once with the key
+ * and every worker gets a clone of it; in {@link #SALTED} mode the key is
+ * prepended to every value.
+ *
+ * <p>Referentials must be produced with the same mode and key, typically by a
+ * {@code dlp_encryptor} sharing the keystore settings.</p>
+ */
+public final class HashingKey {
+
+	public static final String PLAIN = "plain";
+	public static final String HMAC = "hmac";
+	public static final String SALTED = "salted";
+
+	private final String hashingMode;
+	private final byte[] secret;
+	private final Mac prototype;
+
+	private HashingKey(String hashingMode, String hashingAlgorithm, byte[] secret) {
+		this.hashingMode = hashingMode;
+		this.secret = secret;
+		if (HMAC.equals(hashingMode)) {
+			try {
+				this.prototype = Mac.getInstance(macAlgorithmName(hashingAlgorithm));
+				this.prototype.init(new SecretKeySpec(secret, prototype.getAlgorithm()));
+			} catch (NoSuchAlgorithmException | InvalidKeyException e) {
+				throw new IllegalStateException(e);
+			}
+		} else if (SALTED.equals(hashingMode)) {
+			this.prototype = null;
+		} else {
+			throw new IllegalArgumentException("Unknown hashing mode " + hashingMode);
+		}
+	}
+
+	/**
+	 * @param hashingMode One of {@link #PLAIN}, {@link #HMAC} or {@link #SALTED}.
+	 * @param keystoreFile Logstash keystore, its password is read from {@code LOGSTASH_KEYSTORE_PASS}.
+	 * @param keyId Identifier of the key in the keystore.
+	 * @return {@code null} in {@link #PLAIN} mode.
+	 */
+	public static HashingKey load(String hashingMode, String hashingAlgorithm, String keystoreFile, String keyId) {
+		return load(hashingMode, hashingAlgorithm, keystoreFile, keyId, SecretStoreFactory.fromEnvironment());
+	}
+
+	static HashingKey load(String hashingMode, String hashingAlgorithm, String keystoreFile, String keyId,
+			SecretStoreFactory secretStoreFactory) {
+		if (PLAIN.equals(hashingMode)) {
+			return null;
+		}
+		if (keystoreFile == null || keystoreFile.isEmpty()) {
+			throw new IllegalArgumentException("A keystore is required by hashing mode " + hashingMode);
+		}
+		final SecureConfig secureConfig = new SecureConfig();
+		secureConfig.add("keystore.file", keystoreFile.toCharArray());
+		final SecretStore secretStore = secretStoreFactory.load(secureConfig);
+		final byte[] secret = secretStore.retrieveSecret(new SecretIdentifier(keyId));
+		if (secret == null || secret.length == 0) {
+			throw new IllegalArgumentException("No hashing key " + keyId + " in keystore " + keystoreFile);
+		}
+		return new HashingKey(hashingMode, hashingAlgorithm, secret);
+	}
+
+	public static HashingKey of(String hashingMode, String hashingAlgorithm, byte[] secret) {
+		return new HashingKey(hashingMode, hashingAlgorithm, secret.clone());
+	}
+
+	/**
+	 * Maps the {@code hashing_algorithm} option to its JCA HMAC name, unknown
+	 * values fall back to HmacSHA256.
+	 */
+	public static String macAlgorithmName(String hashingAlgorithm) {
+		switch (hashingAlgorithm) {
+		case TokenDigester.SHA1:
+			return "HmacSHA1";
+		case TokenDigester.SHA512:
+			return "HmacSHA512";
+		case TokenDigester.MD5:
+			return "HmacMD5";
+		case TokenDigester.SHA256:
+		default:
+			return "HmacSHA256";
+		}
+	}
+
+	public String getHashingMode() {
+		return hashingMode;
+	}
+
+	/**
+	 * @return a {@link Mac} already initialized with the key, {@code null} outside of {@link #HMAC} mode.
+	 */
+	Mac newMac() {
+		if (prototype == null) {
+			return null;
+		}
+		synchronized (prototype) {
+			try {
+				return (Mac) prototype.clone();
+			} catch (CloneNotSupportedException e) {
+				try {
+					final Mac mac = Mac.getInstance(prototype.getAlgorithm());
+					mac.init(new SecretKeySpec(secret, prototype.getAlgorithm()));
+					return mac;
+				} catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the salt prepended to every value, {@code null} outside of {@link #SALTED} mode.
+	 */
+	byte[] salt() {
+		return SALTED.equals(hashingMode) ? secret : null;
+	}
+}
@@ -0,0 +1,204 @@
+package com.bnp.logstash.dlp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds values of non enumerable classes, such as payment cards, IBANs or
+ * emails, with regular expressions. All the patterns are compiled into a single
+ * alternation so a message is scanned once whatever the number of patterns;
+ * the validator of the matching pattern and then the {@link TokenMatcher} are
+ * only asked about the candidates. A rejected candidate does not hide the
+ * others: the next patterns are tried at its start, then the scan resumes one
+ * char further. Everything outside of masked candidates is copied unchanged.
+ *
+ * <p>Patterns are wrapped in named groups, numbered back references such as
+ * {@code \1} would refer to another group and are rejected; use named groups
+ * and {@code \k<name>} instead.</p>
+ */
+public final class PatternTokenScanner implements TokenScanner {
+
+	public static final String CREDIT_CARD = "credit_card";
+	public static final String IBAN = "iban";
+	public static final String EMAIL = "email";
+
+	/**
+	 * Built-in patterns, digits and account numbers may be grouped with spaces or dashes.
+	 */
+	public static final Map<String, String> BUILT_IN_PATTERNS;
+
+	private static final Map<String, String> BUILT_IN_VALIDATORS;
+	private static final String GROUP_PREFIX = "dlpPattern";
+
+	static {
+		final Map<String, String> patterns = new LinkedHashMap<>();
+		patterns.put(CREDIT_CARD, "(?<![\\w-])\\d(?:[ -]?\\d){12,18}(?![\\w-])");
+		patterns.put(IBAN, "(?<![\\w-])[A-Z]{2}\\d{2}(?: ?[A-Z0-9]){11,30}(?![\\w-])");
+		patterns.put(EMAIL, "(?<![\\w.%+-])[\\w.%+-]+@[A-Za-z0-9-]+(?:\\.[A-Za-z0-9-]+)*\\.[A-Za-z]{2,}(?![\\w-])");
+		BUILT_IN_PATTERNS = Collections.unmodifiableMap(patterns);
+		final Map<String, String> validators = new LinkedHashMap<>();
+		validators.put(CREDIT_CARD, PatternValidators.LUHN);
+		validators.put(IBAN, PatternValidators.MOD_97);
+		BUILT_IN_VALIDATORS = Collections.unmodifiableMap(validators);
+	}
+
+	private final Pattern pattern;
+	private final Pattern[] alternatives;
+	private final String[] groups;
+	private final TokenMatcher[] validators;
+	private final ThreadLocal<Matcher> matchers;
+	private final ThreadLocal<Matcher[]> alternativeMatchers;
+
+	/**
+	 * @param patterns   Regular expressions by name, tried in iteration order at every position.
+	 * @param validators Validators by pattern name, see {@link PatternValidators#of(String)}.
+	 */
+	public PatternTokenScanner(Map<String, String> patterns, Map<String, String> validators) {
+		if (patterns.isEmpty()) {
+			throw new IllegalArgumentException("At least one pattern is required");
+		}
+		final StringBuilder alternation = new StringBuilder();
+		final List<Pattern> alternativeList = new ArrayList<>();
+		final List<TokenMatcher> validatorList = new ArrayList<>();
+		for (Map.Entry<String, String> entry : patterns.entrySet()) {
+			if (hasNumberedBackReference(entry.getValue())) {
+				throw new IllegalArgumentException(String.format(
+						"Invalid pattern %s: numbered back references are not supported, use a named group and \\k<name>",
+						entry.getKey()));
+			}
+			// every pattern is compiled alone first so a broken one is reported by name
+			try {
+				alternativeList.add(Pattern.compile(entry.getValue()));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(String.format("Invalid pattern %s: %s", entry.getKey(), e.getMessage()), e);
+			}
+			alternation.append(alternation.length() == 0 ? "" : "|")
+					.append("(?<").append(GROUP_PREFIX).append(validatorList.size()).append('>').append(entry.getValue()).append(')');
+			final String validator = validators.get(entry.getKey());
+			validatorList.add(PatternValidators.of(validator == null ? PatternValidators.NONE : validator));
+		}
+		try {
+			this.pattern = Pattern.compile(alternation.toString());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Patterns cannot be combined, group names must be unique: " + e.getMessage(), e);
+		}
+		this.alternatives = alternativeList.toArray(new Pattern[0]);
+		this.groups = new String[validatorList.size()];
+		for (int i = 0; i < groups.length; i++) {
+			groups[i] = GROUP_PREFIX + i;
+		}
+		this.validators = validatorList.toArray(new TokenMatcher[0]);
+		this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+		this.alternativeMatchers = ThreadLocal.withInitial(() -> {
+			final Matcher[] alternativeMatchers = new Matcher[alternatives.length];
+			for (int i = 0; i < alternativeMatchers.length; i++) {
+				// look-arounds see the chars around the region
+				alternativeMatchers[i] = alternatives[i].matcher("").useTransparentBounds(true).useAnchoringBounds(false);
+			}
+			return alternativeMatchers;
+		});
+	}
+
+	/**
+	 * @param names Names of built-in patterns, see {@link #BUILT_IN_PATTERNS}.
+	 * @param custom Additional regular expressions by name.
+	 * @param customValidators Validators of the additional patterns by name.
+	 */
+	public static PatternTokenScanner of(List<String> names, Map<String, String> custom, Map<String, String> customValidators) {
+		final Map<String, String> patterns = new LinkedHashMap<>();
+		final Map<String, String> validators = new LinkedHashMap<>();
+		for (String name : names) {
+			final String builtIn = BUILT_IN_PATTERNS.get(name);
+			if (builtIn == null) {
+				throw new IllegalArgumentException("Unknown detector " + name);
+			}
+			patterns.put(name, builtIn);
+			if (BUILT_IN_VALIDATORS.containsKey(name)) {
+				validators.put(name, BUILT_IN_VALIDATORS.get(name));
+			}
+		}
+		patterns.putAll(custom);
+		validators.putAll(customValidators);
+		return new PatternTokenScanner(patterns, validators);
+	}
+
+	@Override
+	public void scan(CharSequence message, TokenMatcher matcher, TokenMasker masker, StringBuilder out) {
+		final Matcher candidates = matchers.get().reset(message);
+		final int length = message.length();
+		int copied = 0;
+		int from = 0;
+		while (from < length && candidates.find(from)) {
+			final int start = candidates.start();
+			int end = candidates.end();
+			if (start == end) {
+				from = start + 1;
+				continue;
+			}
+			int next = alternative(candidates);
+			if (!accepts(next, message, start, end, matcher)) {
+				// the alternation only reports the first pattern matching at start, the next ones may still match
+				end = -1;
+				final Matcher[] others = alternativeMatchers.get();
+				for (next++; next < others.length && end < 0; next++) {
+					final Matcher other = others[next].reset(message).region(start, length);
+					if (other.lookingAt() && other.end() > start && accepts(next, message, start, other.end(), matcher)) {
+						end = other.end();
+					}
+					other.reset("");
+				}
+			}
+			if (end < 0) {
+				from = start + 1;
+				continue;
+			}
+			out.append(message, copied, start);
+			masker.mask(message, start, end, out);
+			copied = end;
+			from = end;
+		}
+		out.append(message, copied, length);
+		// do not keep a reference to the last message
+		candidates.reset("");
+	}
+
+	private boolean accepts(int alternative, CharSequence message, int start, int end, TokenMatcher matcher) {
+		return validators[alternative].matches(message, start, end) && matcher.matches(message, start, end);
+	}
+
+	// numbered groups are renumbered once the pattern is wrapped in the alternation
+	static boolean hasNumberedBackReference(String regex) {
+		for (int i = 0; i < regex.length() - 1; i++) {
+			if (regex.charAt(i) != '\\') {
+				continue;
+			}
+			final char next = regex.charAt(i + 1);
+			if (next == 'Q') {
+				final int quoteEnd = regex.indexOf("\\E", i + 2);
+				if (quoteEnd < 0) {
+					return false;
+				}
+				i = quoteEnd + 1;
+			} else if (next >= '1' && next <= '9') {
+				return true;
+			} else {
+				i++;
+			}
+		}
+		return false;
+	}
+
+	private int alternative(Matcher candidates) {
+		for (int i = 0; i < groups.length - 1; i++) {
+			if (candidates.start(groups[i]) >= 0) {
+				return i;
+			}
+		}
+		return groups.length - 1;
+	}
+}
@@ -0,0 +1,114 @@
+package com.bnp.logstash.dlp;
+
+/**
+ * Check digit validators run by {@link PatternTokenScanner} on the candidates
+ * of a pattern. Separators allowed by the built-in patterns (spaces and
+ * dashes) are skipped.
+ */
+public final class PatternValidators {
+
+	public static final String NONE = "none";
+	public static final String LUHN = "luhn";
+	public static final String MOD_97 = "mod97";
+
+	/**
+	 * Payment card numbers: 13 to 19 digits whose Luhn checksum is 0.
+	 */
+	public static final TokenMatcher LUHN_VALIDATOR = PatternValidators::luhn;
+
+	/**
+	 * IBANs (ISO 13616): country code, check digits and account, the
+	 * rearranged number being 1 modulo 97.
+	 */
+	public static final TokenMatcher MOD_97_VALIDATOR = PatternValidators::mod97;
+
+	public static final TokenMatcher NO_VALIDATOR = (message, start, end) -> true;
+
+	private PatternValidators() {
+	}
+
+	public static TokenMatcher of(String validator) {
+		switch (validator) {
+		case NONE:
+			return NO_VALIDATOR;
+		case LUHN:
+			return LUHN_VALIDATOR;
+		case MOD_97:
+			return MOD_97_VALIDATOR;
+		default:
+			throw new IllegalArgumentException("Unknown validator " + validator);
+		}
+	}
+
+	private static boolean luhn(CharSequence message, int start, int end) {
+		int sum = 0;
+		int digits = 0;
+		for (int i = end - 1; i >= start; i--) {
+			final char c = message.charAt(i);
+			if (isSeparator(c)) {
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				return false;
+			}
+			int digit = c - '0';
+			if ((digits++ & 1) == 1) {
+				digit *= 2;
+				if (digit > 9) {
+					digit -= 9;
+				}
+			}
+			sum += digit;
+		}
+		return digits >= 13 && digits <= 19 && sum % 10 == 0;
+	}
+
+	private static boolean mod97(CharSequence message, int start, int end) {
+		// the country code and check digits are moved after the account
+		int rearranged = -1;
+		int remainder = 0;
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			final char c = message.charAt(i);
+			if (isSeparator(c)) {
+				continue;
+			}
+			if (++length == 4) {
+				rearranged = i + 1;
+				break;
+			}
+		}
+		if (rearranged < 0) {
+			return false;
+		}
+		for (int i = rearranged; i < end; i++) {
+			remainder = mod97(remainder, message.charAt(i));
+			if (remainder < 0) {
+				return false;
+			}
+			length += isSeparator(message.charAt(i)) ? 0 : 1;
+		}
+		for (int i = start; i < rearranged && remainder >= 0; i++) {
+			remainder = mod97(remainder, message.charAt(i));
+		}
+		return length >= 15 && length <= 34 && remainder == 1;
+	}
+
+	// appends the value of c to the remainder, -1 when c is neither a digit nor a letter
+	private static int mod97(int remainder, char c) {
+		if (isSeparator(c)) {
+			return remainder;
+		} else if (c >= '0' && c <= '9') {
+			return (remainder * 10 + c - '0') % 97;
+		} else if (c >= 'A' && c <= 'Z') {
+			return (remainder * 100 + c - 'A' + 10) % 97;
+		} else if (c >= 'a' && c <= 'z') {
+			return (remainder * 100 + c - 'a' + 10) % 97;
+		}
+		return -1;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == ' ' || c == '-';
+	}
+}
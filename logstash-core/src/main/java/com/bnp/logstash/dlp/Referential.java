@@ -0,0 +1,379 @@
+package com.bnp.logstash.dlp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.logstash.instrument.metrics.Metric;
+import org.logstash.instrument.metrics.counter.LongCounter;
+import org.logstash.instrument.metrics.gauge.BooleanGauge;
+import org.logstash.instrument.metrics.gauge.NumberGauge;
+
+/**
+ * Hash referential of one application code. The loaded table is immutable and
+ * swapped atomically on reload; lines appended to the text referential are
+ * added to a copy of a small delta table instead of rebuilding the whole set.
+ * Published tables are never written again, workers probe them without locking.
+ */
+public final class Referential {
+
+	private static final Logger LOGGER = LogManager.getLogger(Referential.class);
+	private static final int MIN_DELTA_SIZE = 1024;
+
+	private final String applicationCode;
+	private final Path dataFile;
+	private final Path indexFile;
+	private final Path snapshotFile;
+	private final Path statsFile;
+
+	private volatile Snapshot snapshot;
+	private volatile TokenShape tokenShape;
+	private volatile TokenShape windowShape;
+
+	// state of the source files covered by the current snapshot, guarded by this
+	private long dataOffset;
+	private FileTime dataModified;
+	private FileTime indexModified;
+	private FileTime statsModified;
+	private FileTime staleStatsModified;
+	private TokenShape statsShape;
+
+	private final LongCounter reloads = new LongCounter("reloads");
+	private final LongCounter appends = new LongCounter("appends");
+	private final NumberGauge reloadDuration = new NumberGauge("last_reload_duration_in_millis", 0L);
+	private final NumberGauge size = new NumberGauge("size", 0L);
+	private final NumberGauge loadProgress = new NumberGauge("load_progress_percent", 0L);
+	private final NumberGauge loadThroughput = new NumberGauge("last_load_hashes_per_second", 0L);
+	private final BooleanGauge tokenShapeStale = new BooleanGauge("token_shape_stale", false);
+
+	private Referential(String applicationCode, Path dataFile, Path indexFile) {
+		this.applicationCode = applicationCode;
+		this.dataFile = dataFile;
+		this.indexFile = indexFile;
+		this.snapshotFile = ReferentialSnapshot.pathFor(dataFile);
+		this.statsFile = TokenShape.statsPathFor(dataFile);
+	}
+
+	/**
+	 * Loads the referential of {@code applicationCode} from {@code <path><app>.hidx}
+	 * when it is at least as recent as {@code <path><app>.data}, else from the
+	 * {@code <path><app>.hsnap} snapshot built from the current text file, else
+	 * from the text file itself, writing a new snapshot.
+	 */
+	public static Referential load(String hashReferencePath, String applicationCode) throws IOException {
+		final Referential referential = new Referential(applicationCode,
+				Paths.get(hashReferencePath + applicationCode + ReferentialConverter.DATA_EXTENSION).toAbsolutePath(),
+				Paths.get(hashReferencePath + applicationCode + ReferentialConverter.INDEX_EXTENSION).toAbsolutePath());
+		synchronized (referential) {
+			referential.reload(0L);
+		}
+		return referential;
+	}
+
+	public boolean contains(byte[] digest) {
+		return snapshot.contains(digest);
+	}
+
+	public String getApplicationCode() {
+		return applicationCode;
+	}
+
+	public Path getDataFile() {
+		return dataFile;
+	}
+
+	public Path getIndexFile() {
+		return indexFile;
+	}
+
+	public Path getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	public Path getStatsFile() {
+		return statsFile;
+	}
+
+	/**
+	 * @return the shape of the referential values read from its {@code .stats}
+	 *         sidecar, {@code null} when there is none or when it is older than
+	 *         the text referential.
+	 */
+	public TokenShape getTokenShape() {
+		return tokenShape;
+	}
+
+	/**
+	 * @return the shape giving the window lengths of substring detection: the
+	 *         token shape, its {@link TokenShape#unpruned() unpruned} length
+	 *         range when the sidecar is older than the text referential,
+	 *         {@code null} when there is no sidecar.
+	 */
+	public TokenShape getWindowShape() {
+		return windowShape;
+	}
+
+	/**
+	 * @return a number that changes every time the referential content changes.
+	 */
+	public long generation() {
+		return snapshot.generation;
+	}
+
+	public int size() {
+		return snapshot.size();
+	}
+
+	public int digestLength() {
+		return snapshot.base.digestLength();
+	}
+
+	public LongCounter getReloads() {
+		return reloads;
+	}
+
+	public LongCounter getAppends() {
+		return appends;
+	}
+
+	public NumberGauge getReloadDuration() {
+		return reloadDuration;
+	}
+
+	public NumberGauge getLoadProgress() {
+		return loadProgress;
+	}
+
+	public NumberGauge getLoadThroughput() {
+		return loadThroughput;
+	}
+
+	public NumberGauge getSize() {
+		return size;
+	}
+
+	public BooleanGauge getTokenShapeStale() {
+		return tokenShapeStale;
+	}
+
+	List<Metric<?>> metrics() {
+		return Arrays.asList(reloads, appends, reloadDuration, size, loadProgress, loadThroughput, tokenShapeStale);
+	}
+
+	/**
+	 * Brings the referential up to date with its files: digests appended to
+	 * the text file are added incrementally, any other change triggers a full
+	 * reload. Readers keep using the previous content until the new one is
+	 * swapped in.
+	 */
+	public synchronized void refresh() throws IOException {
+		final FileTime currentIndexModified = modifiedTime(indexFile);
+		final FileTime currentDataModified = modifiedTime(dataFile);
+		final long dataSize = currentDataModified == null ? 0L : Files.size(dataFile);
+		final long generation = snapshot.generation + 1;
+		refreshTokenShape(currentDataModified);
+		if (!Objects.equals(currentIndexModified, indexModified) || dataSize < dataOffset
+				|| dataSize == dataOffset && !Objects.equals(currentDataModified, dataModified)) {
+			reload(generation);
+		} else if (dataSize > dataOffset) {
+			append(generation, dataSize, currentDataModified);
+		}
+	}
+
+	private void reload(long generation) throws IOException {
+		final long start = System.nanoTime();
+		final FileTime currentIndexModified = modifiedTime(indexFile);
+		final FileTime currentDataModified = modifiedTime(dataFile);
+		final long dataSize = currentDataModified == null ? 0L : Files.size(dataFile);
+		final DigestSet table;
+		if (currentIndexModified != null
+				&& (currentDataModified == null || currentIndexModified.compareTo(currentDataModified) >= 0)) {
+			LOGGER.info("Mapping hash index {} for application code {}", indexFile, applicationCode);
+			table = DigestTable.open(indexFile);
+		} else {
+			final DigestSet mapped = currentDataModified == null ? null : readSnapshot(dataSize, currentDataModified);
+			if (mapped != null) {
+				LOGGER.info("Mapping hash referential snapshot {} for application code {}", snapshotFile, applicationCode);
+				table = mapped;
+			} else {
+				LOGGER.info("Loading hash referential {} for application code {}", dataFile, applicationCode);
+				table = ReferentialLoader.load(dataFile, loadProgress);
+				loadThroughput.set(table.size() * 1_000_000_000L / Math.max(1L, System.nanoTime() - start));
+				writeSnapshot(table, dataSize, currentDataModified);
+			}
+		}
+		snapshot = new Snapshot(table, null, generation);
+		statsModified = null;
+		refreshTokenShape(currentDataModified);
+		indexModified = currentIndexModified;
+		dataModified = currentDataModified;
+		dataOffset = dataSize;
+		reloads.increment();
+		updateMetrics(start);
+		LOGGER.info("Loaded hash referential for application code {} having size: {} in {}ms",
+				applicationCode, size.getValue(), reloadDuration.getValue());
+	}
+
+	// values added to the text referential after the stats were computed may have another shape, a stale shape
+	// would let them through unmasked
+	private void refreshTokenShape(FileTime currentDataModified) {
+		try {
+			final FileTime currentStatsModified = modifiedTime(statsFile);
+			if (currentStatsModified == null) {
+				statsShape = null;
+			} else if (!currentStatsModified.equals(statsModified)) {
+				statsShape = TokenShape.read(statsFile);
+				LOGGER.info("Using {} for application code {}", statsShape, applicationCode);
+			}
+			statsModified = currentStatsModified;
+			if (statsShape != null && currentDataModified != null && currentStatsModified.compareTo(currentDataModified) < 0) {
+				if (!currentStatsModified.equals(staleStatsModified)) {
+					LOGGER.warn("Ignoring token shape {} older than referential {}, regenerate it to enable pruning; "
+							+ "until then substring detection only finds values of other lengths as whole tokens",
+							statsFile, dataFile);
+					staleStatsModified = currentStatsModified;
+				}
+				tokenShape = null;
+				windowShape = statsShape.unpruned();
+				tokenShapeStale.set(true);
+			} else {
+				tokenShape = statsShape;
+				windowShape = statsShape;
+				tokenShapeStale.set(false);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Ignoring token shape {}: {}", statsFile, e.getMessage());
+			statsShape = null;
+			tokenShape = null;
+			windowShape = null;
+			tokenShapeStale.set(false);
+		}
+	}
+
+	// a missing, stale or corrupted snapshot only means the text file has to be parsed
+	private DigestSet readSnapshot(long dataSize, FileTime currentDataModified) {
+		try {
+			return ReferentialSnapshot.read(snapshotFile, dataSize, currentDataModified);
+		} catch (IOException e) {
+			LOGGER.warn("Ignoring hash referential snapshot {}: {}", snapshotFile, e.getMessage());
+			return null;
+		}
+	}
+
+	private void writeSnapshot(DigestSet table, long dataSize, FileTime currentDataModified) {
+		try {
+			ReferentialSnapshot.write(snapshotFile, table, dataSize, currentDataModified);
+		} catch (IOException e) {
+			LOGGER.warn("Could not write hash referential snapshot {}", snapshotFile, e);
+		}
+	}
+
+	private void append(long generation, long dataSize, FileTime currentDataModified) throws IOException {
+		final long start = System.nanoTime();
+		final ByteBuffer appended = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, dataSize - dataOffset));
+		try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+			channel.position(dataOffset);
+			while (appended.hasRemaining()) {
+				if (channel.read(appended) < 0) {
+					break;
+				}
+			}
+		}
+		final byte[] bytes = appended.array();
+		final int length = appended.position();
+		int lines = 0;
+		int consumed = 0;
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] == '\n') {
+				lines++;
+				consumed = i + 1;
+			}
+		}
+		if (lines == 0) {
+			// wait for the writer to complete the line
+			return;
+		}
+		final Snapshot current = snapshot;
+		final DigestSet base = current.base;
+		// workers may be probing the published delta, appends go to a copy
+		final DigestTable delta = DigestTable.allocate(base.digestLength(),
+				Math.max(MIN_DELTA_SIZE, 2 * ((current.delta == null ? 0 : current.delta.size()) + lines)));
+		if (current.delta != null) {
+			delta.addAll(current.delta);
+		}
+		final byte[] digest = new byte[base.digestLength()];
+		long added = 0;
+		long invalid = 0;
+		int lineStart = 0;
+		for (int i = 0; i < consumed; i++) {
+			if (bytes[i] == '\n') {
+				final String hex = new String(bytes, lineStart, i - lineStart, StandardCharsets.ISO_8859_1).trim();
+				lineStart = i + 1;
+				if (hex.isEmpty()) {
+					continue;
+				}
+				if (!ReferentialConverter.decodeHex(hex, digest)) {
+					invalid++;
+				} else if (!base.contains(digest) && delta.add(digest)) {
+					added++;
+				}
+			}
+		}
+		if (invalid > 0) {
+			LOGGER.warn("Skipped {} invalid lines appended to referential {}", invalid, dataFile);
+		}
+		snapshot = new Snapshot(base, delta, generation);
+		dataOffset += consumed;
+		dataModified = currentDataModified;
+		appends.increment();
+		updateMetrics(start);
+		LOGGER.debug("Appended {} hashes to referential for application code {} in {}ms",
+				added, applicationCode, reloadDuration.getValue());
+	}
+
+	private void updateMetrics(long startNanos) {
+		reloadDuration.set((System.nanoTime() - startNanos) / 1_000_000L);
+		size.set(snapshot.size());
+	}
+
+	private static FileTime modifiedTime(Path file) throws IOException {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	private static final class Snapshot {
+
+		private final DigestSet base;
+		private final DigestTable delta;
+		private final long generation;
+
+		private Snapshot(DigestSet base, DigestTable delta, long generation) {
+			this.base = base;
+			this.delta = delta;
+			this.generation = generation;
+		}
+
+		private boolean contains(byte[] digest) {
+			return base.contains(digest) || delta != null && delta.contains(digest);
+		}
+
+		private int size() {
+			return delta == null ? base.size() : base.size() + delta.size();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.bnp.logstash.dlp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.logstash.instrument.metrics.counter.LongCounter;
+
+/**
+ * Background thread that owns one Kafka consumer for a topic and group and
+ * appends the hashes it receives to a text referential file. Offsets are
+ * committed once the hashes are on disk and the in-memory
+ * {@link ReferentialHash} is refreshed right away, so pipeline workers never
+ * touch Kafka. A referential no filter has loaded yet is left to the filters,
+ * which load it with their own settings.
+ */
+public final class ReferentialConsumer implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(ReferentialConsumer.class);
+	private static final ConcurrentMap<ConsumerSettings, ReferentialConsumer> CONSUMERS = new ConcurrentHashMap<>();
+	private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+	private static final String APP_ID = "app_id";
+
+	private final ConsumerSettings settings;
+	private final Consumer<String, String> consumer;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	private final LongCounter consumedRecords = new LongCounter("consumed_records");
+	private final LongCounter appendedHashes = new LongCounter("appended_hashes");
+
+	ReferentialConsumer(ConsumerSettings settings, Consumer<String, String> consumer) {
+		this.settings = settings;
+		this.consumer = consumer;
+		this.thread = new Thread(this::run, "dlp-referential-consumer[" + settings + "]");
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts the consumer of {@code settings} unless it is already running.
+	 * A referential file that does not exist yet is filled from the earliest
+	 * offset, an existing one from the latest.
+	 */
+	static ReferentialConsumer ensureRunning(ConsumerSettings settings) {
+		return ensureRunning(settings, s -> new KafkaConsumer<String, String>(
+				s.kafkaProperties(Files.exists(s.getHashReferentialFile()) ? "latest" : "earliest")));
+	}
+
+	static ReferentialConsumer ensureRunning(ConsumerSettings settings,
+			Function<ConsumerSettings, Consumer<String, String>> consumerFactory) {
+		return CONSUMERS.computeIfAbsent(settings, s -> {
+			final ReferentialConsumer referentialConsumer = new ReferentialConsumer(s, consumerFactory.apply(s));
+			referentialConsumer.thread.start();
+			return referentialConsumer;
+		});
+	}
+
+	public LongCounter getConsumedRecords() {
+		return consumedRecords;
+	}
+
+	public LongCounter getAppendedHashes() {
+		return appendedHashes;
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		consumer.wakeup();
+		try {
+			thread.join(TimeUnit.SECONDS.toMillis(30));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		CONSUMERS.remove(settings, this);
+	}
+
+	private void run() {
+		try {
+			consumer.subscribe(Collections.singletonList(settings.getHashKafkaTopic()));
+			while (running) {
+				final ConsumerRecords<String, String> records = consumer.poll(POLL_TIMEOUT);
+				if (records.isEmpty()) {
+					continue;
+				}
+				final Set<String> hashes = new LinkedHashSet<>();
+				for (ConsumerRecord<String, String> record : records) {
+					collectHashes(record.value(), hashes);
+				}
+				consumedRecords.increment(records.count());
+				persist(hashes);
+				consumer.commitSync();
+			}
+		} catch (WakeupException e) {
+			if (running) {
+				throw e;
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.error("Hash referential consumer {} stopped", settings, e);
+			CONSUMERS.remove(settings, this);
+		} finally {
+			consumer.close();
+		}
+	}
+
+	// every field of the record except the application id is a hash
+	private void collectHashes(String value, Set<String> hashes) {
+		try {
+			final JSONObject sensitiveJSONData = new JSONObject(value);
+			for (String key : sensitiveJSONData.keySet()) {
+				if (!APP_ID.equals(key)) {
+					hashes.add(String.valueOf(sensitiveJSONData.get(key)).trim());
+				}
+			}
+		} catch (JSONException e) {
+			LOGGER.warn("Skipping invalid hash record from topic {}: {}", settings.getHashKafkaTopic(), e.getMessage());
+		}
+	}
+
+	private void persist(Set<String> hashes) throws IOException {
+		final Path file = settings.getHashReferentialFile();
+		final String hashReferencePath = settings.getHashReferencePath();
+		final Referential referential = hashReferencePath == null ? null
+				: ReferentialHash.getInstance().getLoadedReferentialHash(hashReferencePath, settings.getApplicationCode());
+		if (referential != null) {
+			final byte[] digest = new byte[referential.digestLength()];
+			hashes.removeIf(hash -> ReferentialConverter.decodeHex(hash, digest) && referential.contains(digest));
+		}
+		if (hashes.isEmpty()) {
+			return;
+		}
+		final StringBuilder lines = new StringBuilder();
+		for (String hash : hashes) {
+			lines.append(hash).append('\n');
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			final ByteBuffer bytes = StandardCharsets.ISO_8859_1.encode(lines.toString());
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(false);
+		}
+		appendedHashes.increment(hashes.size());
+		if (referential != null) {
+			referential.refresh();
+		}
+	}
+}
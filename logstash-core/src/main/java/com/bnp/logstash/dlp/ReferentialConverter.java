@@ -0,0 +1,97 @@
+package com.bnp.logstash.dlp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the text referential format (one hex encoded digest per line) and
+ * converts it to the binary {@link DigestTable} index format.
+ */
+public final class ReferentialConverter {
+
+	public static final String DATA_EXTENSION = ".data";
+	public static final String INDEX_EXTENSION = ".hidx";
+
+	private static final Logger LOGGER = LogManager.getLogger(ReferentialConverter.class);
+
+	private ReferentialConverter() {
+	}
+
+	public static void main(final String... args) throws IOException {
+		if (args.length == 0 || "-h".equals(args[0].trim()) || "--help".equals(args[0].trim())) {
+			System.out.println(String.format(
+					"usage: dlpconvert <referential%s> [index file]%n  default [index file] replaces %s with %s%n"
+					+ "       dlpconvert --stats <clear values file> <referential%s>%n  writes the token shape of the values",
+					DATA_EXTENSION, DATA_EXTENSION, INDEX_EXTENSION, TokenShape.STATS_EXTENSION));
+			return;
+		}
+		if ("--stats".equals(args[0].trim()) && args.length > 2) {
+			final TokenShape shape = TokenShape.convert(Paths.get(args[1].trim()), Paths.get(args[2].trim()));
+			System.out.println(String.format("Wrote %s: %s", args[2].trim(), shape));
+			return;
+		}
+		final Path source = Paths.get(args[0].trim());
+		final Path target = args.length > 1 ? Paths.get(args[1].trim()) : indexPathFor(source);
+		final DigestTable table = convert(source, target);
+		System.out.println(String.format("Converted %s to %s: %d digests of %d bytes",
+				source, target, table.size(), table.digestLength()));
+	}
+
+	public static DigestTable convert(Path source, Path target) throws IOException {
+		final DigestTable table = readText(source);
+		table.write(target);
+		return table;
+	}
+
+	/**
+	 * Loads a text referential into a single off-heap table. Blank lines are
+	 * ignored, lines that are not hex digests of the same length as the first
+	 * one are skipped and reported.
+	 */
+	public static DigestTable readText(Path source) throws IOException {
+		return ReferentialLoader.load(source, null).toTable();
+	}
+
+	public static Path indexPathFor(Path dataFile) {
+		final String name = dataFile.getFileName().toString();
+		final String base = name.endsWith(DATA_EXTENSION)
+				? name.substring(0, name.length() - DATA_EXTENSION.length()) : name;
+		return dataFile.resolveSibling(base + INDEX_EXTENSION);
+	}
+
+	static boolean decodeHex(CharSequence hex, byte[] digest) {
+		if (hex.length() != digest.length * 2) {
+			return false;
+		}
+		for (int i = 0; i < digest.length; i++) {
+			final int high = Character.digit(hex.charAt(2 * i), 16);
+			final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+			if (high < 0 || low < 0) {
+				return false;
+			}
+			digest[i] = (byte) (high << 4 | low);
+		}
+		return true;
+	}
+
+	// SHA256 is the default hashing algorithm, used when the referential is empty
+	static int detectDigestLength(Path source) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.ISO_8859_1)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String hex = line.trim();
+				if (!hex.isEmpty()) {
+					return hex.length() / 2;
+				}
+			}
+		}
+		return 32;
+	}
+}
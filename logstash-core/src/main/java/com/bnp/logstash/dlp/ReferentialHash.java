@@ -1,53 +1,109 @@
 package com.bnp.logstash.dlp;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * Registry of loaded {@link Referential}s shared by all DLP filters and
+ * pipeline workers. Lookups of loaded referentials are lock free; the first
+ * lookup of a referential loads it on the calling thread while concurrent
+ * callers for the same referential wait for that single load, referentials
+ * of other application codes load in parallel.
+ */
 public class ReferentialHash {
-	private static ReferentialHash referentialHash = null;
+	private static final ReferentialHash referentialHash = new ReferentialHash();
 	private static final Logger LOGGER = LogManager.getLogger(ReferentialHash.class);
-	private final static int REFERENTIAL_SIZE = 1_000_000;
-	private static DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
-	private static Map<String, Set<String>> referenceMap = new HashMap<String, Set<String>>();
+	private final ConcurrentMap<String, Future<Referential>> referenceMap = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Path, ReferentialWatcher> watchers = new ConcurrentHashMap<>();
 
 	public static ReferentialHash getInstance() {
-		if (referentialHash == null)
-			referentialHash = new ReferentialHash();
-		
 		return referentialHash;
 	}
 	
-	protected Set<String> getReferentialHash(String hashReferencePath, String applicationCode) {
-		if (!referenceMap.containsKey(applicationCode)) {
-			try {
-				referenceMap.put(applicationCode, setReferentialHash(hashReferencePath, applicationCode));
-			} catch (IOException e) {
-				LOGGER.info(e.getMessage());
-				e.printStackTrace();
+	/**
+	 * @return the referential of {@code applicationCode}, or {@code null} if it cannot be loaded.
+	 */
+	protected Referential getReferentialHash(String hashReferencePath, String applicationCode) {
+		final String key = key(hashReferencePath, applicationCode);
+		Future<Referential> loading = referenceMap.get(key);
+		if (loading == null) {
+			final FutureTask<Referential> task = new FutureTask<>(() -> setReferentialHash(hashReferencePath, applicationCode));
+			loading = referenceMap.putIfAbsent(key, task);
+			if (loading == null) {
+				loading = task;
+				task.run();
 			}
 		}
-		return referenceMap.get(applicationCode);
+		try {
+			return loading.get();
+		} catch (ExecutionException e) {
+			// forget the failed load so that the next lookup retries it
+			referenceMap.remove(key, loading);
+			LOGGER.error("Failed to load hash referential " + key, e.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
 	}
 
-	private Set<String> setReferentialHash(String hashReferencePath, String applicationCode) throws IOException {
-		LOGGER.info("Started to load hash to referential map: " + dateFormat.format(new Date()) + " from: " + hashReferencePath + applicationCode);
-		Set<String> referentialHash = new HashSet<String>(REFERENTIAL_SIZE);
-		referentialHash.addAll(Files.lines(Paths.get(hashReferencePath + applicationCode + ".data"), StandardCharsets.ISO_8859_1).sorted().distinct().collect(Collectors.toList()));
-		LOGGER.info("Finished loading hash to referential map: " + dateFormat.format(new Date()) + " with key: " + applicationCode + " having size: " + referentialHash.size());
-		return referentialHash;
+	/**
+	 * @return the referential of {@code applicationCode} if it is already loaded,
+	 *         {@code null} otherwise; unlike {@link #getReferentialHash(String, String)}
+	 *         it never loads nor waits for a load.
+	 */
+	protected Referential getLoadedReferentialHash(String hashReferencePath, String applicationCode) {
+		final Future<Referential> loading = referenceMap.get(key(hashReferencePath, applicationCode));
+		if (loading == null || !loading.isDone()) {
+			return null;
+		}
+		try {
+			return loading.get();
+		} catch (ExecutionException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the referentials of all {@code applicationCodes} in parallel.
+	 */
+	public void preload(String hashReferencePath, Collection<String> applicationCodes) {
+		applicationCodes.parallelStream().distinct().forEach(code -> getReferentialHash(hashReferencePath, code));
+	}
+
+	private static String key(String hashReferencePath, String applicationCode) {
+		return Paths.get(hashReferencePath + applicationCode).toAbsolutePath().normalize().toString();
+	}
+
+	private Referential setReferentialHash(String hashReferencePath, String applicationCode) throws IOException {
+		final Referential referential = Referential.load(hashReferencePath, applicationCode);
+		final Path directory = referential.getDataFile().getParent();
+		try {
+			watchers.computeIfAbsent(directory, dir -> {
+				try {
+					return new ReferentialWatcher(dir);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).register(referential);
+		} catch (UncheckedIOException e) {
+			LOGGER.warn("Cannot watch " + directory + ", referential " + applicationCode + " will not be reloaded", e.getCause());
+		}
+		return referential;
 	}
 	
-}
\ No newline at end of file
+}
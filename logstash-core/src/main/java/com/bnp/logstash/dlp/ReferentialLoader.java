@@ -0,0 +1,260 @@
+package com.bnp.logstash.dlp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.logstash.instrument.metrics.gauge.NumberGauge;
+
+/**
+ * Loads text referentials in parallel: the file is split into byte ranges
+ * ending on line boundaries, every range is memory mapped and parsed on the
+ * fork-join common pool, and digests are routed to the shards of a
+ * {@link ShardedDigestTable} in small batches. Nothing is sorted and no
+ * per-line string is created.
+ */
+public final class ReferentialLoader {
+
+	private static final Logger LOGGER = LogManager.getLogger(ReferentialLoader.class);
+
+	static final long MIN_RANGE_SIZE = 16L << 20;
+	// a range is mapped at once and must stay well below 2GB
+	private static final long MAX_RANGE_SIZE = 1L << 30;
+	private static final int MAX_SHARDS = 64;
+	private static final int BATCH_SIZE = 1024;
+	private static final long PROGRESS_INTERVAL = 4L << 20;
+	private static final int PROGRESS_LOG_STEPS = 10;
+
+	private ReferentialLoader() {
+	}
+
+	/**
+	 * @param progress Gauge set to the loaded percentage of the file while it is parsed, may be {@code null}.
+	 */
+	public static ShardedDigestTable load(Path source, NumberGauge progress) throws IOException {
+		return load(source, MIN_RANGE_SIZE, progress);
+	}
+
+	static ShardedDigestTable load(Path source, long minRangeSize, NumberGauge progress) throws IOException {
+		final long start = System.nanoTime();
+		final int digestLength = ReferentialConverter.detectDigestLength(source);
+		final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		final int shardCount = Math.min(MAX_SHARDS, Integer.highestOneBit(Math.max(1, parallelism - 1)) << 1);
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			final long fileSize = channel.size();
+			final long[] bounds = splitOnLines(channel, fileSize, minRangeSize, 4 * parallelism);
+			final long expectedEntries = fileSize / (digestLength * 2 + 1) + 1;
+			final Shard[] shards = new Shard[shardCount];
+			for (int i = 0; i < shardCount; i++) {
+				shards[i] = new Shard(DigestTable.allocate(digestLength,
+						(int) Math.min(Integer.MAX_VALUE, expectedEntries * 11 / 10 / shardCount + BATCH_SIZE)));
+			}
+			final Progress tracker = new Progress(source, fileSize, progress);
+			final LongAdder invalid = new LongAdder();
+			try {
+				IntStream.range(0, bounds.length - 1).parallel().forEach(range -> {
+					try {
+						parseRange(channel, bounds[range], bounds[range + 1], digestLength, shards, invalid, tracker);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			if (invalid.sum() > 0) {
+				LOGGER.warn("Skipped {} invalid lines in referential {}", invalid.sum(), source);
+			}
+			final DigestTable[] tables = new DigestTable[shardCount];
+			for (int i = 0; i < shardCount; i++) {
+				tables[i] = shards[i].table;
+			}
+			final ShardedDigestTable table = new ShardedDigestTable(tables);
+			final long millis = Math.max(1L, (System.nanoTime() - start) / 1_000_000L);
+			LOGGER.info("Parsed {} hashes from {} ({} MB) in {}ms using {} ranges and {} shards: {} hashes/s, {} MB/s",
+					table.size(), source, fileSize >> 20, millis, bounds.length - 1, shardCount,
+					table.size() * 1000L / millis, (fileSize >> 20) * 1000L / millis);
+			return table;
+		}
+	}
+
+	// range i is [bounds[i], bounds[i + 1]), every bound but the last one follows a line feed
+	private static long[] splitOnLines(FileChannel channel, long fileSize, long minRangeSize, int maxRanges)
+			throws IOException {
+		final long rangeSize = Math.min(MAX_RANGE_SIZE,
+				Math.max(Math.max(minRangeSize, fileSize / Math.max(1, maxRanges)), 1L));
+		final int ranges = (int) Math.max(1L, Math.min(Integer.MAX_VALUE - 1, (fileSize + rangeSize - 1) / rangeSize));
+		final long[] bounds = new long[ranges + 1];
+		final ByteBuffer buffer = ByteBuffer.allocate(4096);
+		int count = 1;
+		for (int i = 1; i < ranges; i++) {
+			long position = Math.max(i * rangeSize, bounds[count - 1]);
+			position = nextLineStart(channel, position, fileSize, buffer);
+			if (position < fileSize && position > bounds[count - 1]) {
+				bounds[count++] = position;
+			}
+		}
+		bounds[count++] = fileSize;
+		final long[] result = new long[count];
+		System.arraycopy(bounds, 0, result, 0, count);
+		return result;
+	}
+
+	private static long nextLineStart(FileChannel channel, long position, long fileSize, ByteBuffer buffer)
+			throws IOException {
+		long current = position;
+		while (current < fileSize) {
+			buffer.clear();
+			final int read = channel.read(buffer, current);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return current + i + 1;
+				}
+			}
+			current += read;
+		}
+		return fileSize;
+	}
+
+	private static void parseRange(FileChannel channel, long from, long to, int digestLength, Shard[] shards,
+			LongAdder invalid, Progress progress) throws IOException {
+		final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+		final int shardMask = shards.length - 1;
+		final byte[][] batches = new byte[shards.length][BATCH_SIZE * digestLength];
+		final int[] batchCounts = new int[shards.length];
+		final int length = buffer.limit();
+		long reported = 0L;
+		int lineStart = 0;
+		for (int i = 0; i <= length; i++) {
+			if (i < length && buffer.get(i) != '\n') {
+				continue;
+			}
+			int start = lineStart;
+			int end = i;
+			lineStart = i + 1;
+			while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+				start++;
+			}
+			while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+				end--;
+			}
+			if (start == end) {
+				continue;
+			}
+			if (end - start != digestLength * 2) {
+				invalid.increment();
+				continue;
+			}
+			final int shard = routeAndDecode(buffer, start, digestLength, shardMask, batches, batchCounts);
+			if (shard < 0) {
+				invalid.increment();
+			} else if (batchCounts[shard] == BATCH_SIZE) {
+				shards[shard].addAll(batches[shard], BATCH_SIZE);
+				batchCounts[shard] = 0;
+			}
+			if (i - reported >= PROGRESS_INTERVAL) {
+				progress.advance(i - reported);
+				reported = i;
+			}
+		}
+		for (int shard = 0; shard < shards.length; shard++) {
+			if (batchCounts[shard] > 0) {
+				shards[shard].addAll(batches[shard], batchCounts[shard]);
+			}
+		}
+		progress.advance(length - reported);
+	}
+
+	// decodes the hex digest at start into the batch of its shard, returns the shard or -1 if not hex
+	private static int routeAndDecode(ByteBuffer buffer, int start, int digestLength, int shardMask,
+			byte[][] batches, int[] batchCounts) {
+		final int lastHigh = Character.digit((char) (buffer.get(start + 2 * digestLength - 2) & 0xFF), 16);
+		final int lastLow = Character.digit((char) (buffer.get(start + 2 * digestLength - 1) & 0xFF), 16);
+		if (lastHigh < 0 || lastLow < 0) {
+			return -1;
+		}
+		final int shard = (lastHigh << 4 | lastLow) & shardMask;
+		final byte[] batch = batches[shard];
+		final int offset = batchCounts[shard] * digestLength;
+		for (int j = 0; j < digestLength; j++) {
+			final int high = Character.digit((char) (buffer.get(start + 2 * j) & 0xFF), 16);
+			final int low = Character.digit((char) (buffer.get(start + 2 * j + 1) & 0xFF), 16);
+			if (high < 0 || low < 0) {
+				return -1;
+			}
+			batch[offset + j] = (byte) (high << 4 | low);
+		}
+		batchCounts[shard]++;
+		return shard;
+	}
+
+	private static final class Shard {
+
+		private DigestTable table;
+
+		private Shard(DigestTable table) {
+			this.table = table;
+		}
+
+		synchronized void addAll(byte[] batch, int count) {
+			final int digestLength = table.digestLength();
+			if (table.remaining() < count) {
+				final DigestTable grown = DigestTable.allocate(digestLength, 2 * (table.size() + count));
+				grown.addAll(table);
+				table = grown;
+			}
+			final byte[] digest = new byte[digestLength];
+			for (int i = 0; i < count; i++) {
+				System.arraycopy(batch, i * digestLength, digest, 0, digestLength);
+				table.add(digest);
+			}
+		}
+	}
+
+	private static final class Progress {
+
+		private final Path source;
+		private final long total;
+		private final NumberGauge gauge;
+		private final AtomicLong done = new AtomicLong();
+		private final AtomicInteger loggedStep = new AtomicInteger();
+		private final long start = System.nanoTime();
+
+		private Progress(Path source, long total, NumberGauge gauge) {
+			this.source = source;
+			this.total = Math.max(1L, total);
+			this.gauge = gauge;
+			if (gauge != null) {
+				gauge.set(0L);
+			}
+		}
+
+		void advance(long bytes) {
+			final long current = done.addAndGet(bytes);
+			final long percent = current * 100L / total;
+			if (gauge != null) {
+				gauge.set(percent);
+			}
+			final int step = (int) (percent * PROGRESS_LOG_STEPS / 100L);
+			final int logged = loggedStep.get();
+			if (step > logged && step < PROGRESS_LOG_STEPS && loggedStep.compareAndSet(logged, step)) {
+				final long millis = Math.max(1L, (System.nanoTime() - start) / 1_000_000L);
+				LOGGER.info("Loading referential {}: {}% ({} MB/s)", source, percent, (current >> 20) * 1000L / millis);
+			}
+		}
+	}
+}
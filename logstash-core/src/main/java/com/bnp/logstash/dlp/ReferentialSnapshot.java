@@ -0,0 +1,151 @@
+package com.bnp.logstash.dlp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a loaded text referential, written next to it so that the
+ * next start maps it instead of parsing the text again. The snapshot records
+ * the size and modification time of the text file it was built from and is
+ * only used while both still match.
+ *
+ * <p>File layout (big endian):</p>
+ * <pre>
+ * magic (int) | version (byte) | padding (3) | source size (long) | source mtime millis (long) | shard count (int) | checksum (int) | shard tables
+ * </pre>
+ * Every shard is stored in the {@link DigestTable} index layout, the checksum is
+ * the CRC32 of everything following the header.
+ */
+final class ReferentialSnapshot {
+
+	static final String SNAPSHOT_EXTENSION = ".hsnap";
+	static final int MAGIC = 0x444C5053; // "DLPS"
+	static final byte VERSION_ONE = (byte) 1;
+	static final int HEADER_SIZE = 32;
+
+	private static final int CHECKSUM_CHUNK = 1 << 28;
+
+	private ReferentialSnapshot() {
+	}
+
+	static Path pathFor(Path dataFile) {
+		final String name = dataFile.getFileName().toString();
+		final String base = name.endsWith(ReferentialConverter.DATA_EXTENSION)
+				? name.substring(0, name.length() - ReferentialConverter.DATA_EXTENSION.length()) : name;
+		return dataFile.resolveSibling(base + SNAPSHOT_EXTENSION);
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file first and moves it in place, like checkpoints.
+	 */
+	static void write(Path file, DigestSet digests, long sourceSize, FileTime sourceModified) throws IOException {
+		final DigestTable[] shards;
+		if (digests instanceof ShardedDigestTable) {
+			final ShardedDigestTable sharded = (ShardedDigestTable) digests;
+			shards = new DigestTable[sharded.shardCount()];
+			for (int i = 0; i < shards.length; i++) {
+				shards[i] = sharded.shard(i);
+			}
+		} else if (digests instanceof DigestTable) {
+			shards = new DigestTable[] {(DigestTable) digests};
+		} else {
+			throw new IllegalArgumentException("Unsupported digest set " + digests.getClass());
+		}
+		final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		final CRC32 crc32 = new CRC32();
+		try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.position(HEADER_SIZE);
+			for (DigestTable shard : shards) {
+				shard.write(channel, crc32);
+			}
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.put(VERSION_ONE);
+			header.position(8);
+			header.putLong(sourceSize);
+			header.putLong(sourceModified.toMillis());
+			header.putInt(shards.length);
+			header.putInt((int) crc32.getValue());
+			header.rewind();
+			channel.position(0L);
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			channel.force(false);
+		}
+		try {
+			Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Maps the snapshot if it was built from a source of the given size and modification time.
+	 *
+	 * @return {@code null} if the snapshot is missing or stale.
+	 * @throws IOException if the snapshot is corrupted.
+	 */
+	static DigestSet read(Path file, long sourceSize, FileTime sourceModified) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final long fileSize = channel.size();
+			final ByteBuffer header = readFully(channel, 0L, HEADER_SIZE, file);
+			final int magic = header.getInt(0);
+			final byte version = header.get(4);
+			if (magic != MAGIC || version != VERSION_ONE) {
+				throw new IOException(String.format("unexpected snapshot magic=%x version=%d in file=%s", magic, version, file));
+			}
+			if (header.getLong(8) != sourceSize || header.getLong(16) != sourceModified.toMillis()) {
+				return null;
+			}
+			final int shardCount = header.getInt(24);
+			final int checksum = header.getInt(28);
+			if (shardCount <= 0 || Integer.bitCount(shardCount) != 1) {
+				throw new IOException(String.format("invalid snapshot shard count=%d in file=%s", shardCount, file));
+			}
+			final CRC32 crc32 = new CRC32();
+			for (long position = HEADER_SIZE; position < fileSize; position += CHECKSUM_CHUNK) {
+				crc32.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(CHECKSUM_CHUNK, fileSize - position)));
+			}
+			if ((int) crc32.getValue() != checksum) {
+				throw new IOException(String.format("snapshot checksum mismatch, expected: %d, actual: %d in file=%s",
+						checksum, (int) crc32.getValue(), file));
+			}
+			final DigestTable[] shards = new DigestTable[shardCount];
+			long position = HEADER_SIZE;
+			for (int i = 0; i < shardCount; i++) {
+				final ByteBuffer shardHeader = readFully(channel, position, DigestTable.HEADER_SIZE, file);
+				final long length = DigestTable.HEADER_SIZE + (long) shardHeader.getInt(8) * shardHeader.getShort(6);
+				shards[i] = DigestTable.open(channel, position, length, file);
+				position += length;
+			}
+			if (position != fileSize) {
+				throw new IOException(String.format("unexpected snapshot size=%d, expected=%d in file=%s", fileSize, position, file));
+			}
+			return shardCount == 1 ? shards[0] : new ShardedDigestTable(shards);
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length, Path file) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException(String.format("truncated snapshot file=%s", file));
+			}
+		}
+		return buffer;
+	}
+}
@@ -0,0 +1,85 @@
+package com.bnp.logstash.dlp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches one referential directory and refreshes the registered
+ * {@link Referential}s when their text, index or token shape file changes. Refreshes run
+ * on the watcher thread, pipeline workers keep reading the previous content
+ * until the new one is swapped in.
+ */
+public final class ReferentialWatcher implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(ReferentialWatcher.class);
+
+	private final Path directory;
+	private final WatchService watchService;
+	private final Map<Path, Referential> referentials = new ConcurrentHashMap<>();
+	private final Thread thread;
+
+	public ReferentialWatcher(Path directory) throws IOException {
+		this.directory = directory;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		this.thread = new Thread(this::watch, "dlp-referential-watcher[" + directory + "]");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public void register(Referential referential) {
+		referentials.put(referential.getDataFile().getFileName(), referential);
+		referentials.put(referential.getIndexFile().getFileName(), referential);
+		referentials.put(referential.getStatsFile().getFileName(), referential);
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				final WatchKey key = watchService.take();
+				final Set<Referential> changed = new LinkedHashSet<>();
+				for (WatchEvent<?> watchEvent : key.pollEvents()) {
+					final Object context = watchEvent.context();
+					if (context instanceof Path) {
+						final Referential referential = referentials.get(context);
+						if (referential != null) {
+							changed.add(referential);
+						}
+					}
+				}
+				key.reset();
+				for (Referential referential : changed) {
+					try {
+						referential.refresh();
+					} catch (IOException | RuntimeException e) {
+						LOGGER.error("Failed to refresh hash referential for application code {}, keeping previous content",
+								referential.getApplicationCode(), e);
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			LOGGER.debug("Stopped watching referential directory {}", directory);
+		}
+	}
+}
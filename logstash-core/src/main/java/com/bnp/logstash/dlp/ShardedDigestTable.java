@@ -0,0 +1,84 @@
+package com.bnp.logstash.dlp;
+
+import java.util.function.Consumer;
+
+/**
+ * Digests spread over several {@link DigestTable} shards, the shard being
+ * chosen by the last digest byte so that shards can be filled concurrently.
+ */
+public final class ShardedDigestTable implements DigestSet {
+
+	private final DigestTable[] shards;
+	private final int shardMask;
+
+	/**
+	 * @param shards a power of two number of tables of the same digest length.
+	 */
+	ShardedDigestTable(DigestTable[] shards) {
+		if (Integer.bitCount(shards.length) != 1) {
+			throw new IllegalArgumentException(String.format("shard count=%d is not a power of two", shards.length));
+		}
+		this.shards = shards;
+		this.shardMask = shards.length - 1;
+	}
+
+	// the first digest bytes pick the slot inside a shard, the last one picks the shard
+	static int shardOf(byte[] digest, int offset, int digestLength, int shardMask) {
+		return digest[offset + digestLength - 1] & shardMask;
+	}
+
+	@Override
+	public boolean contains(byte[] digest) {
+		if (digest.length != digestLength()) {
+			return false;
+		}
+		return shards[shardOf(digest, 0, digest.length, shardMask)].contains(digest);
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (DigestTable shard : shards) {
+			size += shard.size();
+		}
+		return size;
+	}
+
+	@Override
+	public int digestLength() {
+		return shards[0].digestLength();
+	}
+
+	@Override
+	public void forEach(Consumer<byte[]> action) {
+		for (DigestTable shard : shards) {
+			shard.forEach(action);
+		}
+	}
+
+	@Override
+	public long byteSize() {
+		long byteSize = 0L;
+		for (DigestTable shard : shards) {
+			byteSize += shard.byteSize();
+		}
+		return byteSize;
+	}
+
+	public int shardCount() {
+		return shards.length;
+	}
+
+	DigestTable shard(int index) {
+		return shards[index];
+	}
+
+	/**
+	 * Copies every digest into a single table, as written to index files.
+	 */
+	public DigestTable toTable() {
+		final DigestTable table = DigestTable.allocate(digestLength(), size());
+		forEach(table::add);
+		return table;
+	}
+}
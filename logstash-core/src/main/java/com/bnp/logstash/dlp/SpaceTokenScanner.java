@@ -0,0 +1,50 @@
+package com.bnp.logstash.dlp;
+
+import com.google.common.base.CharMatcher;
+
+/**
+ * Splits the message on single spaces and trims every token, producing the
+ * same output as {@code String.join(" ", Splitter.on(" ").trimResults()...)}
+ * with sensitive tokens written by the {@link TokenMasker}, but without
+ * building intermediate lists or strings.
+ */
+public final class SpaceTokenScanner implements TokenScanner {
+
+	public static final SpaceTokenScanner INSTANCE = new SpaceTokenScanner();
+
+	private static final char SPACE = ' ';
+	private static final CharMatcher WHITESPACE = CharMatcher.whitespace();
+
+	private SpaceTokenScanner() {
+	}
+
+	@Override
+	public void scan(CharSequence message, TokenMatcher matcher, TokenMasker masker, StringBuilder out) {
+		final int length = message.length();
+		int tokenStart = 0;
+		while (true) {
+			int tokenEnd = tokenStart;
+			while (tokenEnd < length && message.charAt(tokenEnd) != SPACE) {
+				tokenEnd++;
+			}
+			int start = tokenStart;
+			int end = tokenEnd;
+			while (start < end && WHITESPACE.matches(message.charAt(start))) {
+				start++;
+			}
+			while (end > start && WHITESPACE.matches(message.charAt(end - 1))) {
+				end--;
+			}
+			if (matcher.matches(message, start, end)) {
+				masker.mask(message, start, end, out);
+			} else {
+				out.append(message, start, end);
+			}
+			if (tokenEnd == length) {
+				return;
+			}
+			out.append(SPACE);
+			tokenStart = tokenEnd + 1;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.bnp.logstash.dlp;
+
+/**
+ * Finds referential values anywhere in the message, including inside URLs,
+ * paths or {@code key=value} pairs. Every window of every value length of the
+ * {@link TokenShape} is considered in one pass: the Rabin-Karp hash of each
+ * window is rolled from the previous one and tested against the
+ * {@link WindowFingerprints}, windows holding a character of a class no value
+ * has are skipped, and only the remaining windows are confirmed by the
+ * {@link TokenMatcher}. At a given position the longest match wins, masked
+ * spans never overlap and everything else is copied unchanged. When the shape
+ * may no longer cover every value, every delimited token is also confirmed as
+ * a whole, so values of a length the shape does not know are still found as
+ * tokens.
+ */
+public final class SubstringTokenScanner implements TokenScanner {
+
+	private final int[] lengths;
+	private final int[] powers;
+	private final int classes;
+	private final WindowFingerprints fingerprints;
+	private final DelimiterTokenScanner tokens;
+
+	private SubstringTokenScanner(TokenShape shape, int[] lengths, DelimiterTokenScanner tokens) {
+		this.lengths = lengths;
+		this.powers = new int[lengths.length];
+		for (int k = 0; k < lengths.length; k++) {
+			powers[k] = WindowFingerprints.power(lengths[k]);
+		}
+		this.classes = shape.getClasses();
+		this.fingerprints = shape.getFingerprints();
+		this.tokens = tokens;
+	}
+
+	/**
+	 * @return a scanner for the values of {@code shape}, {@code fallback} when
+	 *         the shape is unknown or does not bound the value lengths.
+	 */
+	public static TokenScanner of(TokenShape shape, TokenScanner fallback) {
+		final int[] lengths = shape == null ? null : shape.windowLengths();
+		return lengths == null || lengths.length == 0 ? fallback : new SubstringTokenScanner(shape, lengths, null);
+	}
+
+	/**
+	 * Same as {@link #of(TokenShape, TokenScanner)}, the tokens delimited by
+	 * {@code fallback} are also confirmed as a whole when {@code wholeTokens}.
+	 */
+	public static TokenScanner of(TokenShape shape, DelimiterTokenScanner fallback, boolean wholeTokens) {
+		final int[] lengths = shape == null ? null : shape.windowLengths();
+		return lengths == null || lengths.length == 0 ? fallback
+				: new SubstringTokenScanner(shape, lengths, wholeTokens ? fallback : null);
+	}
+
+	@Override
+	public void scan(CharSequence message, TokenMatcher matcher, TokenMasker masker, StringBuilder out) {
+		final int length = message.length();
+		final int[] hashes = new int[lengths.length];
+		for (int k = 0; k < lengths.length; k++) {
+			if (lengths[k] <= length) {
+				hashes[k] = WindowFingerprints.hash(message, 0, lengths[k]);
+			}
+		}
+		int copied = 0;
+		int rejected = nextRejected(message, 0);
+		for (int start = 0; start < length; start++) {
+			if (rejected < start) {
+				rejected = nextRejected(message, start);
+			}
+			if (start >= copied) {
+				final int end = longestMatch(message, start, rejected, hashes, matcher);
+				if (end > start) {
+					out.append(message, copied, start);
+					masker.mask(message, start, end, out);
+					copied = end;
+				}
+			}
+			for (int k = 0; k < lengths.length; k++) {
+				final int end = start + lengths[k];
+				if (end < length) {
+					hashes[k] = WindowFingerprints.roll(hashes[k], powers[k], message.charAt(start), message.charAt(end));
+				}
+			}
+		}
+		out.append(message, copied, length);
+	}
+
+	// end of the longest value starting at start, start when there is none; windows are sorted longest first and
+	// the whole token, when it is checked, takes the place of the window of its length
+	private int longestMatch(CharSequence message, int start, int rejected, int[] hashes, TokenMatcher matcher) {
+		int token = tokenEnd(message, start) - start;
+		for (int k = 0; k < lengths.length; k++) {
+			if (token > 0 && token >= lengths[k]) {
+				if (matcher.matches(message, start, start + token)) {
+					return start + token;
+				}
+				final boolean sameLength = token == lengths[k];
+				token = 0;
+				if (sameLength) {
+					continue;
+				}
+			}
+			final int end = start + lengths[k];
+			if (end > message.length() || rejected < end
+					|| fingerprints != null && !fingerprints.mightContain(hashes[k], lengths[k])) {
+				continue;
+			}
+			if (matcher.matches(message, start, end)) {
+				return end;
+			}
+		}
+		return token > 0 && matcher.matches(message, start, start + token) ? start + token : start;
+	}
+
+	// end of the delimited token starting at start, start when no token starts there
+	private int tokenEnd(CharSequence message, int start) {
+		if (tokens == null || start > 0 && !tokens.isDelimiter(message.charAt(start - 1))) {
+			return start;
+		}
+		int end = start;
+		while (end < message.length() && !tokens.isDelimiter(message.charAt(end))) {
+			end++;
+		}
+		return end;
+	}
+
+	// index of the first char at or after from that no referential value holds
+	private int nextRejected(CharSequence message, int from) {
+		final int length = message.length();
+		if (classes == TokenShape.ALL_CLASSES) {
+			return length;
+		}
+		int i = from;
+		while (i < length && (TokenShape.classOf(message.charAt(i)) & classes) != 0) {
+			i++;
+		}
+		return i;
+	}
+}
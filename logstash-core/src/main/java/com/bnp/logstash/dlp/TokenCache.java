@@ -0,0 +1,95 @@
+package com.bnp.logstash.dlp;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of tokens known not to be sensitive for one referential
+ * generation. It is two-way set associative with LRU replacement inside each
+ * set: lookups neither allocate nor take locks, and only negative results are
+ * kept so sensitive values never linger in it.
+ *
+ * <p>Not thread safe, meant to be held once per pipeline worker and referential.</p>
+ */
+public final class TokenCache {
+
+	private static final int WAYS = 2;
+
+	private final String[] tokens;
+	private final int[] hashes;
+	private final byte[] mostRecentWay;
+	private final int setMask;
+	private long generation;
+
+	/**
+	 * @param capacity maximum number of cached tokens, rounded up to a power of two.
+	 */
+	public TokenCache(int capacity) {
+		int sets = 1;
+		while (sets * WAYS < capacity) {
+			sets <<= 1;
+		}
+		this.tokens = new String[sets * WAYS];
+		this.hashes = new int[sets * WAYS];
+		this.mostRecentWay = new byte[sets];
+		this.setMask = sets - 1;
+	}
+
+	public static int hash(CharSequence message, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + message.charAt(i);
+		}
+		return h ^ h >>> 16;
+	}
+
+	/**
+	 * @param hash       {@link #hash(CharSequence, int, int)} of the token.
+	 * @param generation current generation of the referential, a change empties the cache.
+	 * @return {@code true} if the token is known not to be sensitive.
+	 */
+	public boolean contains(int hash, CharSequence message, int start, int end, long generation) {
+		if (generation != this.generation) {
+			Arrays.fill(tokens, null);
+			this.generation = generation;
+			return false;
+		}
+		final int set = hash & setMask;
+		for (int way = 0; way < WAYS; way++) {
+			final int slot = set * WAYS + way;
+			final String token = tokens[slot];
+			if (token != null && hashes[slot] == hash && contentEquals(token, message, start, end)) {
+				mostRecentWay[set] = (byte) way;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records a token that is not sensitive, evicting the least recently used token of its set.
+	 */
+	public void add(int hash, CharSequence message, int start, int end) {
+		final int set = hash & setMask;
+		final int way = WAYS - 1 - mostRecentWay[set];
+		final int slot = set * WAYS + way;
+		tokens[slot] = message.subSequence(start, end).toString();
+		hashes[slot] = hash;
+		mostRecentWay[set] = (byte) way;
+	}
+
+	public int capacity() {
+		return tokens.length;
+	}
+
+	private static boolean contentEquals(String token, CharSequence message, int start, int end) {
+		if (token.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < token.length(); i++) {
+			if (token.charAt(i) != message.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,158 @@
+package com.bnp.logstash.dlp;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+/**
+ * Hashes ranges of a {@link CharSequence} into a reused digest buffer. Tokens
+ * are UTF-8 encoded exactly like {@code String.getBytes(UTF_8)}, so digests are
+ * identical to the {@code DigestUtils} ones stored in referentials. With a
+ * {@link HashingKey} tokens are hashed with an HMAC or a salted digest instead.
+ *
+ * <p>Not thread safe, meant to be held once per pipeline worker.</p>
+ */
+public final class TokenDigester {
+
+	public static final String SHA1 = "SHA1";
+	public static final String SHA256 = "SHA256";
+	public static final String SHA512 = "SHA512";
+	public static final String MD5 = "MD5";
+
+	private static final byte REPLACEMENT = (byte) '?';
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final MessageDigest messageDigest;
+	private final Mac mac;
+	private final byte[] salt;
+	private final byte[] digest;
+	private byte[] encoded = new byte[64];
+	private final char[] hex;
+
+	public TokenDigester(String hashingAlgorithm) {
+		this(hashingAlgorithm, null);
+	}
+
+	/**
+	 * @param hashingKey Key of the keyed modes, {@code null} for plain digests.
+	 */
+	public TokenDigester(String hashingAlgorithm, HashingKey hashingKey) {
+		this.mac = hashingKey == null ? null : hashingKey.newMac();
+		this.salt = hashingKey == null ? null : hashingKey.salt();
+		if (mac == null) {
+			try {
+				this.messageDigest = MessageDigest.getInstance(algorithmName(hashingAlgorithm));
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			this.digest = new byte[messageDigest.getDigestLength()];
+		} else {
+			this.messageDigest = null;
+			this.digest = new byte[mac.getMacLength()];
+		}
+		this.hex = new char[digest.length * 2];
+	}
+
+	/**
+	 * Maps the {@code hashing_algorithm} option to its JCA name, unknown values
+	 * fall back to SHA-256.
+	 */
+	public static String algorithmName(String hashingAlgorithm) {
+		switch (hashingAlgorithm) {
+		case SHA1:
+			return "SHA-1";
+		case SHA512:
+			return "SHA-512";
+		case MD5:
+			return "MD5";
+		case SHA256:
+		default:
+			return "SHA-256";
+		}
+	}
+
+	public int digestLength() {
+		return digest.length;
+	}
+
+	/**
+	 * @return the digest of {@code message[start, end)}; the returned array is
+	 *         reused by the next call.
+	 */
+	public byte[] digest(CharSequence message, int start, int end) {
+		final int length = encode(message, start, end);
+		try {
+			if (mac != null) {
+				mac.update(encoded, 0, length);
+				mac.doFinal(digest, 0);
+			} else {
+				if (salt != null) {
+					messageDigest.update(salt);
+				}
+				messageDigest.update(encoded, 0, length);
+				messageDigest.digest(digest, 0, digest.length);
+			}
+		} catch (DigestException | ShortBufferException e) {
+			throw new IllegalStateException(e);
+		}
+		return digest;
+	}
+
+	/**
+	 * @return the lowercase hex digest of {@code value}, as {@code DigestUtils.sha256Hex} and friends.
+	 */
+	public String hexDigest(CharSequence value) {
+		final byte[] d = digest(value, 0, value.length());
+		for (int i = 0; i < d.length; i++) {
+			hex[2 * i] = HEX[(d[i] >> 4) & 0xF];
+			hex[2 * i + 1] = HEX[d[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Appends the lowercase hex digest of {@code message[start, end)} to {@code out}.
+	 */
+	public void appendHexDigest(CharSequence message, int start, int end, StringBuilder out) {
+		final byte[] d = digest(message, start, end);
+		for (int i = 0; i < d.length; i++) {
+			out.append(HEX[(d[i] >> 4) & 0xF]).append(HEX[d[i] & 0xF]);
+		}
+	}
+
+	private int encode(CharSequence message, int start, int end) {
+		final int maxLength = (end - start) * 3;
+		if (encoded.length < maxLength) {
+			encoded = new byte[Math.max(maxLength, encoded.length * 2)];
+		}
+		final byte[] out = encoded;
+		int pos = 0;
+		for (int i = start; i < end; i++) {
+			final char c = message.charAt(i);
+			if (c < 0x80) {
+				out[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				out[pos++] = (byte) (0xC0 | c >> 6);
+				out[pos++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(message.charAt(i + 1))) {
+					final int cp = Character.toCodePoint(c, message.charAt(++i));
+					out[pos++] = (byte) (0xF0 | cp >> 18);
+					out[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+					out[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+					out[pos++] = (byte) (0x80 | cp & 0x3F);
+				} else {
+					out[pos++] = REPLACEMENT;
+				}
+			} else {
+				out[pos++] = (byte) (0xE0 | c >> 12);
+				out[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+				out[pos++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+		return pos;
+	}
+}
@@ -0,0 +1,16 @@
+package com.bnp.logstash.dlp;
+
+/**
+ * Writes the masked form of a sensitive token into the output buffer.
+ */
+@FunctionalInterface
+public interface TokenMasker {
+
+	/**
+	 * @param message The scanned message.
+	 * @param start   Index of the first char of the token.
+	 * @param end     Index after the last char of the token.
+	 * @param out     Output buffer, the masked token is appended to it.
+	 */
+	void mask(CharSequence message, int start, int end, StringBuilder out);
+}
@@ -0,0 +1,143 @@
+package com.bnp.logstash.dlp;
+
+import java.util.function.Supplier;
+
+/**
+ * Masking strategies selectable through the {@code masking_strategy} option.
+ * None of them goes through a regex or an intermediate string.
+ */
+public final class TokenMaskers {
+
+	public static final String FULL = "full";
+	public static final String KEEP_LAST = "keep_last";
+	public static final String FIXED_LENGTH = "fixed_length";
+	public static final String HASH = "hash";
+
+	private static final char MASK = '#';
+
+	// buffers that grew past this size for an unusually large message are not kept
+	private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+	private static final ThreadLocal<StringBuilder> OUTPUT_BUFFERS = ThreadLocal.withInitial(StringBuilder::new);
+
+	/**
+	 * Equivalent of {@code replaceAll(".", "#")}: every code point becomes a
+	 * single mask character except line terminators, which {@code .} does not
+	 * match.
+	 */
+	public static final TokenMasker FULL_MASKER = TokenMaskers::maskAll;
+
+	private TokenMaskers() {
+	}
+
+	/**
+	 * @param strategy One of {@link #FULL}, {@link #KEEP_LAST}, {@link #FIXED_LENGTH} or {@link #HASH}.
+	 * @param length   Number of trailing code points kept by {@link #KEEP_LAST}, number of mask
+	 *                 characters written by {@link #FIXED_LENGTH}.
+	 * @param digester Per worker digester used by {@link #HASH}.
+	 */
+	public static TokenMasker of(String strategy, int length, Supplier<TokenDigester> digester) {
+		switch (strategy) {
+		case FULL:
+			return FULL_MASKER;
+		case KEEP_LAST:
+			return keepLast(length);
+		case FIXED_LENGTH:
+			return fixedLength(length);
+		case HASH:
+			return hash(digester);
+		default:
+			throw new IllegalArgumentException("Unknown masking strategy " + strategy);
+		}
+	}
+
+	/**
+	 * Parses a per-field policy, a strategy optionally followed by its length as in {@code keep_last:4}.
+	 *
+	 * @param defaultLength Length used when the policy does not give one.
+	 */
+	public static TokenMasker parse(String policy, int defaultLength, Supplier<TokenDigester> digester) {
+		final int separator = policy.indexOf(':');
+		if (separator < 0) {
+			return of(policy, defaultLength, digester);
+		}
+		return of(policy.substring(0, separator), Integer.parseInt(policy.substring(separator + 1)), digester);
+	}
+
+	/**
+	 * @return the empty masking output buffer of the calling worker, shared by
+	 *         the DLP filters of its pipeline stage.
+	 */
+	static StringBuilder outputBuffer() {
+		StringBuilder buffer = OUTPUT_BUFFERS.get();
+		if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+			buffer = new StringBuilder();
+			OUTPUT_BUFFERS.set(buffer);
+		}
+		buffer.setLength(0);
+		return buffer;
+	}
+
+	/**
+	 * Masks like {@link #FULL_MASKER} but keeps the last {@code kept} code points
+	 * in clear. Tokens that are not longer than that are fully masked.
+	 */
+	public static TokenMasker keepLast(int kept) {
+		if (kept < 0) {
+			throw new IllegalArgumentException("Negative number of kept characters " + kept);
+		}
+		return (message, start, end, out) -> {
+			int clearStart = end;
+			for (int i = 0; i < kept && clearStart > start; i++) {
+				clearStart -= clearStart - 1 > start && Character.isLowSurrogate(message.charAt(clearStart - 1))
+						&& Character.isHighSurrogate(message.charAt(clearStart - 2)) ? 2 : 1;
+			}
+			if (clearStart == start) {
+				maskAll(message, start, end, out);
+			} else {
+				maskAll(message, start, clearStart, out);
+				out.append(message, clearStart, end);
+			}
+		};
+	}
+
+	/**
+	 * Writes {@code length} mask characters whatever the token, hiding its length.
+	 */
+	public static TokenMasker fixedLength(int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("Negative mask length " + length);
+		}
+		return (message, start, end, out) -> {
+			for (int i = 0; i < length; i++) {
+				out.append(MASK);
+			}
+		};
+	}
+
+	/**
+	 * Replaces the token with the lowercase hex digest found in the referential.
+	 */
+	public static TokenMasker hash(Supplier<TokenDigester> digester) {
+		return (message, start, end, out) -> digester.get().appendHexDigest(message, start, end, out);
+	}
+
+	private static void maskAll(CharSequence message, int start, int end, StringBuilder out) {
+		int i = start;
+		while (i < end) {
+			final char c = message.charAt(i);
+			if (isLineTerminator(c)) {
+				out.append(c);
+				i++;
+			} else {
+				out.append(MASK);
+				i += Character.isHighSurrogate(c) && i + 1 < end
+						&& Character.isLowSurrogate(message.charAt(i + 1)) ? 2 : 1;
+			}
+		}
+	}
+
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+}
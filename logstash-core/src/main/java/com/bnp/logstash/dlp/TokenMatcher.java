@@ -0,0 +1,18 @@
+package com.bnp.logstash.dlp;
+
+/**
+ * Decides whether a token of a message is sensitive and must be masked.
+ * The token is given as a range of the scanned message so implementations
+ * can inspect it without the scanner materializing a {@link String}.
+ */
+@FunctionalInterface
+public interface TokenMatcher {
+
+	/**
+	 * @param message The message being scanned.
+	 * @param start   Index of the first character of the token (inclusive).
+	 * @param end     Index of the last character of the token (exclusive).
+	 * @return {@code true} if the token must be masked.
+	 */
+	boolean matches(CharSequence message, int start, int end);
+}
@@ -0,0 +1,17 @@
+package com.bnp.logstash.dlp;
+
+/**
+ * Walks a message once, asks a {@link TokenMatcher} about every token and
+ * writes the message into the supplied output buffer, sensitive tokens being
+ * written by a {@link TokenMasker}.
+ */
+public interface TokenScanner {
+
+	/**
+	 * @param message The message to scan.
+	 * @param matcher Decides which tokens are sensitive.
+	 * @param masker  Writes the sensitive tokens.
+	 * @param out     Output buffer, the masked message is appended to it.
+	 */
+	void scan(CharSequence message, TokenMatcher matcher, TokenMasker masker, StringBuilder out);
+}
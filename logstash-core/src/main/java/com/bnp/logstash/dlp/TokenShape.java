@@ -0,0 +1,288 @@
+package com.bnp.logstash.dlp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Length range and character classes of the values of a referential. Digests
+ * say nothing about the values they were computed from, so the shape comes from
+ * a {@code <app>.stats} sidecar produced with the referential by
+ * {@code dlpconvert --stats}. Tokens outside of the shape cannot be in the
+ * referential and are not hashed at all.
+ *
+ * <p>The sidecar also lists the exact value lengths and the
+ * {@link WindowFingerprints} of the values, used to find values embedded in
+ * longer tokens. Sidecar format, lengths being counted in UTF-16 chars:</p>
+ * <pre>
+ * min_length=10
+ * max_length=34
+ * char_classes=digit,upper
+ * lengths=10,16,34
+ * fingerprint_bits=20
+ * fingerprints=AAAAAAAAAAA...
+ * </pre>
+ */
+public final class TokenShape {
+
+	public static final String STATS_EXTENSION = ".stats";
+
+	public static final int DIGIT = 1;
+	public static final int LOWER = 1 << 1;
+	public static final int UPPER = 1 << 2;
+	public static final int OTHER_ASCII = 1 << 3;
+	public static final int NON_ASCII = 1 << 4;
+	public static final int ALL_CLASSES = DIGIT | LOWER | UPPER | OTHER_ASCII | NON_ASCII;
+
+	private static final int MAX_WINDOW_LENGTHS = 64;
+
+	private static final String[] CLASS_NAMES = {"digit", "lower", "upper", "other_ascii", "non_ascii"};
+	private static final String MIN_LENGTH = "min_length";
+	private static final String MAX_LENGTH = "max_length";
+	private static final String CHAR_CLASSES = "char_classes";
+	private static final String LENGTHS = "lengths";
+	private static final String FINGERPRINT_BITS = "fingerprint_bits";
+	private static final String FINGERPRINTS = "fingerprints";
+
+	private final int minLength;
+	private final int maxLength;
+	private final int classes;
+	private final BitSet lengths;
+	private final WindowFingerprints fingerprints;
+
+	public TokenShape(int minLength, int maxLength, int classes) {
+		this(minLength, maxLength, classes, null, null);
+	}
+
+	/**
+	 * @param lengths      exact value lengths, {@code null} for any length of the range.
+	 * @param fingerprints fingerprints of the values, {@code null} if unknown.
+	 */
+	TokenShape(int minLength, int maxLength, int classes, BitSet lengths, WindowFingerprints fingerprints) {
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+		this.classes = classes;
+		this.lengths = lengths;
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * @return the shape covering every value, {@code null} when there is none.
+	 */
+	public static TokenShape of(Iterable<? extends CharSequence> values) {
+		int minLength = Integer.MAX_VALUE;
+		int maxLength = -1;
+		int classes = 0;
+		final BitSet lengths = new BitSet();
+		final WindowFingerprints fingerprints = new WindowFingerprints(WindowFingerprints.DEFAULT_BITS);
+		for (CharSequence value : values) {
+			minLength = Math.min(minLength, value.length());
+			maxLength = Math.max(maxLength, value.length());
+			lengths.set(value.length());
+			fingerprints.add(WindowFingerprints.hash(value, 0, value.length()), value.length());
+			for (int i = 0; i < value.length(); i++) {
+				classes |= classOf(value.charAt(i));
+			}
+		}
+		return maxLength < 0 ? null : new TokenShape(minLength, maxLength, classes, lengths, fingerprints);
+	}
+
+	/**
+	 * @return the shape stored in {@code file}, {@code null} if there is no such file.
+	 */
+	public static TokenShape read(Path file) throws IOException {
+		final Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+			properties.load(reader);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		try {
+			int classes = 0;
+			for (String name : properties.getProperty(CHAR_CLASSES, "").split(",")) {
+				if (!name.trim().isEmpty()) {
+					classes |= classNamed(name.trim());
+				}
+			}
+			BitSet lengths = null;
+			if (properties.containsKey(LENGTHS)) {
+				lengths = new BitSet();
+				for (String length : properties.getProperty(LENGTHS).split(",")) {
+					if (!length.trim().isEmpty()) {
+						lengths.set(Integer.parseInt(length.trim()));
+					}
+				}
+			}
+			final WindowFingerprints fingerprints = properties.containsKey(FINGERPRINTS)
+					? WindowFingerprints.decode(Integer.parseInt(properties.getProperty(FINGERPRINT_BITS, "").trim()),
+							properties.getProperty(FINGERPRINTS).trim())
+					: null;
+			return new TokenShape(Integer.parseInt(properties.getProperty(MIN_LENGTH, "0").trim()),
+					Integer.parseInt(properties.getProperty(MAX_LENGTH, String.valueOf(Integer.MAX_VALUE)).trim()),
+					properties.containsKey(CHAR_CLASSES) ? classes : ALL_CLASSES, lengths, fingerprints);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(String.format("invalid token shape in file=%s: %s", file, e.getMessage()), e);
+		}
+	}
+
+	public void write(Path file) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.ISO_8859_1)) {
+			writer.write(MIN_LENGTH + '=' + minLength + '\n');
+			writer.write(MAX_LENGTH + '=' + maxLength + '\n');
+			writer.write(CHAR_CLASSES + '=' + classNames() + '\n');
+			if (lengths != null) {
+				writer.write(LENGTHS + '=' + lengths.stream().mapToObj(String::valueOf).collect(Collectors.joining(",")) + '\n');
+			}
+			if (fingerprints != null) {
+				writer.write(FINGERPRINT_BITS + '=' + fingerprints.getBits() + '\n');
+				writer.write(FINGERPRINTS + '=' + fingerprints.encode() + '\n');
+			}
+		}
+	}
+
+	/**
+	 * Builds the sidecar from a text file holding one clear value per line.
+	 */
+	public static TokenShape convert(Path values, Path target) throws IOException {
+		final List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(values, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					lines.add(line);
+				}
+			}
+		}
+		final TokenShape shape = of(lines);
+		if (shape == null) {
+			throw new IOException(String.format("no value in file=%s", values));
+		}
+		shape.write(target);
+		return shape;
+	}
+
+	public static Path statsPathFor(Path dataFile) {
+		final String name = dataFile.getFileName().toString();
+		final String base = name.endsWith(ReferentialConverter.DATA_EXTENSION)
+				? name.substring(0, name.length() - ReferentialConverter.DATA_EXTENSION.length()) : name;
+		return dataFile.resolveSibling(base + STATS_EXTENSION);
+	}
+
+	/**
+	 * @return {@code false} if the token cannot be one of the referential values.
+	 */
+	public boolean accepts(CharSequence message, int start, int end) {
+		final int length = end - start;
+		if (length < minLength || length > maxLength) {
+			return false;
+		}
+		if (classes == ALL_CLASSES) {
+			return true;
+		}
+		for (int i = start; i < end; i++) {
+			if ((classOf(message.charAt(i)) & classes) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the lengths a referential value may have, longest first,
+	 *         {@code null} when the sidecar gives no usable bound.
+	 */
+	public int[] windowLengths() {
+		if (lengths != null) {
+			final int[] windows = lengths.stream().filter(length -> length > 0).toArray();
+			for (int i = 0, j = windows.length - 1; i < j; i++, j--) {
+				final int length = windows[i];
+				windows[i] = windows[j];
+				windows[j] = length;
+			}
+			return windows;
+		}
+		if ((long) maxLength - minLength >= MAX_WINDOW_LENGTHS) {
+			return null;
+		}
+		final int[] windows = new int[Math.max(0, maxLength - Math.max(1, minLength) + 1)];
+		for (int i = 0; i < windows.length; i++) {
+			windows[i] = maxLength - i;
+		}
+		return windows;
+	}
+
+	/**
+	 * @return the length range of this shape without the exact lengths,
+	 *         character classes and fingerprints, still covering values of
+	 *         that range added to the referential after the sidecar.
+	 */
+	TokenShape unpruned() {
+		return new TokenShape(minLength, maxLength, ALL_CLASSES);
+	}
+
+	/**
+	 * @return the fingerprints of the values, {@code null} when the sidecar has none.
+	 */
+	WindowFingerprints getFingerprints() {
+		return fingerprints;
+	}
+
+	public int getMinLength() {
+		return minLength;
+	}
+
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	public int getClasses() {
+		return classes;
+	}
+
+	static int classOf(char c) {
+		if (c >= '0' && c <= '9') {
+			return DIGIT;
+		} else if (c >= 'a' && c <= 'z') {
+			return LOWER;
+		} else if (c >= 'A' && c <= 'Z') {
+			return UPPER;
+		} else if (c < 0x80) {
+			return OTHER_ASCII;
+		}
+		return NON_ASCII;
+	}
+
+	private static int classNamed(String name) {
+		for (int i = 0; i < CLASS_NAMES.length; i++) {
+			if (CLASS_NAMES[i].equals(name)) {
+				return 1 << i;
+			}
+		}
+		throw new IllegalArgumentException("unknown character class " + name);
+	}
+
+	private String classNames() {
+		final StringBuilder names = new StringBuilder();
+		for (int i = 0; i < CLASS_NAMES.length; i++) {
+			if ((classes & 1 << i) != 0) {
+				names.append(names.length() == 0 ? "" : ",").append(CLASS_NAMES[i]);
+			}
+		}
+		return names.toString();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TokenShape{length=%d..%d, classes=%s}", minLength, maxLength, classNames());
+	}
+}
@@ -0,0 +1,97 @@
+package com.bnp.logstash.dlp;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Bit set of the Rabin-Karp hashes of the referential values. The hash of a
+ * window of a message is rolled from the previous one in constant time, so
+ * every window of every known value length can be tested against the set in
+ * a single pass; only windows whose bit is set are hashed with the referential
+ * algorithm. A few bits per value are enough for the set to reject most
+ * windows while saying next to nothing about the values themselves.
+ */
+final class WindowFingerprints {
+
+	static final int DEFAULT_BITS = 20;
+
+	private static final int BASE = 0x01000193;
+
+	private final long[] words;
+	private final int bits;
+
+	WindowFingerprints(int bits) {
+		this(bits, new long[Math.max(1, (1 << bits) / Long.SIZE)]);
+	}
+
+	private WindowFingerprints(int bits, long[] words) {
+		if (bits < 6 || bits > 30) {
+			throw new IllegalArgumentException("fingerprint bits must be between 6 and 30, got " + bits);
+		}
+		this.bits = bits;
+		this.words = words;
+	}
+
+	static int hash(CharSequence message, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = hash * BASE + message.charAt(i);
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the weight of the first char of a window of {@code length} chars.
+	 */
+	static int power(int length) {
+		int power = 1;
+		for (int i = 1; i < length; i++) {
+			power *= BASE;
+		}
+		return power;
+	}
+
+	/**
+	 * @return the hash of the window shifted by one char, {@code first} leaving
+	 *         it and {@code next} entering it.
+	 */
+	static int roll(int hash, int power, char first, char next) {
+		return (hash - first * power) * BASE + next;
+	}
+
+	void add(int hash, int length) {
+		final int bit = index(hash, length);
+		words[bit >>> 6] |= 1L << bit;
+	}
+
+	boolean mightContain(int hash, int length) {
+		final int bit = index(hash, length);
+		return (words[bit >>> 6] & 1L << bit) != 0;
+	}
+
+	int getBits() {
+		return bits;
+	}
+
+	String encode() {
+		final ByteBuffer buffer = ByteBuffer.allocate(words.length * Long.BYTES);
+		buffer.asLongBuffer().put(words);
+		return Base64.getEncoder().encodeToString(buffer.array());
+	}
+
+	static WindowFingerprints decode(int bits, String encoded) {
+		final WindowFingerprints fingerprints = new WindowFingerprints(bits);
+		final byte[] bytes = Base64.getDecoder().decode(encoded);
+		if (bytes.length != fingerprints.words.length * Long.BYTES) {
+			throw new IllegalArgumentException(String.format("expected %d fingerprint bytes for %d bits, got %d",
+					fingerprints.words.length * Long.BYTES, bits, bytes.length));
+		}
+		ByteBuffer.wrap(bytes).asLongBuffer().get(fingerprints.words);
+		return fingerprints;
+	}
+
+	// the length is mixed in so values of different lengths do not share bits
+	private int index(int hash, int length) {
+		return (hash + length * 0x85EBCA6B) * 0x9E3779B9 >>> 32 - bits;
+	}
+}
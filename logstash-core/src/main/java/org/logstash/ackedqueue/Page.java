@@ -4,6 +4,7 @@ import com.google.common.primitives.Ints;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.BitSet;
+import java.util.List;
 import org.codehaus.commons.nullanalysis.NotNull;
 import org.logstash.ackedqueue.io.CheckpointIO;
 import org.logstash.ackedqueue.io.PageIO;
@@ -81,6 +82,37 @@ public final class Page implements Closeable {
         }
     }
 
+    /**
+     * write consecutive elements to this page, checkpointing at most once after all of them are written.
+     *
+     * @param elements the serialized elements, all of them must fit in the page
+     * @param firstSeqNum the sequence number of the first element, the following ones are consecutive
+     * @param checkpointMaxWrites number of writes before forcing a checkpoint
+     * @throws IOException if an IO error occurs
+     */
+    public void write(List<byte[]> elements, long firstSeqNum, int checkpointMaxWrites) throws IOException {
+        if (! this.writable) {
+            throw new IllegalStateException(String.format("page=%d is not writable", this.pageNum));
+        }
+        if (elements.isEmpty()) {
+            return;
+        }
+
+        this.pageIO.write(elements, firstSeqNum);
+
+        if (this.minSeqNum <= 0) {
+            this.minSeqNum = firstSeqNum;
+            this.firstUnreadSeqNum = firstSeqNum;
+        }
+        this.elementCount += elements.size();
+
+        final long lastSeqNum = firstSeqNum + elements.size() - 1;
+        if (checkpointMaxWrites > 0 && (lastSeqNum >= this.lastCheckpoint.maxSeqNum() + checkpointMaxWrites)) {
+            // a single checkpoint covers all the elements of the batch
+            checkpoint();
+        }
+    }
+
     /**
      * Page is considered empty if it does not contain any element or if all elements are acked.
      *
@@ -199,8 +231,15 @@ public final class Page implements Closeable {
         }
     }
 
+    /**
+     * @return the checkpoint of this head page in its current state, not written
+     */
+    Checkpoint headCheckpoint() {
+        return new Checkpoint(this.pageNum, this.queue.firstUnackedPageNum(), this.firstUnackedSeqNum(), this.minSeqNum, this.elementCount);
+    }
+
     public void forceCheckpoint() throws IOException {
-        Checkpoint checkpoint = new Checkpoint(this.pageNum, this.queue.firstUnackedPageNum(), this.firstUnackedSeqNum(), this.minSeqNum, this.elementCount);
+        Checkpoint checkpoint = headCheckpoint();
         CheckpointIO io = this.queue.getCheckpointIO();
         io.write(io.headFileName(), checkpoint);
         this.lastCheckpoint = checkpoint;
@@ -247,7 +286,7 @@ public final class Page implements Closeable {
     }
 
     public void purge() throws IOException {
-        this.pageIO.purge(); // page IO purge calls close
+        this.queue.purgePage(this.pageNum, this.pageIO);
     }
 
     public int getPageNum() {
@@ -0,0 +1,233 @@
+package org.logstash.ackedqueue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Pool of spare page files of the queue page capacity. Fully acked page files are renamed into the pool instead of
+ * being deleted and a new head page takes a spare file by renaming it instead of creating and growing a new file.
+ *
+ * A background thread zeroes the written part of recycled files before they become spares, head page recovery reads
+ * past the last checkpoint and must not find stale elements, seqNums restart when an empty queue is reopened so stale
+ * seqNums are not always lower than the new ones. When the pool runs empty the same thread prepares a new spare file,
+ * fully allocated on disk, before the next head page is needed.
+ *
+ * Spare files are kept in a sub directory of the queue directory so they are never listed as pages and are reused
+ * when the queue is opened again.
+ */
+final class PagePool implements Closeable {
+
+    static final String POOL_DIR = ".pool";
+
+    // maximum number of spare files kept, any more fully acked page file is deleted
+    static final int MAX_SPARE_PAGES = 2;
+
+    private static final String SPARE_PREFIX = "spare.";
+
+    private static final String DIRTY_PREFIX = "dirty.";
+
+    private static final String PREPARING_NAME = "preparing";
+
+    private static final int ZERO_CHUNK = 64 * 1024;
+
+    private static final Logger LOGGER = LogManager.getLogger(PagePool.class);
+
+    private final Path poolPath;
+    private final int capacity;
+
+    // most recently recycled spare first, its pages are the most likely to still be cached
+    private final Deque<Path> spares = new ArrayDeque<>();
+    private final ExecutorService preparer;
+    private int dirtyCount;
+    private int nextSpareNum;
+    private boolean preparing;
+    private boolean closed;
+
+    PagePool(final Path dirPath, final int capacity) throws IOException {
+        this.poolPath = dirPath.resolve(POOL_DIR);
+        this.capacity = capacity;
+        Files.createDirectories(this.poolPath);
+
+        // adopt spares of a previous run, a spare of another capacity or an interrupted preparation is deleted, as
+        // well as a recycled file which was not zeroed yet
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(this.poolPath)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                if (name.startsWith(SPARE_PREFIX) && Files.size(file) == capacity && this.spares.size() < MAX_SPARE_PAGES) {
+                    this.spares.push(file);
+                    this.nextSpareNum = Math.max(this.nextSpareNum, spareNum(name) + 1);
+                } else {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        this.preparer = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "pq-page-pool[" + dirPath.getFileName() + "]");
+            t.setDaemon(true);
+            return t;
+        });
+        schedulePrepare();
+    }
+
+    /**
+     * move a spare file to the given page file.
+     *
+     * @param pageFile the page file to create
+     * @return true if a spare file was moved to pageFile, false if the pool is empty and the page file must be created
+     * @throws IOException if an IO error occurs
+     */
+    synchronized boolean take(final Path pageFile) throws IOException {
+        final Path spare = this.spares.poll();
+        if (spare != null) {
+            Files.move(spare, pageFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        schedulePrepare();
+        return spare != null;
+    }
+
+    /**
+     * move a fully acked page file into the pool, or delete it if the pool is full or the file is not of the pool
+     * capacity. the file becomes a spare once its written bytes are zeroed in the background.
+     *
+     * @param pageFile the closed page file to recycle
+     * @param writtenBytes the number of bytes written in the page, 0 if unknown, for example for a page which was
+     * never opened, in which case the whole file is zeroed
+     * @throws IOException if an IO error occurs
+     */
+    synchronized void recycle(final Path pageFile, final int writtenBytes) throws IOException {
+        if (this.closed || this.spares.size() + this.dirtyCount >= MAX_SPARE_PAGES
+            || Files.size(pageFile) != this.capacity) {
+            Files.delete(pageFile);
+            return;
+        }
+        final Path dirty = this.poolPath.resolve(DIRTY_PREFIX + this.nextSpareNum++);
+        Files.move(pageFile, dirty, StandardCopyOption.ATOMIC_MOVE);
+        this.dirtyCount++;
+        final int dirtyBytes = writtenBytes > 0 ? Math.min(writtenBytes, this.capacity) : this.capacity;
+        this.preparer.execute(() -> clean(dirty, dirtyBytes));
+    }
+
+    /**
+     * wait for the pending recycled files cleaning and spare preparation and stop the preparer thread. spare files are
+     * left in place for the next queue open.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+        this.preparer.shutdown();
+        try {
+            if (!this.preparer.awaitTermination(1L, TimeUnit.MINUTES)) {
+                LOGGER.warn("PQ page pool preparer did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // keep one spare ready for the next head page, only one preparation at a time
+    private void schedulePrepare() {
+        if (!this.closed && !this.preparing && this.spares.isEmpty() && this.dirtyCount == 0) {
+            this.preparing = true;
+            this.preparer.execute(this::prepare);
+        }
+    }
+
+    private void clean(final Path dirty, final int writtenBytes) {
+        try {
+            zero(dirty, writtenBytes, false);
+            synchronized (this) {
+                final Path spare = nextSparePath();
+                Files.move(dirty, spare, StandardCopyOption.ATOMIC_MOVE);
+                this.spares.push(spare);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("PQ page pool failed to recycle a page file, error={}", e.getMessage());
+            try {
+                Files.deleteIfExists(dirty);
+            } catch (IOException ignored) {
+                // ignore, deleted on the next queue open
+            }
+        } finally {
+            synchronized (this) {
+                this.dirtyCount--;
+                schedulePrepare();
+            }
+        }
+    }
+
+    private void prepare() {
+        final Path preparing = this.poolPath.resolve(PREPARING_NAME);
+        try {
+            // write the whole file instead of only setting its length so the disk blocks are allocated up front and
+            // the head page writes do not extend a sparse file
+            zero(preparing, this.capacity, true);
+            synchronized (this) {
+                if (this.closed || this.spares.size() >= MAX_SPARE_PAGES) {
+                    Files.delete(preparing);
+                } else {
+                    final Path spare = nextSparePath();
+                    Files.move(preparing, spare, StandardCopyOption.ATOMIC_MOVE);
+                    // behind recycled spares which are already cached
+                    this.spares.addLast(spare);
+                }
+            }
+        } catch (IOException e) {
+            // not fatal, the next head page is created the regular way
+            LOGGER.warn("PQ page pool failed to prepare a spare page file, error={}", e.getMessage());
+            try {
+                Files.deleteIfExists(preparing);
+            } catch (IOException ignored) {
+                // ignore, deleted on the next queue open
+            }
+        } finally {
+            synchronized (this) {
+                this.preparing = false;
+            }
+        }
+    }
+
+    // write zeros over the first length bytes of the file
+    private void zero(final Path file, final int length, final boolean create) throws IOException {
+        final ByteBuffer zeros = ByteBuffer.allocate(Math.max(1, Math.min(ZERO_CHUNK, length)));
+        try (FileChannel channel = create
+            ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+            : FileChannel.open(file, StandardOpenOption.WRITE)) {
+            long position = 0L;
+            while (position < length) {
+                zeros.clear();
+                zeros.limit((int) Math.min(zeros.capacity(), length - position));
+                position += channel.write(zeros, position);
+            }
+            channel.force(create);
+        }
+    }
+
+    private Path nextSparePath() {
+        return this.poolPath.resolve(SPARE_PREFIX + this.nextSpareNum++);
+    }
+
+    private static int spareNum(final String name) {
+        try {
+            return Integer.parseInt(name.substring(SPARE_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.logstash.ackedqueue;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
@@ -9,6 +10,8 @@ import java.nio.file.Paths;
 import java.util.Comparator;
 import java.util.stream.StreamSupport;
 import org.logstash.ackedqueue.io.FileCheckpointIO;
+import org.logstash.ackedqueue.io.MmapPageIOV3;
+import org.logstash.ackedqueue.io.PageCodec;
 
 public final class PqCheck {
 
@@ -51,14 +54,16 @@ public final class PqCheck {
                             FileCheckpointIO.read(ByteBuffer.wrap(Files.readAllBytes(cpPath)));
                         final boolean fa = checkpoint.isFullyAcked();
                         final int pageNum = checkpoint.getPageNum();
-                        final long pageSize = cpPath.getParent().resolve(
+                        final Path pagePath = cpPath.getParent().resolve(
                             String.format("page.%d", pageNum)
-                        ).toFile().length();
+                        );
+                        final long pageSize = pagePath.toFile().length();
                         System.out.println(
                             String.format(
-                                "%s, fully-acked: %s, page.%d size: %s", cpPath.getFileName(),
+                                "%s, fully-acked: %s, page.%d size: %s%s", cpPath.getFileName(),
                                 fa ? "YES" : "NO", pageNum,
-                                pageSize > 0L ? String.valueOf(pageSize) : "NOT FOUND"
+                                pageSize > 0L ? String.valueOf(pageSize) : "NOT FOUND",
+                                pageSize > 0L ? ", format: " + pageFormat(pagePath) : ""
                             )
                         );
                         System.out.println(checkpoint.toString());
@@ -74,6 +79,24 @@ public final class PqCheck {
         }
     }
 
+    /**
+     * @return the page version and, for compressed pages, the codec recorded in the page header
+     */
+    private static String pageFormat(final Path pagePath) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(pagePath.toFile(), "r")) {
+            final byte version = raf.readByte();
+            if (version != MmapPageIOV3.VERSION_THREE) {
+                return String.format("v%d", version);
+            }
+            final byte codecId = raf.readByte();
+            try {
+                return String.format("v%d (%s)", version, PageCodec.forId(codecId).name());
+            } catch (final IOException ex) {
+                return String.format("v%d (unknown codec %d)", version, codecId);
+            }
+        }
+    }
+
     private static long cpNum(final Path cpFile) {
         final String numString = cpFile.getFileName().toString().substring("checkpoint.".length());
         return "head".equals(numString) ? Long.MAX_VALUE : Long.parseLong(numString);
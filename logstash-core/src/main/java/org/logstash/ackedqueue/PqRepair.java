@@ -16,6 +16,7 @@ import org.apache.logging.log4j.Logger;
 import org.logstash.ackedqueue.io.FileCheckpointIO;
 import org.logstash.ackedqueue.io.MmapPageIOV1;
 import org.logstash.ackedqueue.io.MmapPageIOV2;
+import org.logstash.ackedqueue.io.MmapPageIOV3;
 
 /**
  * Tool that attempts to fix a broken PQ data directory.
@@ -119,10 +120,14 @@ public final class PqRepair {
         try (final FileChannel page = FileChannel.open(pageFile)) {
             page.read(buffer);
             final byte version = buffer.get(0);
+            if (version == MmapPageIOV3.VERSION_THREE) {
+                recreateCheckpointV3(page, pageFile, number);
+                return;
+            }
             if (version != MmapPageIOV1.VERSION_ONE && version != MmapPageIOV2.VERSION_TWO) {
                 throw new IllegalStateException(
                     String.format(
-                        "Pagefile %s contains version byte %d, this tool only supports versions 1 and 2.",
+                        "Pagefile %s contains version byte %d, this tool only supports versions 1, 2 and 3.",
                         pageFile, version
                     )
                 );
@@ -152,6 +157,45 @@ public final class PqRepair {
         }
     }
 
+    /**
+     * Compressed pages are walked block by block from their headers, blocks are not decompressed. The walk stops at
+     * the first block that does not follow the previous one.
+     */
+    private static void recreateCheckpointV3(final FileChannel page, final Path pageFile, final int number)
+        throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(MmapPageIOV3.BLOCK_HEADER_SIZE);
+        final long maxSize = page.size();
+        long position = MmapPageIOV3.HEADER_SIZE;
+        long firstSeqNum = -1L;
+        int count = 0;
+        while (position + MmapPageIOV3.BLOCK_OVERHEAD <= maxSize) {
+            header.clear();
+            page.read(header, position);
+            final long seqNum = header.getLong(0);
+            final int blockCount = header.getInt(MmapPageIOV3.SEQNUM_SIZE);
+            final int compressedLength = header.getInt(
+                MmapPageIOV3.SEQNUM_SIZE + MmapPageIOV3.COUNT_SIZE + MmapPageIOV3.LENGTH_SIZE
+            );
+            if (blockCount <= 0 || compressedLength <= 0
+                || (firstSeqNum >= 0L && seqNum != firstSeqNum + count)) {
+                break;
+            }
+            if (firstSeqNum < 0L) {
+                firstSeqNum = seqNum;
+            }
+            count += blockCount;
+            position += (long) MmapPageIOV3.BLOCK_OVERHEAD + (long) compressedLength;
+        }
+        if (count == 0) {
+            throw new IllegalStateException(String.format("Pagefile %s holds no valid block.", pageFile));
+        }
+        // Writing 0 for the first unacked page num is ok here, since this value is only
+        // used by the head checkpoint
+        new FileCheckpointIO(pageFile.getParent()).write(
+            String.format("checkpoint.%d", number), number, 0, firstSeqNum, firstSeqNum, count
+        );
+    }
+
     private static void fixMissingPages(final Map<Integer, Path> pages,
         final Map<Integer, Path> checkpoints) throws IOException {
         final int[] knownCpNums = extractPagenums(checkpoints);
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -23,6 +24,8 @@ import org.logstash.LockException;
 import org.logstash.ackedqueue.io.CheckpointIO;
 import org.logstash.ackedqueue.io.FileCheckpointIO;
 import org.logstash.ackedqueue.io.MmapPageIOV2;
+import org.logstash.ackedqueue.io.MmapPageIOV3;
+import org.logstash.ackedqueue.io.PageCodec;
 import org.logstash.ackedqueue.io.PageIO;
 import org.logstash.common.FsUtil;
 
@@ -49,6 +52,8 @@ public final class Queue implements Closeable {
     private final int maxUnread;
     private final int checkpointMaxAcks;
     private final int checkpointMaxWrites;
+    private final long groupCommitLatency;
+    private final String compression;
 
     private final AtomicBoolean closed;
 
@@ -61,6 +66,35 @@ public final class Queue implements Closeable {
     private final Condition notFull  = lock.newCondition();
     private final Condition notEmpty = lock.newCondition();
 
+    // serializes readers. tail pages are immutable so they are read holding only this lock, the queue lock above is
+    // only held to pick the next read page and for the unread bookkeeping, and for the whole read of the head page.
+    // lock ordering is readLock then lock.
+    private final Lock readLock = new ReentrantLock();
+
+    // group commit: writers wait on flushed until the flusher thread persisted their seqNum. the flusher fsyncs and
+    // checkpoints the head page without holding the queue lock but holding flushLock, which every checkpoint write
+    // and the head page replacement and close also take. lock ordering is lock then flushLock.
+    private final Lock flushLock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private long persistedSeqNum;
+    private IOException flushFailure;
+    // writers between entering write and returning, and those of them waiting for the flusher, the flusher does not
+    // wait for more writes once all of them wait
+    private final AtomicInteger activeWriters = new AtomicInteger();
+    private int waitingWriters;
+    private Thread flusher;
+
+    // group commit flush statistics
+    private volatile long flushCount;
+    private volatile long flushedEventCount;
+    private volatile long lastFlushIntervalMillis;
+    private volatile long lastFlushDurationMillis;
+    private long lastFlushNanos;
+
+    // spare page files reused for new head pages
+    private PagePool pagePool;
+
     // exclusive dir access
     private FileLock dirLock;
     private final static String LOCK_NAME = ".lock";
@@ -77,7 +111,7 @@ public final class Queue implements Closeable {
         }
         this.pageCapacity = settings.getCapacity();
         this.maxBytes = settings.getQueueMaxBytes();
-        this.checkpointIO = new FileCheckpointIO(dirPath, settings.getCheckpointRetry());
+        this.checkpointIO = new FlushLockedCheckpointIO(new FileCheckpointIO(dirPath, settings.getCheckpointRetry()), this.flushLock);
         this.elementClass = settings.getElementClass();
         this.tailPages = new ArrayList<>();
         this.unreadTailPages = new ArrayList<>();
@@ -85,6 +119,10 @@ public final class Queue implements Closeable {
         this.maxUnread = settings.getMaxUnread();
         this.checkpointMaxAcks = settings.getCheckpointMaxAcks();
         this.checkpointMaxWrites = settings.getCheckpointMaxWrites();
+        this.groupCommitLatency = settings.getGroupCommitLatency();
+        this.compression = settings.getCompression();
+        // fail fast on an unknown codec name
+        PageCodec.forName(this.compression);
         this.unreadCount = 0L;
 
         // retrieve the deserialize method
@@ -150,6 +188,13 @@ public final class Queue implements Closeable {
             // Upgrade to serialization format V2
             QueueUpgrade.upgradeQueueDirectoryToV2(dirPath);
 
+            // compress the existing uncompressed pages when compression is enabled
+            if (PageCodec.forName(this.compression) != null) {
+                QueueUpgrade.migratePagesToV3(dirPath, this.compression);
+            }
+
+            this.pagePool = new PagePool(this.dirPath, this.pageCapacity);
+
             Checkpoint headCheckpoint;
             try {
                 headCheckpoint = this.checkpointIO.read(checkpointIO.headFileName());
@@ -164,6 +209,7 @@ public final class Queue implements Closeable {
                 headPageNum = 0;
 
                 newCheckpointedHeadpage(headPageNum);
+                startFlusher();
                 this.closed.set(false);
 
                 return;
@@ -184,7 +230,7 @@ public final class Queue implements Closeable {
 
                 logger.debug("opening tail page: {}, in: {}, with checkpoint: {}", pageNum, this.dirPath, cp.toString());
 
-                PageIO pageIO = new MmapPageIOV2(pageNum, this.pageCapacity, this.dirPath);
+                PageIO pageIO = existingPageIO(pageNum);
                 // important to NOT pageIO.open() just yet, we must first verify if it is fully acked in which case
                 // we can purge it and we don't care about its integrity for example if it is of zero-byte file size.
                 if (cp.isFullyAcked()) {
@@ -206,7 +252,7 @@ public final class Queue implements Closeable {
 
             logger.debug("opening head page: {}, in: {}, with checkpoint: {}", headCheckpoint.getPageNum(), this.dirPath, headCheckpoint.toString());
 
-            PageIO pageIO = new MmapPageIOV2(headCheckpoint.getPageNum(), this.pageCapacity, this.dirPath);
+            PageIO pageIO = existingPageIO(headCheckpoint.getPageNum());
             pageIO.recover(); // optimistically recovers the head page data file and set minSeqNum and elementCount to the actual read/recovered data
 
             pqSizeBytes += (long)pageIO.getHead();
@@ -258,6 +304,7 @@ public final class Queue implements Closeable {
 
             // TODO: here do directory traversal and cleanup lingering pages? could be a background operations to not delay queue start?
 
+            startFlusher();
             this.closed.set(false);
         } catch (LockException e) {
             throw new LockException("The queue failed to obtain exclusive access, cause: " + e.getMessage());
@@ -275,7 +322,7 @@ public final class Queue implements Closeable {
      */
     private void purgeTailPage(Checkpoint checkpoint, PageIO pageIO) throws IOException {
         try {
-            pageIO.purge();
+            purgePage(checkpoint.getPageNum(), pageIO);
         } catch (NoSuchFileException e) { /* ignore */ }
 
         // we want to keep all the "middle" checkpoints between the first unacked tail page and the head page
@@ -289,6 +336,20 @@ public final class Queue implements Closeable {
         }
     }
 
+    /**
+     * close a fully acked page and move its file into the page pool for a future head page, or delete it if the
+     * pool is full.
+     *
+     * @param pageNum the page number
+     * @param pageIO the page {@link PageIO}
+     * @throws IOException if an IO error occurs
+     */
+    void purgePage(int pageNum, PageIO pageIO) throws IOException {
+        final int writtenBytes = pageIO.getHead();
+        pageIO.close();
+        this.pagePool.recycle(this.dirPath.resolve("page." + pageNum), writtenBytes);
+    }
+
     /**
      * add a not fully-acked tail page into this queue structures and un-mmap it.
      *
@@ -304,6 +365,18 @@ public final class Queue implements Closeable {
         page.getPageIO().deactivate();
     }
 
+    /**
+     * @param pageNum the number of an existing page
+     * @return a {@link PageIO} for the format of the page file whatever the current compression setting, pages
+     * written with another setting remain readable
+     * @throws IOException if an IO error occurs
+     */
+    private PageIO existingPageIO(int pageNum) throws IOException {
+        return QueueUpgrade.pageVersion(this.dirPath.resolve("page." + pageNum)) == MmapPageIOV3.VERSION_THREE
+            ? new MmapPageIOV3(pageNum, this.pageCapacity, this.dirPath)
+            : new MmapPageIOV2(pageNum, this.pageCapacity, this.dirPath);
+    }
+
     /**
      * create a new empty headpage for the given pageNum and immediately checkpoint it
      *
@@ -311,7 +384,11 @@ public final class Queue implements Closeable {
      * @throws IOException
      */
     private void newCheckpointedHeadpage(int pageNum) throws IOException {
-        PageIO headPageIO = new MmapPageIOV2(pageNum, this.pageCapacity, this.dirPath);
+        final PageCodec codec = PageCodec.forName(this.compression);
+        PageIO headPageIO = codec == null ? new MmapPageIOV2(pageNum, this.pageCapacity, this.dirPath)
+            : new MmapPageIOV3(pageNum, this.pageCapacity, this.dirPath, codec);
+        // a spare file is already allocated, otherwise create() creates the file
+        this.pagePool.take(this.dirPath.resolve("page." + pageNum));
         headPageIO.create();
         this.headPage = PageFactory.newHeadPage(pageNum, this, headPageIO);
         this.headPage.forceCheckpoint();
@@ -323,7 +400,9 @@ public final class Queue implements Closeable {
      *
      * @param element the {@link Queueable} element to write
      * @return the written sequence number
-     * @throws IOException if an IO error occurs
+     * @throws IOException if an IO error occurs. in group commit mode, a failed flush is reported after the element
+     * was written: the element is in the queue and is read back if a later flush or the queue recovery persists it,
+     * writing it again may duplicate it
      */
     public long write(Queueable element) throws IOException {
         byte[] data = element.serialize();
@@ -335,65 +414,294 @@ public final class Queue implements Closeable {
         // element at risk in the always-full queue state. In the later, when closing a full queue, it would be impossible
         // to write the current element.
 
+        activeWriters.incrementAndGet();
         lock.lock();
         try {
-            if (! this.headPage.hasCapacity(data.length)) {
-                throw new IOException("data to be written is bigger than page capacity");
-            }
+            ensureHeadPageSpace(data.length);
 
-            // create a new head page if the current does not have sufficient space left for data to be written
-            if (! this.headPage.hasSpace(data.length)) {
+            long seqNum = this.seqNum += 1;
+            this.headPage.write(data, seqNum, headPageCheckpointMaxWrites());
+            this.unreadCount++;
 
-                // TODO: verify queue state integrity WRT Queue.open()/recover() at each step of this process
+            notEmpty.signal();
 
-                int newHeadPageNum = this.headPage.pageNum + 1;
+            awaitPersisted(seqNum);
+            awaitNotFull();
 
-                if (this.headPage.isFullyAcked()) {
-                    // here we can just purge the data file and avoid beheading since we do not need
-                    // to add this fully hacked page into tailPages. a new head page will just be created.
-                    // TODO: we could possibly reuse the same page file but just rename it?
-                    this.headPage.purge();
-                } else {
-                    behead();
-                }
+            return seqNum;
+        } finally {
+            lock.unlock();
+            activeWriters.decrementAndGet();
+        }
+    }
+
+    /**
+     * write a batch of {@link Queueable} elements to the queue. The elements are serialized before taking the queue
+     * lock and written in a single critical section, one page write and at most one checkpoint per page touched.
+     * Readers are signaled once for the whole batch. Like {@link #write(Queueable)}, all the elements are written
+     * before the queue full condition is checked and waited on.
+     *
+     * @param elements the {@link Queueable} elements to write, in order
+     * @return the sequence number of the last written element, or the current sequence number for an empty batch
+     * @throws IOException if an IO error occurs, see {@link #write(Queueable)} for a failed group commit flush
+     */
+    public long write(List<? extends Queueable> elements) throws IOException {
+        final List<byte[]> data = new ArrayList<>(elements.size());
+        for (final Queueable element : elements) {
+            data.add(element.serialize());
+        }
 
-                // create new head page
-                newCheckpointedHeadpage(newHeadPageNum);
+        activeWriters.incrementAndGet();
+        lock.lock();
+        try {
+            if (data.isEmpty()) {
+                return this.seqNum;
             }
 
-            long seqNum = this.seqNum += 1;
-            this.headPage.write(data, seqNum, this.checkpointMaxWrites);
-            this.unreadCount++;
+            // elements are grouped in runs that fit in the current head page, a new head page
+            // is only created when the next element does not fit
+            int runStart = 0;
+            while (runStart < data.size()) {
+                ensureHeadPageSpace(data.get(runStart).length);
+
+                final PageIO headPageIO = this.headPage.getPageIO();
+                int bytesLeft = headPageIO.getCapacity() - headPageIO.getHead();
+                int runEnd = runStart;
+                while (runEnd < data.size() && headPageIO.persistedByteCount(data.get(runEnd).length) <= bytesLeft) {
+                    bytesLeft -= headPageIO.persistedByteCount(data.get(runEnd).length);
+                    runEnd++;
+                }
+                if (runEnd == runStart) {
+                    // only possible with an element filling the page capacity but not the room left after the page header
+                    throw new IOException("data to be written is bigger than page capacity");
+                }
+
+                final long firstSeqNum = this.seqNum + 1;
+                this.headPage.write(data.subList(runStart, runEnd), firstSeqNum, headPageCheckpointMaxWrites());
+                this.seqNum += runEnd - runStart;
+                this.unreadCount += runEnd - runStart;
+                runStart = runEnd;
+            }
 
             notEmpty.signal();
 
-            // now check if we reached a queue full state and block here until it is not full
-            // for the next write or the queue was closed.
-            while (isFull() && !isClosed()) {
-                try {
-                    notFull.await();
-                } catch (InterruptedException e) {
-                    // the thread interrupt() has been called while in the await() blocking call.
-                    // at this point the interrupted flag is reset and Thread.interrupted() will return false
-                    // to any upstream calls on it. for now our choice is to return normally and set back
-                    // the Thread.interrupted() flag so it can be checked upstream.
+            awaitPersisted(this.seqNum);
+            awaitNotFull();
 
-                    // this is a bit tricky in the case of the queue full condition blocking state.
-                    // TODO: we will want to avoid initiating a new write operation if Thread.interrupted() was called.
+            return this.seqNum;
+        } finally {
+            lock.unlock();
+            activeWriters.decrementAndGet();
+        }
+    }
 
-                    // set back the interrupted flag
-                    Thread.currentThread().interrupt();
+    /**
+     * make sure the head page can hold an element of the given size, replacing it by a new head page if required.
+     * must be called while holding the queue lock.
+     *
+     * @param byteSize the size of the serialized element
+     * @throws IOException if the element can never fit in a page or an IO error occurs
+     */
+    private void ensureHeadPageSpace(int byteSize) throws IOException {
+        if (! this.headPage.hasCapacity(byteSize)) {
+            throw new IOException("data to be written is bigger than page capacity");
+        }
 
-                    return seqNum;
+        // create a new head page if the current does not have sufficient space left for data to be written
+        if (! this.headPage.hasSpace(byteSize)) {
+            // a group commit flush of the current head page must complete before it is closed
+            flushLock.lock();
+            try {
+                replaceHeadPage();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * behead or purge the full head page and create the next one. must be called while holding the queue lock and
+     * flushLock.
+     */
+    private void replaceHeadPage() throws IOException {
+        // TODO: verify queue state integrity WRT Queue.open()/recover() at each step of this process
+
+        int newHeadPageNum = this.headPage.pageNum + 1;
+
+        if (this.headPage.isFullyAcked()) {
+            // here we can just purge the data file and avoid beheading since we do not need
+            // to add this fully hacked page into tailPages. a new head page will just be created,
+            // reusing the purged page file from the page pool.
+            this.headPage.purge();
+        } else {
+            behead();
+        }
+
+        // create new head page
+        newCheckpointedHeadpage(newHeadPageNum);
+
+        // beheading persisted all the elements of the previous head page
+        markPersisted(this.seqNum);
+    }
+
+    /**
+     * @return the number of writes after which the head page is checkpointed, 0 in group commit mode where the
+     * flusher thread checkpoints it
+     */
+    private int headPageCheckpointMaxWrites() {
+        return this.groupCommitLatency > 0L ? 0 : this.checkpointMaxWrites;
+    }
+
+    /**
+     * in group commit mode, block until the flusher thread persisted the given seqNum or the queue was closed.
+     * must be called while holding the queue lock.
+     *
+     * @param seqNum the sequence number of the last written element
+     * @throws IOException if the flush covering the given seqNum failed, the elements up to seqNum are written anyway
+     */
+    private void awaitPersisted(long seqNum) throws IOException {
+        if (this.groupCommitLatency <= 0L) {
+            return;
+        }
+        this.waitingWriters++;
+        try {
+            flushNeeded.signal();
+            while (this.persistedSeqNum < seqNum && !isClosed()) {
+                if (this.flushFailure != null) {
+                    throw new IOException("group commit flush failed", this.flushFailure);
+                }
+                try {
+                    flushed.await();
+                } catch (InterruptedException e) {
+                    // like awaitNotFull, return normally with the interrupted flag set, the element is written
+                    Thread.currentThread().interrupt();
+                    return;
                 }
             }
+        } finally {
+            this.waitingWriters--;
+        }
+    }
 
-            return seqNum;
+    private void startFlusher() {
+        this.persistedSeqNum = this.seqNum;
+        if (this.groupCommitLatency <= 0L) {
+            return;
+        }
+        this.flusher = new Thread(this::flushLoop, "pq-flusher[" + this.dirPath.getFileName() + "]");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * group commit flusher: once a write is pending, wait up to groupCommitLatency milliseconds for more writes then
+     * persist the head page and its checkpoint with a single fsync for all of them. the wait ends early once every
+     * writer currently in the queue waits for the flush, waiting longer would only delay them. the fsync and the
+     * checkpoint write run without holding the queue lock, writers keep appending to the head page meanwhile.
+     */
+    private void flushLoop() {
+        final long latencyNanos = TimeUnit.MILLISECONDS.toNanos(this.groupCommitLatency);
+        lock.lock();
+        try {
+            while (!isClosed()) {
+                if (this.persistedSeqNum >= this.seqNum) {
+                    flushNeeded.await();
+                    continue;
+                }
+                final long deadline = System.nanoTime() + latencyNanos;
+                long remaining = latencyNanos;
+                while (remaining > 0L && !isClosed() && this.waitingWriters < this.activeWriters.get()) {
+                    remaining = flushNeeded.awaitNanos(remaining);
+                    remaining = Math.min(remaining, deadline - System.nanoTime());
+                }
+                if (!isClosed()) {
+                    flushHeadPage();
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.debug("queue flusher interrupted");
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * persist the head page up to the current seqNum. must be called while holding the queue lock, which is released
+     * during the IO: flushLock held from the capture of the head page state to the end of the checkpoint write keeps
+     * any other checkpoint write, which could be overwritten by this older one, and the closing of the page away.
+     */
+    private void flushHeadPage() {
+        final Page page = this.headPage;
+        final long target = this.seqNum;
+        final Checkpoint previous = page.lastCheckpoint;
+        final Checkpoint checkpoint = page.headCheckpoint();
+        final long start = System.nanoTime();
+        IOException failure = null;
+        flushLock.lock();
+        lock.unlock();
+        try {
+            page.getPageIO().ensurePersisted();
+            this.checkpointIO.write(this.checkpointIO.headFileName(), checkpoint);
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            flushLock.unlock();
+            lock.lock();
+        }
+        if (failure != null) {
+            logger.error("queue group commit flush failed, error={}", failure.getMessage());
+            this.flushFailure = failure;
+            flushed.signalAll();
+            return;
+        }
+        this.flushFailure = null;
+        // a checkpoint written once flushLock was released is more recent
+        if (page.lastCheckpoint == previous) {
+            page.lastCheckpoint = checkpoint;
+        }
+        final long end = System.nanoTime();
+        if (this.lastFlushNanos > 0L) {
+            this.lastFlushIntervalMillis = TimeUnit.NANOSECONDS.toMillis(start - this.lastFlushNanos);
+        }
+        this.lastFlushNanos = start;
+        this.lastFlushDurationMillis = TimeUnit.NANOSECONDS.toMillis(end - start);
+        this.flushCount++;
+        markPersisted(target);
+    }
+
+    private void markPersisted(long seqNum) {
+        if (this.groupCommitLatency > 0L && seqNum > this.persistedSeqNum) {
+            this.flushedEventCount += seqNum - this.persistedSeqNum;
+            this.persistedSeqNum = seqNum;
+            flushed.signalAll();
+        }
+    }
+
+    /**
+     * check if we reached a queue full state and block until it is not full for the next write or the queue was
+     * closed. must be called while holding the queue lock.
+     */
+    private void awaitNotFull() {
+        while (isFull() && !isClosed()) {
+            try {
+                notFull.await();
+            } catch (InterruptedException e) {
+                // the thread interrupt() has been called while in the await() blocking call.
+                // at this point the interrupted flag is reset and Thread.interrupted() will return false
+                // to any upstream calls on it. for now our choice is to return normally and set back
+                // the Thread.interrupted() flag so it can be checked upstream.
+
+                // this is a bit tricky in the case of the queue full condition blocking state.
+                // TODO: we will want to avoid initiating a new write operation if Thread.interrupted() was called.
+
+                // set back the interrupted flag
+                Thread.currentThread().interrupt();
+
+                return;
+            }
+        }
+    }
+
     /**
      * mark head page as read-only (behead) and add it to the tailPages and unreadTailPages collections accordingly
      * also deactivate it if it's not next-in-line for reading
@@ -503,13 +811,23 @@ public final class Queue implements Closeable {
      * @return {@link Batch} the batch containing 1 or more element up to the required limit or null of no elements were available
      * @throws IOException if an IO error occurs
      */
-    public synchronized Batch nonBlockReadBatch(int limit) throws IOException {
-        lock.lock();
+    public Batch nonBlockReadBatch(int limit) throws IOException {
+        readLock.lock();
         try {
-            Page p = nextReadPage();
-            return (isHeadPage(p) && p.isFullyRead()) ? null : readPageBatch(p, limit, 0L);
+            final Page tailPage = nextUnreadTailPage();
+            if (tailPage != null) {
+                return readTailPageBatch(tailPage, limit);
+            }
+            lock.lock();
+            try {
+                // the head page may have been beheaded since nextUnreadTailPage
+                Page p = nextReadPage();
+                return (isHeadPage(p) && p.isFullyRead()) ? null : readPageBatch(p, limit, 0L);
+            } finally {
+                lock.unlock();
+            }
         } finally {
-            lock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -520,13 +838,60 @@ public final class Queue implements Closeable {
      * @return the read {@link Batch} or null if no element upon timeout
      * @throws IOException if an IO error occurs
      */
-    public synchronized Batch readBatch(int limit, long timeout) throws IOException {
+    public Batch readBatch(int limit, long timeout) throws IOException {
+        readLock.lock();
+        try {
+            final Page tailPage = nextUnreadTailPage();
+            if (tailPage != null) {
+                return readTailPageBatch(tailPage, limit);
+            }
+            lock.lock();
+            try {
+                // the head page may have been beheaded since nextUnreadTailPage
+                return readPageBatch(nextReadPage(), limit, timeout);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * read a {@link Batch} from the given tail {@link Page} without holding the queue lock while reading: writers
+     * only append to the head page and a tail page cannot be purged before it is fully read and acked. must be called
+     * while holding the read lock.
+     * @param p the tail {@link Page} to read from, the first of the unread tail pages.
+     * @param limit size limit of the batch to read.
+     * @return {@link Batch} with read elements, empty if the page was already fully read
+     * @throws IOException if an IO error occurs
+     */
+    private Batch readTailPageBatch(Page p, int limit) throws IOException {
+        final List<byte[]> elements = new ArrayList<>(limit);
+        long firstSeqNum = -1L;
+        if (limit > 0 && !p.isFullyRead()) {
+            final SequencedList<byte[]> serialized = p.read(limit);
+            elements.addAll(serialized.getElements());
+            firstSeqNum = serialized.getSeqNums().get(0);
+        }
+
         lock.lock();
         try {
-            return readPageBatch(nextReadPage(), limit, timeout);
+            if (!elements.isEmpty()) {
+                boolean wasFull = isFull();
+                this.unreadCount -= elements.size();
+                if (wasFull) {
+                    notFull.signalAll();
+                }
+            }
+            if (p.isFullyRead()) {
+                removeUnreadPage(p);
+            }
         } finally {
             lock.unlock();
         }
+
+        return new Batch(elements, firstSeqNum, this);
     }
 
     /**
@@ -547,6 +912,10 @@ public final class Queue implements Closeable {
         long firstSeqNum = -1L;
         while (left > 0) {
             if (isHeadPage(p) && p.isFullyRead()) {
+                if (isClosed()) {
+                    // close already signalled the waiting readers
+                    break;
+                }
                 boolean elapsed;
                 // a head page is fully read but can be written to so let's wait for more data
                 try {
@@ -647,6 +1016,38 @@ public final class Queue implements Closeable {
         }
     }
 
+    /**
+     * @return the number of group commit flushes, each one persisting all the writes pending at that time
+     */
+    public long getFlushCount() {
+        return this.flushCount;
+    }
+
+    /**
+     * @return the number of events persisted by the group commit flusher or by beheading in group commit mode
+     */
+    public long getFlushedEventCount() {
+        return this.flushedEventCount;
+    }
+
+    /**
+     * @return the time in milliseconds between the starts of the last two group commit flushes
+     */
+    public long getLastFlushIntervalMillis() {
+        return this.lastFlushIntervalMillis;
+    }
+
+    /**
+     * @return the time in milliseconds spent in the last group commit flush fsync and checkpoint
+     */
+    public long getLastFlushDurationMillis() {
+        return this.lastFlushDurationMillis;
+    }
+
+    public long getGroupCommitLatency() {
+        return this.groupCommitLatency;
+    }
+
     public CheckpointIO getCheckpointIO() {
         return this.checkpointIO;
     }
@@ -670,13 +1071,33 @@ public final class Queue implements Closeable {
         // TODO: review close strategy and exception handling and resiliency of first closing tail pages if crash in the middle
 
         if (closed.getAndSet(true) == false) {
+            // wake up readers waiting for writes on the head page so they release the read lock, then wait for
+            // in-flight tail page reads before closing the pages they read from
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            readLock.lock();
             lock.lock();
             try {
                 // TODO: not sure if we need to do this here since the headpage close will also call ensurePersisted
                 ensurePersistedUpto(this.seqNum);
+                markPersisted(this.seqNum);
+
+                // the flusher exits once it reacquires the lock and sees the queue closed
+                flushNeeded.signalAll();
 
                 for (Page p : this.tailPages) { p.close(); }
-                this.headPage.close();
+                // a group commit flush of the head page must complete before it is closed
+                flushLock.lock();
+                try {
+                    this.headPage.close();
+                } finally {
+                    flushLock.unlock();
+                }
+                this.pagePool.close();
 
                 // release all referenced objects
                 this.tailPages.clear();
@@ -700,6 +1121,7 @@ public final class Queue implements Closeable {
                     logger.error("Queue close releaseLock failed, error={}", e.getMessage());
                 } finally {
                     lock.unlock();
+                    readLock.unlock();
                 }
             }
         }
@@ -719,6 +1141,18 @@ public final class Queue implements Closeable {
         }
     }
 
+    /**
+     * @return the first unread tail {@link Page} or null if the next read is on the head page.
+     */
+    private Page nextUnreadTailPage() {
+        lock.lock();
+        try {
+            return this.unreadTailPages.isEmpty() ? null : this.unreadTailPages.get(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private void removeUnreadPage(Page p) {
         if (! this.unreadTailPages.isEmpty()) {
             Page firstUnread = this.unreadTailPages.get(0);
@@ -796,4 +1230,64 @@ public final class Queue implements Closeable {
         final long pMaxSeq = pMinSeq + (long) page.getElementCount();
         return seqNum >= pMinSeq && seqNum < pMaxSeq;
     }
+
+    /**
+     * serializes the checkpoint writes with the group commit flusher, which writes the head page checkpoint without
+     * holding the queue lock.
+     */
+    private static final class FlushLockedCheckpointIO implements CheckpointIO {
+
+        private final CheckpointIO delegate;
+        private final Lock flushLock;
+
+        FlushLockedCheckpointIO(final CheckpointIO delegate, final Lock flushLock) {
+            this.delegate = delegate;
+            this.flushLock = flushLock;
+        }
+
+        @Override
+        public Checkpoint write(String fileName, int pageNum, int firstUnackedPageNum, long firstUnackedSeqNum, long minSeqNum, int elementCount) throws IOException {
+            flushLock.lock();
+            try {
+                return delegate.write(fileName, pageNum, firstUnackedPageNum, firstUnackedSeqNum, minSeqNum, elementCount);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        @Override
+        public void write(String fileName, Checkpoint checkpoint) throws IOException {
+            flushLock.lock();
+            try {
+                delegate.write(fileName, checkpoint);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        @Override
+        public Checkpoint read(String fileName) throws IOException {
+            return delegate.read(fileName);
+        }
+
+        @Override
+        public void purge(String fileName) throws IOException {
+            flushLock.lock();
+            try {
+                delegate.purge(fileName);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        @Override
+        public String headFileName() {
+            return delegate.headFileName();
+        }
+
+        @Override
+        public String tailFileName(int pageNum) {
+            return delegate.tailFileName(pageNum);
+        }
+    }
 }
@@ -45,7 +45,9 @@ public final class QueueFactoryExt extends RubyBasicObject {
                         getSetting(context, settings, "queue.checkpoint.acks"),
                         getSetting(context, settings, "queue.checkpoint.interval"),
                         getSetting(context, settings, "queue.checkpoint.retry"),
-                        getSetting(context, settings, "queue.max_bytes")
+                        getSetting(context, settings, "queue.max_bytes"),
+                        getSetting(context, settings, "queue.checkpoint.group_commit_latency"),
+                        getSetting(context, settings, "queue.compression")
                     }
                 );
         } else if ("memory".equals(type)) {
@@ -7,8 +7,10 @@ import java.io.RandomAccessFile;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.Collection;
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -19,6 +21,8 @@ import org.logstash.ackedqueue.io.CheckpointIO;
 import org.logstash.ackedqueue.io.FileCheckpointIO;
 import org.logstash.ackedqueue.io.MmapPageIOV1;
 import org.logstash.ackedqueue.io.MmapPageIOV2;
+import org.logstash.ackedqueue.io.MmapPageIOV3;
+import org.logstash.ackedqueue.io.PageCodec;
 import org.logstash.ackedqueue.io.PageIO;
 
 public final class QueueUpgrade {
@@ -27,6 +31,10 @@ public final class QueueUpgrade {
 
     private static final Pattern PAGE_NAME_PATTERN = Pattern.compile("page\\.\\d+");
 
+    private static final String MIGRATION_DIR = ".migration";
+
+    private static final int MIGRATION_BATCH_SIZE = 1024;
+
     private QueueUpgrade() {
         // Utility Class.
     }
@@ -56,6 +64,122 @@ public final class QueueUpgrade {
         }
     }
 
+    /**
+     * Rewrites the uncompressed V2 pages that still hold unacked elements into compressed V3 pages. Each page is
+     * written to a temporary directory then renamed over the V2 page so a crash leaves either page intact. Checkpoints
+     * are left untouched since a migrated page holds exactly the same elements. A page that would not be smaller once
+     * compressed is kept as is, V2 and V3 pages can be mixed in a queue directory.
+     *
+     * @param path the queue directory, which must not be opened
+     * @param compression the codec name, see {@link PageCodec}
+     * @throws IOException if an IO error occurs
+     */
+    public static void migratePagesToV3(final Path path, final String compression) throws IOException {
+        if (PageCodec.forName(compression) == null) {
+            throw new IllegalArgumentException("a compression codec is required to migrate pages");
+        }
+        final Path migrationPath = path.resolve(MIGRATION_DIR);
+        deleteMigrationDir(migrationPath);
+        final CheckpointIO cpIo = new FileCheckpointIO(path);
+        if (!path.resolve(cpIo.headFileName()).toFile().exists()) {
+            return;
+        }
+        final Checkpoint head = cpIo.read(cpIo.headFileName());
+        for (int num = head.getFirstUnackedPageNum(); num <= head.getPageNum(); num++) {
+            final Path pageFile = path.resolve("page." + num);
+            if (pageVersion(pageFile) != MmapPageIOV2.VERSION_TWO) {
+                continue;
+            }
+            final Checkpoint cp;
+            if (num == head.getPageNum()) {
+                // the head page is recovered, not opened, so the elements written after its checkpoint are kept
+                cp = null;
+            } else if (path.resolve(cpIo.tailFileName(num)).toFile().exists()) {
+                cp = cpIo.read(cpIo.tailFileName(num));
+                if (cp.isFullyAcked()) {
+                    continue;
+                }
+            } else {
+                continue;
+            }
+            migratePage(path, migrationPath, num, cp, compression);
+        }
+        deleteMigrationDir(migrationPath);
+    }
+
+    /**
+     * @param pageFile a page file
+     * @return the version byte of the page or 0 if the page file is missing or empty
+     * @throws IOException if an IO error occurs
+     */
+    public static byte pageVersion(final Path pageFile) throws IOException {
+        final File file = pageFile.toFile();
+        if (!file.exists() || file.length() == 0L) {
+            return 0;
+        }
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.readByte();
+        }
+    }
+
+    private static void migratePage(final Path path, final Path migrationPath, final int num,
+        final Checkpoint cp, final String compression) throws IOException {
+        final File pageFile = path.resolve("page." + num).toFile();
+        final int capacity = Ints.checkedCast(pageFile.length());
+        Files.createDirectories(migrationPath);
+        boolean smaller;
+        try (final MmapPageIOV2 source = new MmapPageIOV2(num, capacity, path);
+             final MmapPageIOV3 target = new MmapPageIOV3(num, capacity, migrationPath, PageCodec.forName(compression))) {
+            if (cp == null) {
+                source.recover();
+            } else {
+                source.open(cp.getMinSeqNum(), cp.getElementCount());
+            }
+            target.create();
+            smaller = copyElements(source, target);
+            smaller = smaller && target.getHead() < source.getHead();
+        }
+        final Path migrated = migrationPath.resolve(pageFile.getName());
+        if (smaller) {
+            Files.move(migrated, pageFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Compressed PQ page {} with {}.", pageFile, compression);
+        } else {
+            Files.delete(migrated);
+            LOGGER.debug("PQ page {} is not smaller once compressed, keeping it uncompressed.", pageFile);
+        }
+    }
+
+    // @return false if the elements do not fit in the target page
+    private static boolean copyElements(final PageIO source, final MmapPageIOV3 target) throws IOException {
+        long seqNum = source.getMinSeqNum();
+        int left = source.getElementCount();
+        while (left > 0) {
+            List<byte[]> elements = source.read(seqNum, Math.min(left, MIGRATION_BATCH_SIZE)).getElements();
+            // close to the end of the page, shrink the batch until its worst case fits
+            while (!elements.isEmpty() && target.persistedByteCount(elements) > target.getCapacity() - target.getHead()) {
+                elements = elements.subList(0, elements.size() / 2);
+            }
+            if (elements.isEmpty()) {
+                return false;
+            }
+            target.write(elements, seqNum);
+            seqNum += elements.size();
+            left -= elements.size();
+        }
+        return true;
+    }
+
+    private static void deleteMigrationDir(final Path migrationPath) throws IOException {
+        if (migrationPath.toFile().isDirectory()) {
+            try (final DirectoryStream<Path> files = Files.newDirectoryStream(migrationPath)) {
+                for (final Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(migrationPath);
+        }
+    }
+
     private static void validatePageFile(final Path path, final CheckpointIO cpIo, final File v1PageFile) {
         final int num =
             Integer.parseInt(v1PageFile.getName().substring("page.".length()));
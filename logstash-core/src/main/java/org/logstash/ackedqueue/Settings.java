@@ -18,6 +18,18 @@ public interface Settings {
 
     boolean getCheckpointRetry();
 
+    /**
+     * @return the maximum time in milliseconds a write waits for the background flusher to persist it, 0 when group
+     * commit is disabled and the head page is checkpointed every {@link #getCheckpointMaxWrites()} writes instead
+     */
+    long getGroupCommitLatency();
+
+    /**
+     * @return the codec compressing new pages, {@link org.logstash.ackedqueue.io.PageCodec#NONE} to write
+     * uncompressed pages
+     */
+    String getCompression();
+
     interface Builder {
 
         Builder elementClass(Class<? extends Queueable> elementClass);
@@ -34,6 +46,10 @@ public interface Settings {
 
         Builder checkpointRetry(boolean checkpointRetry);
 
+        Builder groupCommitLatency(long groupCommitLatency);
+
+        Builder compression(String compression);
+
         Settings build();
 
     }
@@ -1,5 +1,7 @@
 package org.logstash.ackedqueue;
 
+import org.logstash.ackedqueue.io.PageCodec;
+
 public class SettingsImpl implements Settings {
     private String dirForFiles;
     private Class<? extends Queueable> elementClass;
@@ -9,11 +11,14 @@ public class SettingsImpl implements Settings {
     private int checkpointMaxAcks;
     private int checkpointMaxWrites;
     private boolean checkpointRetry;
+    private long groupCommitLatency;
+    private String compression;
 
     public static Builder builder(final Settings settings) {
         return new BuilderImpl(settings.getDirPath(), settings.getElementClass(), settings.getCapacity(),
             settings.getQueueMaxBytes(), settings.getMaxUnread(), settings.getCheckpointMaxAcks(),
-            settings.getCheckpointMaxWrites(), settings.getCheckpointRetry()
+            settings.getCheckpointMaxWrites(), settings.getCheckpointRetry(), settings.getGroupCommitLatency(),
+            settings.getCompression()
         );
     }
 
@@ -23,7 +28,8 @@ public class SettingsImpl implements Settings {
 
     private SettingsImpl(final String dirForFiles, final Class<? extends Queueable> elementClass,
         final int capacity, final long queueMaxBytes, final int maxUnread,
-        final int checkpointMaxAcks, final int checkpointMaxWrites, boolean checkpointRetry) {
+        final int checkpointMaxAcks, final int checkpointMaxWrites, boolean checkpointRetry,
+        final long groupCommitLatency, final String compression) {
         this.dirForFiles = dirForFiles;
         this.elementClass = elementClass;
         this.capacity = capacity;
@@ -32,6 +38,8 @@ public class SettingsImpl implements Settings {
         this.checkpointMaxAcks = checkpointMaxAcks;
         this.checkpointMaxWrites = checkpointMaxWrites;
         this.checkpointRetry = checkpointRetry;
+        this.groupCommitLatency = groupCommitLatency;
+        this.compression = compression;
     }
 
     @Override
@@ -74,6 +82,16 @@ public class SettingsImpl implements Settings {
         return this.checkpointRetry;
     }
 
+    @Override
+    public long getGroupCommitLatency() {
+        return this.groupCommitLatency;
+    }
+
+    @Override
+    public String getCompression() {
+        return this.compression;
+    }
+
     private static final class BuilderImpl implements Builder {
 
         /**
@@ -104,6 +122,16 @@ public class SettingsImpl implements Settings {
          */
         private static final int DEFAULT_CHECKPOINT_MAX_WRITES = 1024;
 
+        /**
+         * Group commit is disabled by default, the head page is checkpointed every checkpointMaxWrites writes.
+         */
+        private static final long DEFAULT_GROUP_COMMIT_LATENCY = 0L;
+
+        /**
+         * Pages are not compressed by default.
+         */
+        private static final String DEFAULT_COMPRESSION = PageCodec.NONE;
+
         private final String dirForFiles;
 
         private final Class<? extends Queueable> elementClass;
@@ -120,15 +148,21 @@ public class SettingsImpl implements Settings {
 
         private final boolean checkpointRetry;
 
+        private final long groupCommitLatency;
+
+        private final String compression;
+
         private BuilderImpl(final String dirForFiles) {
             this(dirForFiles, null, DEFAULT_CAPACITY, DEFAULT_MAX_QUEUE_BYTES,
-                DEFAULT_MAX_UNREAD, DEFAULT_CHECKPOINT_MAX_ACKS, DEFAULT_CHECKPOINT_MAX_WRITES, false
+                DEFAULT_MAX_UNREAD, DEFAULT_CHECKPOINT_MAX_ACKS, DEFAULT_CHECKPOINT_MAX_WRITES, false,
+                DEFAULT_GROUP_COMMIT_LATENCY, DEFAULT_COMPRESSION
             );
         }
 
         private BuilderImpl(final String dirForFiles, final Class<? extends Queueable> elementClass,
             final int capacity, final long queueMaxBytes, final int maxUnread,
-            final int checkpointMaxAcks, final int checkpointMaxWrites, final boolean checkpointRetry) {
+            final int checkpointMaxAcks, final int checkpointMaxWrites, final boolean checkpointRetry,
+            final long groupCommitLatency, final String compression) {
             this.dirForFiles = dirForFiles;
             this.elementClass = elementClass;
             this.capacity = capacity;
@@ -137,13 +171,15 @@ public class SettingsImpl implements Settings {
             this.checkpointMaxAcks = checkpointMaxAcks;
             this.checkpointMaxWrites = checkpointMaxWrites;
             this.checkpointRetry = checkpointRetry;
+            this.groupCommitLatency = groupCommitLatency;
+            this.compression = compression;
         }
 
         @Override
         public Builder elementClass(final Class<? extends Queueable> elementClass) {
             return new BuilderImpl(
                 this.dirForFiles, elementClass, this.capacity, this.queueMaxBytes, this.maxUnread,
-                this.checkpointMaxAcks, this.checkpointMaxWrites, false
+                this.checkpointMaxAcks, this.checkpointMaxWrites, false, this.groupCommitLatency, this.compression
             );
         }
 
@@ -151,7 +187,7 @@ public class SettingsImpl implements Settings {
         public Builder capacity(final int capacity) {
             return new BuilderImpl(
                 this.dirForFiles, this.elementClass, capacity, this.queueMaxBytes, this.maxUnread,
-                this.checkpointMaxAcks, this.checkpointMaxWrites, false
+                this.checkpointMaxAcks, this.checkpointMaxWrites, false, this.groupCommitLatency, this.compression
             );
         }
 
@@ -159,7 +195,7 @@ public class SettingsImpl implements Settings {
         public Builder queueMaxBytes(final long size) {
             return new BuilderImpl(
                 this.dirForFiles, this.elementClass, this.capacity, size, this.maxUnread,
-                this.checkpointMaxAcks, this.checkpointMaxWrites, false
+                this.checkpointMaxAcks, this.checkpointMaxWrites, false, this.groupCommitLatency, this.compression
             );
         }
 
@@ -168,7 +204,7 @@ public class SettingsImpl implements Settings {
             return new BuilderImpl(
                 this.dirForFiles, this.elementClass,
                 this.capacity, this.queueMaxBytes, maxUnread, this.checkpointMaxAcks,
-                this.checkpointMaxWrites, false
+                this.checkpointMaxWrites, false, this.groupCommitLatency, this.compression
             );
         }
 
@@ -177,7 +213,7 @@ public class SettingsImpl implements Settings {
             return new BuilderImpl(
                 this.dirForFiles, this.elementClass,
                 this.capacity, this.queueMaxBytes, this.maxUnread, checkpointMaxAcks,
-                this.checkpointMaxWrites, false
+                this.checkpointMaxWrites, false, this.groupCommitLatency, this.compression
             );
         }
 
@@ -185,7 +221,7 @@ public class SettingsImpl implements Settings {
         public Builder checkpointMaxWrites(final int checkpointMaxWrites) {
             return new BuilderImpl(
                 this.dirForFiles, this.elementClass, this.capacity, this.queueMaxBytes,
-                this.maxUnread, this.checkpointMaxAcks, checkpointMaxWrites, false
+                this.maxUnread, this.checkpointMaxAcks, checkpointMaxWrites, false, this.groupCommitLatency, this.compression
             );
         }
 
@@ -193,7 +229,26 @@ public class SettingsImpl implements Settings {
         public Builder checkpointRetry(final boolean checkpointRetry) {
             return new BuilderImpl(
                     this.dirForFiles, this.elementClass, this.capacity, this.queueMaxBytes,
-                    this.maxUnread, this.checkpointMaxAcks, checkpointMaxWrites, checkpointRetry
+                    this.maxUnread, this.checkpointMaxAcks, checkpointMaxWrites, checkpointRetry,
+                    this.groupCommitLatency, this.compression
+            );
+        }
+
+        @Override
+        public Builder groupCommitLatency(final long groupCommitLatency) {
+            return new BuilderImpl(
+                this.dirForFiles, this.elementClass, this.capacity, this.queueMaxBytes,
+                this.maxUnread, this.checkpointMaxAcks, this.checkpointMaxWrites, this.checkpointRetry,
+                groupCommitLatency, this.compression
+            );
+        }
+
+        @Override
+        public Builder compression(final String compression) {
+            return new BuilderImpl(
+                this.dirForFiles, this.elementClass, this.capacity, this.queueMaxBytes,
+                this.maxUnread, this.checkpointMaxAcks, this.checkpointMaxWrites, this.checkpointRetry,
+                this.groupCommitLatency, compression
             );
         }
 
@@ -201,7 +256,8 @@ public class SettingsImpl implements Settings {
         public Settings build() {
             return new SettingsImpl(
                 this.dirForFiles, this.elementClass, this.capacity, this.queueMaxBytes,
-                this.maxUnread, this.checkpointMaxAcks, this.checkpointMaxWrites, this.checkpointRetry
+                this.maxUnread, this.checkpointMaxAcks, this.checkpointMaxWrites, this.checkpointRetry,
+                this.groupCommitLatency, this.compression
             );
         }
     }
@@ -1,6 +1,7 @@
 package org.logstash.ackedqueue.ext;
 
 import java.io.IOException;
+import java.util.List;
 import org.jruby.Ruby;
 import org.jruby.RubyBoolean;
 import org.jruby.RubyClass;
@@ -35,15 +36,17 @@ public final class JRubyAckedQueueExt extends RubyObject {
     }
 
     public static JRubyAckedQueueExt create(String path, int capacity, int maxEvents, int checkpointMaxWrites,
-                                            int checkpointMaxAcks, boolean checkpointRetry, long maxBytes) {
+                                            int checkpointMaxAcks, boolean checkpointRetry, long maxBytes,
+                                            long groupCommitLatency, String compression) {
         JRubyAckedQueueExt queueExt = new JRubyAckedQueueExt(RubyUtil.RUBY, RubyUtil.ACKED_QUEUE_CLASS);
         queueExt.initializeQueue(path, capacity, maxEvents, checkpointMaxWrites, checkpointMaxAcks, checkpointRetry,
-                maxBytes);
+                maxBytes, groupCommitLatency, compression);
         return queueExt;
     }
 
     private void initializeQueue(String path, int capacity, int maxEvents, int checkpointMaxWrites,
-                                 int checkpointMaxAcks, boolean checkpointRetry, long maxBytes) {
+                                 int checkpointMaxAcks, boolean checkpointRetry, long maxBytes,
+                                 long groupCommitLatency, String compression) {
         this.queue = new Queue(
             SettingsImpl.fileSettingsBuilder(path)
                 .capacity(capacity)
@@ -52,6 +55,8 @@ public final class JRubyAckedQueueExt extends RubyObject {
                 .checkpointMaxAcks(checkpointMaxAcks)
                 .checkpointMaxWrites(checkpointMaxWrites)
                 .checkpointRetry(checkpointRetry)
+                .groupCommitLatency(groupCommitLatency)
+                .compression(compression)
                 .elementClass(Event.class)
                 .build()
         );
@@ -92,6 +97,31 @@ public final class JRubyAckedQueueExt extends RubyObject {
         return context.runtime.newFixnum(queue.getUnackedCount());
     }
 
+    @JRubyMethod(name = "group_commit?")
+    public IRubyObject ruby_is_group_commit(ThreadContext context) {
+        return RubyBoolean.newBoolean(context.runtime, queue.getGroupCommitLatency() > 0L);
+    }
+
+    @JRubyMethod(name = "flush_count")
+    public IRubyObject ruby_flush_count(ThreadContext context) {
+        return context.runtime.newFixnum(queue.getFlushCount());
+    }
+
+    @JRubyMethod(name = "flushed_event_count")
+    public IRubyObject ruby_flushed_event_count(ThreadContext context) {
+        return context.runtime.newFixnum(queue.getFlushedEventCount());
+    }
+
+    @JRubyMethod(name = "last_flush_interval_in_millis")
+    public IRubyObject ruby_last_flush_interval_in_millis(ThreadContext context) {
+        return context.runtime.newFixnum(queue.getLastFlushIntervalMillis());
+    }
+
+    @JRubyMethod(name = "last_flush_duration_in_millis")
+    public IRubyObject ruby_last_flush_duration_in_millis(ThreadContext context) {
+        return context.runtime.newFixnum(queue.getLastFlushDurationMillis());
+    }
+
     @JRubyMethod(name = "unread_count")
     public IRubyObject ruby_unread_count(ThreadContext context) {
         return context.runtime.newFixnum(queue.getUnreadCount());
@@ -113,6 +143,14 @@ public final class JRubyAckedQueueExt extends RubyObject {
         this.queue.write(event);
     }
 
+    public void rubyWriteBatch(ThreadContext context, List<Event> events) {
+        try {
+            this.queue.write(events);
+        } catch (IOException e) {
+            throw RubyUtil.newRubyIOError(context.runtime, e);
+        }
+    }
+
     @JRubyMethod(name = "read_batch", required = 2)
     public IRubyObject ruby_read_batch(ThreadContext context, IRubyObject limit,
         IRubyObject timeout) {
@@ -12,6 +12,7 @@ import org.jruby.runtime.Arity;
 import org.jruby.runtime.ThreadContext;
 import org.jruby.runtime.builtin.IRubyObject;
 import org.logstash.RubyUtil;
+import org.logstash.ackedqueue.io.PageCodec;
 import org.logstash.execution.AbstractWrappedQueueExt;
 import org.logstash.execution.QueueReadClientBase;
 import org.logstash.ext.JRubyAbstractQueueWriteClientExt;
@@ -27,18 +28,21 @@ public final class JRubyWrappedAckedQueueExt extends AbstractWrappedQueueExt {
     private JRubyAckedQueueExt queue;
     private final AtomicBoolean isClosed = new AtomicBoolean();
 
-    @JRubyMethod(optional = 8)
+    @JRubyMethod(optional = 10)
     public JRubyWrappedAckedQueueExt initialize(ThreadContext context, IRubyObject[] args) throws IOException {
-        args = Arity.scanArgs(context.runtime, args, 8, 0);
+        args = Arity.scanArgs(context.runtime, args, 8, 2);
         int capacity = RubyFixnum.num2int(args[1]);
         int maxEvents = RubyFixnum.num2int(args[2]);
         int checkpointMaxWrites = RubyFixnum.num2int(args[3]);
         int checkpointMaxAcks = RubyFixnum.num2int(args[4]);
         boolean checkpointRetry = !((RubyBoolean)args[6]).isFalse();
         long queueMaxBytes = RubyFixnum.num2long(args[7]);
+        long groupCommitLatency = args[8].isNil() ? 0L : RubyFixnum.num2long(args[8]);
+        String compression = args[9].isNil() ? PageCodec.NONE : args[9].asJavaString();
 
         this.queue = JRubyAckedQueueExt.create(args[0].asJavaString(), capacity, maxEvents,
-                checkpointMaxWrites, checkpointMaxAcks, checkpointRetry, queueMaxBytes);
+                checkpointMaxWrites, checkpointMaxAcks, checkpointRetry, queueMaxBytes, groupCommitLatency,
+                compression);
         this.queue.open();
 
         return this;
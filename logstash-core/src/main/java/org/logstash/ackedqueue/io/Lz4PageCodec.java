@@ -0,0 +1,202 @@
+package org.logstash.ackedqueue.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure Java implementation of the LZ4 block format: a greedy single hash probe compressor, which trades some ratio
+ * for speed like the reference fast mode, and a bounds checked decompressor.
+ */
+final class Lz4PageCodec implements PageCodec {
+
+    static final byte ID = (byte) 1;
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5; // the last 5 bytes of a block are always literals
+    private static final int MF_LIMIT = 12;     // the last match must start at least 12 bytes before the block end
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 0x0F;
+    private static final int ML_MASK = 0x0F;
+    private static final int SKIP_STRENGTH = 6; // probe less often in incompressible data
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return LZ4;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+        final int srcEnd = srcOffset + srcLength;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimit = srcEnd - MF_LIMIT;
+        int op = destOffset;
+        int anchor = srcOffset;
+
+        if (srcLength > MF_LIMIT) {
+            Arrays.fill(hashTable, -1);
+            int ip = srcOffset;
+            int searchCount = 1 << SKIP_STRENGTH;
+            while (ip < mfLimit) {
+                final int sequence = readInt(src, ip);
+                final int h = hash(sequence);
+                int ref = hashTable[h];
+                hashTable[h] = ip;
+                if (ref < srcOffset || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip += searchCount++ >>> SKIP_STRENGTH;
+                    continue;
+                }
+                searchCount = 1 << SKIP_STRENGTH;
+
+                // extend the match backwards over pending literals then forwards
+                while (ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dest, op);
+                ip += matchLength;
+                anchor = ip;
+                if (ip < mfLimit) {
+                    hashTable[hash(readInt(src, ip - 2))] = ip - 2;
+                }
+            }
+        }
+
+        return writeLastLiterals(src, anchor, srcEnd - anchor, dest, op) - destOffset;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength)
+        throws IOException {
+        final int srcEnd = srcOffset + srcLength;
+        final int destEnd = destOffset + destLength;
+        int ip = srcOffset;
+        int op = destOffset;
+        try {
+            while (true) {
+                checkAvailable(ip, 1, srcEnd);
+                final int token = src[ip++] & 0xFF;
+
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        checkAvailable(ip, 1, srcEnd);
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 0xFF);
+                }
+                if (literalLength > srcEnd - ip || literalLength > destEnd - op) {
+                    throw new IOException("malformed lz4 block: literals past block end");
+                }
+                System.arraycopy(src, ip, dest, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip == srcEnd) {
+                    // the last sequence only holds literals
+                    break;
+                }
+
+                checkAvailable(ip, 2, srcEnd);
+                final int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLength = token & ML_MASK;
+                if (matchLength == ML_MASK) {
+                    int b;
+                    do {
+                        checkAvailable(ip, 1, srcEnd);
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 0xFF);
+                }
+                matchLength += MIN_MATCH;
+                final int ref = op - offset;
+                if (offset == 0 || ref < destOffset || matchLength > destEnd - op) {
+                    throw new IOException("malformed lz4 block: invalid match");
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dest, ref, dest, op, matchLength);
+                    op += matchLength;
+                } else {
+                    // overlapping match, repeats the last offset bytes
+                    for (int i = 0; i < matchLength; i++) {
+                        dest[op++] = dest[ref + i];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("malformed lz4 block: truncated", e);
+        }
+        if (op != destEnd) {
+            throw new IOException(String.format("malformed lz4 block: decompressed %d bytes, expected %d",
+                op - destOffset, destLength));
+        }
+    }
+
+    // the block may sit inside a larger scratch array, so the array bounds alone do not catch a truncated block
+    private static void checkAvailable(int ip, int count, int srcEnd) throws IOException {
+        if (count > srcEnd - ip) {
+            throw new IOException("malformed lz4 block: truncated");
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalOffset, int literalLength, int offset, int matchLength,
+                                     byte[] dest, int op) {
+        final int matchCode = matchLength - MIN_MATCH;
+        final int tokenOffset = op++;
+        int token = Math.min(literalLength, RUN_MASK) << 4 | Math.min(matchCode, ML_MASK);
+        dest[tokenOffset] = (byte) token;
+        op = writeLength(literalLength, RUN_MASK, dest, op);
+        System.arraycopy(src, literalOffset, dest, op, literalLength);
+        op += literalLength;
+        dest[op++] = (byte) offset;
+        dest[op++] = (byte) (offset >>> 8);
+        return writeLength(matchCode, ML_MASK, dest, op);
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOffset, int literalLength, byte[] dest, int op) {
+        dest[op++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        op = writeLength(literalLength, RUN_MASK, dest, op);
+        System.arraycopy(src, literalOffset, dest, op, literalLength);
+        return op + literalLength;
+    }
+
+    // lengths of at least mask continue after the token as bytes of 255 and a final byte below 255
+    private static int writeLength(int length, int mask, byte[] dest, int op) {
+        if (length >= mask) {
+            int remaining = length - mask;
+            while (remaining >= 0xFF) {
+                dest[op++] = (byte) 0xFF;
+                remaining -= 0xFF;
+            }
+            dest[op++] = (byte) remaining;
+        }
+        return op;
+    }
+
+    private static int readInt(byte[] src, int offset) {
+        return (src[offset] & 0xFF) | (src[offset + 1] & 0xFF) << 8
+            | (src[offset + 2] & 0xFF) << 16 | (src[offset + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return sequence * -1640531535 >>> 32 - HASH_LOG;
+    }
+}
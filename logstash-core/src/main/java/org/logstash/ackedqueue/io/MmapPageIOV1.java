@@ -159,6 +159,11 @@ public final class MmapPageIOV1 implements PageIO {
         throw new UnsupportedOperationException("Writing to v1 pages is not supported anymore");
     }
 
+    @Override
+    public void write(List<byte[]> elements, long firstSeqNum) {
+        throw new UnsupportedOperationException("Writing to v1 pages is not supported anymore");
+    }
+
     @Override
     public void close() {
         if (this.buffer != null) {
@@ -170,6 +170,10 @@ public final class MmapPageIOV2 implements PageIO {
         }
         buffer.position(0);
         buffer.put(VERSION_TWO);
+        // the file may be a recycled page, clear its first element header so it recovers as an empty page
+        for (int i = 0; i < SEQNUM_SIZE + LENGTH_SIZE && buffer.hasRemaining(); i++) {
+            buffer.put((byte) 0);
+        }
         this.head = 1;
         this.minSeqNum = 0L;
         this.elementCount = 0;
@@ -208,6 +212,33 @@ public final class MmapPageIOV2 implements PageIO {
         write(bytes, seqNum, bytes.length, checksum(bytes));
     }
 
+    @Override
+    public void write(List<byte[]> elements, long firstSeqNum) {
+        assert this.offsetMap.size() == this.elementCount :
+            String.format("offsetMap size=%d != elementCount=%d", this.offsetMap.size(), this.elementCount);
+
+        // the elements are contiguous so the buffer is positioned once for all of them
+        buffer.position(this.head);
+        long seqNum = firstSeqNum;
+        for (final byte[] bytes : elements) {
+            this.offsetMap.add(this.head);
+            buffer.putLong(seqNum);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+            buffer.putInt(checksum(bytes));
+            this.head += persistedByteCount(bytes.length);
+            seqNum++;
+        }
+
+        assert this.head == buffer.position() :
+            String.format("head=%d != buffer position=%d", this.head, buffer.position());
+
+        if (this.elementCount <= 0 && !elements.isEmpty()) {
+            this.minSeqNum = firstSeqNum;
+        }
+        this.elementCount += elements.size();
+    }
+
     @Override
     public void close() {
         if (this.buffer != null) {
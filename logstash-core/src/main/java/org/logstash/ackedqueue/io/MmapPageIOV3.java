@@ -0,0 +1,548 @@
+package org.logstash.ackedqueue.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.logstash.LogstashJavaCompat;
+import org.logstash.ackedqueue.SequencedList;
+
+/**
+ * {@link PageIO} implementation for the V3 compressed PQ serialization format.
+ *
+ * <p>The page header holds the version byte followed by the {@link PageCodec} id. Elements are stored in compressed
+ * blocks of consecutive elements:</p>
+ * <pre>
+ * firstSeqNum (long) | count (int) | rawLength (int) | compressedLength (int) | compressed data | checksum (int)
+ * </pre>
+ * <p>where the raw data is the length (int) and bytes of each element and the checksum is the CRC32 of the
+ * compressed data. A single element write is stored as a block of one element while a batch write is split into
+ * blocks of up to {@link #BLOCK_SIZE} raw bytes, which is where most of the compression comes from. Opening a page
+ * only walks the block headers, a block is decompressed when it is first read and kept until the next one is read.</p>
+ */
+public final class MmapPageIOV3 implements PageIO {
+
+    public static final byte VERSION_THREE = (byte) 3;
+    public static final int VERSION_SIZE = Byte.BYTES;
+    public static final int CODEC_SIZE = Byte.BYTES;
+    public static final int HEADER_SIZE = VERSION_SIZE + CODEC_SIZE;
+    public static final int SEQNUM_SIZE = Long.BYTES;
+    public static final int COUNT_SIZE = Integer.BYTES;
+    public static final int LENGTH_SIZE = Integer.BYTES;
+    public static final int CHECKSUM_SIZE = Integer.BYTES;
+    public static final int BLOCK_HEADER_SIZE = SEQNUM_SIZE + COUNT_SIZE + LENGTH_SIZE + LENGTH_SIZE;
+    public static final int BLOCK_OVERHEAD = BLOCK_HEADER_SIZE + CHECKSUM_SIZE;
+    public static final int BLOCK_SIZE = 64 * 1024; // raw bytes above which a batch write starts a new block
+
+    private static final Logger LOGGER = LogManager.getLogger(MmapPageIOV3.class);
+
+    /**
+     * Cleaner function for forcing unmapping of backing {@link MmapPageIOV3#buffer}.
+     */
+    private static final ByteBufferCleaner BUFFER_CLEANER =
+        LogstashJavaCompat.setupBytebufferCleaner();
+
+    private final File file;
+
+    private final CRC32 checkSummer;
+
+    private final IntVector offsetMap; // offset of the block holding each element
+
+    private PageCodec codec;
+    private int capacity; // page capacity is an int per the ByteBuffer class.
+    private long minSeqNum;
+    private int elementCount;
+    private int head; // head is the write position and is an int per ByteBuffer class position
+    private byte version;
+
+    private MappedByteBuffer buffer;
+
+    // scratch buffers for the block being written or read
+    private byte[] rawBuffer = new byte[0];
+    private byte[] compressedBuffer = new byte[0];
+
+    // last decompressed block
+    private int blockOffset = -1;
+    private long blockFirstSeqNum;
+    private int blockCount;
+    private int[] blockElementOffsets = new int[0];
+
+    /**
+     * page IO for an existing page, the codec is read from the page header.
+     */
+    public MmapPageIOV3(int pageNum, int capacity, Path dirPath) {
+        this(pageNum, capacity, dirPath, null);
+    }
+
+    /**
+     * @param codec the codec of the pages created with {@link #create()}
+     */
+    public MmapPageIOV3(int pageNum, int capacity, Path dirPath, PageCodec codec) {
+        this.minSeqNum = 0;
+        this.elementCount = 0;
+        this.version = 0;
+        this.head = 0;
+        this.capacity = capacity;
+        this.codec = codec;
+        this.offsetMap = new IntVector();
+        this.checkSummer = new CRC32();
+        this.file = dirPath.resolve("page." + pageNum).toFile();
+    }
+
+    @Override
+    public void open(long minSeqNum, int elementCount) throws IOException {
+        mapFile();
+        readHeader();
+
+        this.minSeqNum = minSeqNum;
+        this.elementCount = elementCount;
+
+        if (this.elementCount > 0) {
+            // verify first seqNum to be same as expected minSeqNum
+            long seqNum = buffer.getLong();
+            if (seqNum != this.minSeqNum) {
+                throw new IOException(String.format("first seqNum=%d is different than minSeqNum=%d", seqNum, this.minSeqNum));
+            }
+
+            // reset back position to first seqNum
+            buffer.position(this.head);
+
+            int read = 0;
+            while (read < this.elementCount) {
+                read += readNextBlock(this.minSeqNum + read, this.elementCount - read, !MmapPageIOV2.VERIFY_CHECKSUM);
+            }
+        }
+    }
+
+    @Override
+    public SequencedList<byte[]> read(long seqNum, int limit) throws IOException {
+        assert seqNum >= this.minSeqNum :
+            String.format("seqNum=%d < minSeqNum=%d", seqNum, this.minSeqNum);
+        assert seqNum <= maxSeqNum() :
+            String.format("seqNum=%d is > maxSeqNum=%d", seqNum, maxSeqNum());
+
+        final List<byte[]> elements = new ArrayList<>();
+        final LongVector seqNums = new LongVector(limit);
+
+        final long maxSeqNum = maxSeqNum();
+        long next = seqNum;
+        while (elements.size() < limit && next <= maxSeqNum) {
+            decompressBlock(this.offsetMap.get((int) (next - this.minSeqNum)));
+            // a block may hold elements past the element count this page was opened with
+            final int blockEnd = (int) Math.min(this.blockCount, maxSeqNum - this.blockFirstSeqNum + 1);
+            for (int i = (int) (next - this.blockFirstSeqNum); i < blockEnd && elements.size() < limit; i++) {
+                final int offset = this.blockElementOffsets[i];
+                final int length = readRawInt(offset);
+                final byte[] readBytes = new byte[length];
+                System.arraycopy(this.rawBuffer, offset + LENGTH_SIZE, readBytes, 0, length);
+                elements.add(readBytes);
+                seqNums.add(next++);
+            }
+        }
+
+        return new SequencedList<>(elements, seqNums);
+    }
+
+    // recover will overwrite/update/set this object minSeqNum, capacity and elementCount attributes
+    // to reflect what it recovered from the page
+    @Override
+    public void recover() throws IOException {
+        mapFile();
+        readHeader();
+
+        // force minSeqNum to actual first element seqNum
+        this.minSeqNum = buffer.getLong();
+        // reset back position to first seqNum
+        buffer.position(this.head);
+
+        // reset elementCount to 0 and increment to octal number of valid elements found
+        this.elementCount = 0;
+
+        while (true) {
+            try {
+                // verify that seqNum must be of strict + 1 increasing order
+                this.elementCount += readNextBlock(this.minSeqNum + this.elementCount, Integer.MAX_VALUE,
+                    MmapPageIOV2.VERIFY_CHECKSUM);
+            } catch (MmapPageIOV2.PageIOInvalidElementException e) {
+                // simply stop at first invalid block
+                LOGGER.debug("PageIO recovery element index:{}, readNextBlock exception: {}", this.elementCount, e.getMessage());
+                break;
+            }
+        }
+
+        // if we were not able to read any element just reset minSeqNum to zero
+        if (this.elementCount <= 0) {
+            this.minSeqNum = 0;
+        }
+    }
+
+    @Override
+    public void create() throws IOException {
+        if (this.codec == null) {
+            throw new IllegalStateException("a codec is required to create a compressed page");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        }
+        buffer.position(0);
+        buffer.put(VERSION_THREE);
+        buffer.put(this.codec.id());
+        // the file may be a recycled page, clear its first block header so it recovers as an empty page
+        for (int i = 0; i < BLOCK_HEADER_SIZE && buffer.hasRemaining(); i++) {
+            buffer.put((byte) 0);
+        }
+        this.head = HEADER_SIZE;
+        this.minSeqNum = 0L;
+        this.elementCount = 0;
+    }
+
+    @Override
+    public void deactivate() {
+        close(); // close can be called multiple times
+    }
+
+    @Override
+    public void activate() throws IOException {
+        if (this.buffer == null) {
+            try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+            }
+            this.buffer.load();
+        }
+        // TODO: do we need to check is the channel is still open? not sure how it could be closed
+    }
+
+    @Override
+    public void ensurePersisted() {
+        this.buffer.force();
+    }
+
+    @Override
+    public void purge() throws IOException {
+        close();
+        Files.delete(this.file.toPath());
+        this.head = 0;
+    }
+
+    @Override
+    public void write(byte[] bytes, long seqNum) {
+        writeBlock(Collections.singletonList(bytes), seqNum);
+    }
+
+    @Override
+    public void write(List<byte[]> elements, long firstSeqNum) {
+        int blockStart = 0;
+        while (blockStart < elements.size()) {
+            final int blockEnd = blockEnd(elements, blockStart);
+            writeBlock(elements.subList(blockStart, blockEnd), firstSeqNum + blockStart);
+            blockStart = blockEnd;
+        }
+    }
+
+    /**
+     * @param elements elements of a batch write
+     * @return the worst case size of the blocks {@link #write(List, long)} writes for the elements, far less than
+     * the sum of their {@link #persistedByteCount(int)} for batches of small elements
+     */
+    public int persistedByteCount(List<byte[]> elements) {
+        int total = 0;
+        int blockStart = 0;
+        while (blockStart < elements.size()) {
+            final int blockEnd = blockEnd(elements, blockStart);
+            int rawLength = 0;
+            for (int i = blockStart; i < blockEnd; i++) {
+                rawLength += LENGTH_SIZE + elements.get(i).length;
+            }
+            total += BLOCK_OVERHEAD + codec.maxCompressedLength(rawLength);
+            blockStart = blockEnd;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        if (this.buffer != null) {
+            this.buffer.force();
+            BUFFER_CLEANER.clean(buffer);
+
+        }
+        this.buffer = null;
+
+        // release the scratch buffers, they are allocated again if the page is reactivated
+        this.rawBuffer = new byte[0];
+        this.compressedBuffer = new byte[0];
+        this.blockElementOffsets = new int[0];
+        this.blockOffset = -1;
+    }
+
+    @Override
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    @Override
+    public long getMinSeqNum() {
+        return this.minSeqNum;
+    }
+
+    @Override
+    public int getElementCount() {
+        return this.elementCount;
+    }
+
+    @Override
+    public boolean hasSpace(int bytes) {
+        int bytesLeft = this.capacity - this.head;
+        return persistedByteCount(bytes) <= bytesLeft;
+    }
+
+    /**
+     * the worst case size of a block holding only the given element. the worst case of a block of several elements
+     * is never more than the sum of their single element worst cases so it is also a safe bound for batch writes.
+     */
+    @Override
+    public int persistedByteCount(int byteCount) {
+        return BLOCK_OVERHEAD + codec.maxCompressedLength(LENGTH_SIZE + byteCount);
+    }
+
+    @Override
+    public int getHead() {
+        return this.head;
+    }
+
+    public PageCodec getCodec() {
+        return this.codec;
+    }
+
+    private long maxSeqNum() {
+        return this.minSeqNum + this.elementCount - 1;
+    }
+
+    // read the version and codec header bytes and position the buffer at the first block
+    private void readHeader() throws IOException {
+        buffer.position(0);
+        this.version = buffer.get();
+        validateVersion(this.version);
+        this.codec = PageCodec.forId(buffer.get());
+        this.head = HEADER_SIZE;
+    }
+
+    // memory map data file to this.buffer
+    private void mapFile() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+
+            if (raf.length() > Integer.MAX_VALUE) {
+                throw new IOException("Page file too large " + this.file);
+            }
+            int pageFileCapacity = (int) raf.length();
+
+            // update capacity to actual raf length. this can happen if a page size was changed on a non empty queue directory for example.
+            this.capacity = pageFileCapacity;
+
+            if (this.capacity < HEADER_SIZE + BLOCK_OVERHEAD) {
+                throw new IOException(String.format("Page file size is too small to hold elements"));
+            }
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        }
+        this.buffer.load();
+    }
+
+    // read and validate next block at page head
+    // @param maxElements the number of elements of the block to add to the offset map
+    // @param verifyChecksum if true the compressed block data will be read + checksumed and compared to written checksum
+    // @return the number of elements added to the offset map
+    private int readNextBlock(long expectedSeqNum, int maxElements, boolean verifyChecksum)
+        throws MmapPageIOV2.PageIOInvalidElementException {
+        // if there is no room for the block header stop here
+        if (this.head + BLOCK_HEADER_SIZE > capacity) {
+            throw new MmapPageIOV2.PageIOInvalidElementException(
+                "cannot read block header past buffer capacity");
+        }
+
+        final int blockStart = this.head;
+
+        final long seqNum = buffer.getLong();
+        if (seqNum != expectedSeqNum) {
+            throw new MmapPageIOV2.PageIOInvalidElementException(
+                String.format("Block seqNum %d is expected to be %d", seqNum, expectedSeqNum));
+        }
+
+        final int count = buffer.getInt();
+        final int rawLength = buffer.getInt();
+        final int compressedLength = buffer.getInt();
+        if (count <= 0 || rawLength < count * LENGTH_SIZE || compressedLength <= 0) {
+            throw new MmapPageIOV2.PageIOInvalidElementException("Block invalid count or length");
+        }
+
+        // if there is no room for the proposed data length and checksum just stop here
+        final int newHead = blockStart + BLOCK_HEADER_SIZE;
+        if (compressedLength > capacity - newHead - CHECKSUM_SIZE) {
+            throw new MmapPageIOV2.PageIOInvalidElementException(
+                "cannot read block payload and checksum past buffer capacity");
+        }
+
+        if (verifyChecksum) {
+            // read data and compute checksum;
+            this.checkSummer.reset();
+            final int prevLimit = buffer.limit();
+            buffer.limit(buffer.position() + compressedLength);
+            this.checkSummer.update(buffer);
+            buffer.limit(prevLimit);
+            int checksum = buffer.getInt();
+            int computedChecksum = (int) this.checkSummer.getValue();
+            if (computedChecksum != checksum) {
+                throw new MmapPageIOV2.PageIOInvalidElementException(
+                    "Block invalid checksum");
+            }
+        }
+
+        // at this point we recovered a valid block
+        final int added = Math.min(count, maxElements);
+        for (int i = 0; i < added; i++) {
+            this.offsetMap.add(blockStart);
+        }
+        this.head = newHead + compressedLength + CHECKSUM_SIZE;
+
+        buffer.position(this.head);
+        return added;
+    }
+
+    // decompress the block at the given offset unless it is the last decompressed one
+    private void decompressBlock(int offset) throws IOException {
+        if (offset == this.blockOffset) {
+            return;
+        }
+        this.blockOffset = -1;
+
+        buffer.position(offset);
+        final long firstSeqNum = buffer.getLong();
+        final int count = buffer.getInt();
+        final int rawLength = buffer.getInt();
+        final int compressedLength = buffer.getInt();
+
+        this.compressedBuffer = ensureCapacity(this.compressedBuffer, compressedLength);
+        buffer.get(this.compressedBuffer, 0, compressedLength);
+        final int checksum = buffer.getInt();
+        this.checkSummer.reset();
+        this.checkSummer.update(this.compressedBuffer, 0, compressedLength);
+        final int computedChecksum = (int) this.checkSummer.getValue();
+        if (computedChecksum != checksum) {
+            throw new IOException(String.format("computed checksum=%d != checksum for file=%d", computedChecksum, checksum));
+        }
+
+        this.rawBuffer = ensureCapacity(this.rawBuffer, rawLength);
+        this.codec.decompress(this.compressedBuffer, 0, compressedLength, this.rawBuffer, 0, rawLength);
+
+        if (this.blockElementOffsets.length < count) {
+            this.blockElementOffsets = new int[count];
+        }
+        int elementOffset = 0;
+        for (int i = 0; i < count; i++) {
+            if (elementOffset + LENGTH_SIZE > rawLength) {
+                throw new IOException(String.format("block at offset=%d holds less than %d elements", offset, count));
+            }
+            this.blockElementOffsets[i] = elementOffset;
+            elementOffset += LENGTH_SIZE + readRawInt(elementOffset);
+        }
+        if (elementOffset != rawLength) {
+            throw new IOException(String.format("block at offset=%d has invalid element lengths", offset));
+        }
+
+        this.blockFirstSeqNum = firstSeqNum;
+        this.blockCount = count;
+        this.blockOffset = offset;
+    }
+
+    // at least one element per block, then as many as fit in BLOCK_SIZE raw bytes
+    private static int blockEnd(List<byte[]> elements, int blockStart) {
+        int blockEnd = blockStart + 1;
+        int rawLength = LENGTH_SIZE + elements.get(blockStart).length;
+        while (blockEnd < elements.size() && rawLength + LENGTH_SIZE + elements.get(blockEnd).length <= BLOCK_SIZE) {
+            rawLength += LENGTH_SIZE + elements.get(blockEnd).length;
+            blockEnd++;
+        }
+        return blockEnd;
+    }
+
+    private void writeBlock(List<byte[]> elements, long firstSeqNum) {
+        // since writes always happen at head, the block offset is appended to the offsetMap for each element
+        assert this.offsetMap.size() == this.elementCount :
+            String.format("offsetMap size=%d != elementCount=%d", this.offsetMap.size(), this.elementCount);
+
+        int rawLength = 0;
+        for (final byte[] bytes : elements) {
+            rawLength += LENGTH_SIZE + bytes.length;
+        }
+        this.rawBuffer = ensureCapacity(this.rawBuffer, rawLength);
+        int rawOffset = 0;
+        for (final byte[] bytes : elements) {
+            writeRawInt(rawOffset, bytes.length);
+            System.arraycopy(bytes, 0, this.rawBuffer, rawOffset + LENGTH_SIZE, bytes.length);
+            rawOffset += LENGTH_SIZE + bytes.length;
+        }
+        // the raw buffer no longer holds the last decompressed block
+        this.blockOffset = -1;
+
+        this.compressedBuffer = ensureCapacity(this.compressedBuffer, codec.maxCompressedLength(rawLength));
+        final int compressedLength = codec.compress(this.rawBuffer, 0, rawLength, this.compressedBuffer, 0);
+        this.checkSummer.reset();
+        this.checkSummer.update(this.compressedBuffer, 0, compressedLength);
+
+        final int blockStart = this.head;
+        buffer.position(this.head);
+        buffer.putLong(firstSeqNum);
+        buffer.putInt(elements.size());
+        buffer.putInt(rawLength);
+        buffer.putInt(compressedLength);
+        buffer.put(this.compressedBuffer, 0, compressedLength);
+        buffer.putInt((int) this.checkSummer.getValue());
+        this.head += BLOCK_OVERHEAD + compressedLength;
+
+        assert this.head == buffer.position() :
+            String.format("head=%d != buffer position=%d", this.head, buffer.position());
+
+        if (this.elementCount <= 0) {
+            this.minSeqNum = firstSeqNum;
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            this.offsetMap.add(blockStart);
+        }
+        this.elementCount += elements.size();
+    }
+
+    private int readRawInt(int offset) {
+        final byte[] raw = this.rawBuffer;
+        return (raw[offset] & 0xFF) << 24 | (raw[offset + 1] & 0xFF) << 16
+            | (raw[offset + 2] & 0xFF) << 8 | (raw[offset + 3] & 0xFF);
+    }
+
+    private void writeRawInt(int offset, int value) {
+        final byte[] raw = this.rawBuffer;
+        raw[offset] = (byte) (value >>> 24);
+        raw[offset + 1] = (byte) (value >>> 16);
+        raw[offset + 2] = (byte) (value >>> 8);
+        raw[offset + 3] = (byte) value;
+    }
+
+    private static byte[] ensureCapacity(byte[] bytes, int length) {
+        return bytes.length >= length ? bytes : new byte[Math.max(length, bytes.length * 2)];
+    }
+
+    // the version byte is checked for basic integrity, if an unexpected version byte is read throw PageIOInvalidVersionException
+    private static void validateVersion(byte version)
+        throws MmapPageIOV2.PageIOInvalidVersionException {
+        if (version != VERSION_THREE) {
+            throw new MmapPageIOV2.PageIOInvalidVersionException(String
+                .format("Expected page version=%d but found version=%d", VERSION_THREE, version));
+        }
+    }
+}
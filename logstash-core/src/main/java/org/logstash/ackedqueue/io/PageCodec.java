@@ -0,0 +1,58 @@
+package org.logstash.ackedqueue.io;
+
+import java.io.IOException;
+
+/**
+ * Block compression codec of {@link MmapPageIOV3} pages. The codec id is recorded in the page header so a page is
+ * always read back with the codec it was written with, whatever the current queue setting.
+ * Codec instances hold scratch state and must not be shared between threads.
+ */
+public interface PageCodec {
+
+    String NONE = "none";
+
+    String LZ4 = "lz4";
+
+    // @return the id of the codec stored in the page header
+    byte id();
+
+    // @return the codec name used in the queue settings
+    String name();
+
+    // @return the maximum compressed size of the given number of bytes
+    int maxCompressedLength(int length);
+
+    // compress srcLength bytes of src at srcOffset into dest at destOffset which must have room for
+    // maxCompressedLength(srcLength) bytes
+    // @return the compressed length
+    int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset);
+
+    // decompress srcLength bytes of src at srcOffset into exactly destLength bytes of dest at destOffset
+    void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength)
+        throws IOException;
+
+    /**
+     * @param name codec name from the queue settings
+     * @return a new codec instance or null for {@link #NONE}
+     */
+    static PageCodec forName(final String name) {
+        if (name == null || NONE.equals(name)) {
+            return null;
+        } else if (LZ4.equals(name)) {
+            return new Lz4PageCodec();
+        }
+        throw new IllegalArgumentException(String.format("unknown queue compression codec %s", name));
+    }
+
+    /**
+     * @param id codec id read from a page header
+     * @return a new codec instance
+     * @throws IOException if the id is not a known codec
+     */
+    static PageCodec forId(final byte id) throws IOException {
+        if (id == Lz4PageCodec.ID) {
+            return new Lz4PageCodec();
+        }
+        throw new IOException(String.format("unknown page compression codec id=%d", id));
+    }
+}
@@ -4,6 +4,7 @@ import org.logstash.ackedqueue.SequencedList;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 
 public interface PageIO extends Closeable {
 
@@ -31,6 +32,10 @@ public interface PageIO extends Closeable {
     // write the given bytes to the data container
     void write(byte[] bytes, long seqNum) throws IOException;
 
+    // write the given elements to the data container in a single pass, the first element with
+    // the given seqNum and the following ones with consecutive seqNums
+    void write(List<byte[]> elements, long firstSeqNum) throws IOException;
+
     // read up to limit number of items starting at give seqNum
     SequencedList<byte[]> read(long seqNum, int limit) throws IOException;
 
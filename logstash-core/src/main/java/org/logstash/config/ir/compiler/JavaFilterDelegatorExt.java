@@ -10,11 +10,13 @@ import org.jruby.RubyHash;
 import org.jruby.RubyString;
 import org.jruby.RubySymbol;
 import org.jruby.anno.JRubyClass;
+import org.jruby.javasupport.JavaUtil;
 import org.jruby.runtime.ThreadContext;
 import org.jruby.runtime.builtin.IRubyObject;
 import org.logstash.RubyUtil;
 import org.logstash.ext.JrubyEventExtLibrary;
 import org.logstash.instrument.metrics.AbstractNamespacedMetricExt;
+import org.logstash.instrument.metrics.MetricSource;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -36,6 +38,8 @@ public class JavaFilterDelegatorExt extends AbstractFilterDelegatorExt {
 
     private FilterMatchListener filterMatchListener;
 
+    private AbstractNamespacedMetricExt scopedMetric;
+
     public JavaFilterDelegatorExt(final Ruby runtime, final RubyClass metaClass) {
         super(runtime, metaClass);
     }
@@ -49,6 +53,7 @@ public class JavaFilterDelegatorExt extends AbstractFilterDelegatorExt {
         AbstractNamespacedMetricExt scopedMetric =
                 metric.namespace(RubyUtil.RUBY.getCurrentContext(), RubyUtil.RUBY.newSymbol(filter.getId()));
         instance.initMetrics(id, scopedMetric);
+        instance.scopedMetric = scopedMetric;
         instance.filter = filter;
         instance.initializeFilterMatchListener(pluginArgs);
         return instance;
@@ -126,6 +131,27 @@ public class JavaFilterDelegatorExt extends AbstractFilterDelegatorExt {
         return filter.requiresPeriodicFlush();
     }
 
+    /**
+     * publish the current values of the metrics of a {@link MetricSource} filter as gauges under the filter
+     * namespace, does nothing for other filters.
+     *
+     * @param context the thread context
+     */
+    public void collectStats(final ThreadContext context) {
+        if (filter instanceof MetricSource) {
+            ((MetricSource) filter).collectMetrics((namespace, metric) -> {
+                AbstractNamespacedMetricExt target = scopedMetric;
+                for (final String name : namespace) {
+                    target = target.namespace(context, context.runtime.newSymbol(name));
+                }
+                target.gauge(
+                    context, context.runtime.newSymbol(metric.getName()),
+                    JavaUtil.convertJavaToUsableRubyObject(context.runtime, metric.getValue())
+                );
+            });
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void initializeFilterMatchListener(Map<String, Object> pluginArgs) {
         List<Consumer<Event>> filterActions = new ArrayList<>();
@@ -51,6 +51,19 @@ public class AbstractPipelineExt extends RubyBasicObject {
     private static final @SuppressWarnings("rawtypes") RubyArray DATA_NAMESPACE =
         RubyArray.newArray(RubyUtil.RUBY, RubyUtil.RUBY.newSymbol("data"));
 
+    private static final @SuppressWarnings("rawtypes") RubyArray FLUSH_NAMESPACE =
+        RubyArray.newArray(RubyUtil.RUBY, RubyUtil.RUBY.newSymbol("flush"));
+
+    private static final RubySymbol FLUSHES = RubyUtil.RUBY.newSymbol("flushes");
+
+    private static final RubySymbol FLUSHED_EVENTS = RubyUtil.RUBY.newSymbol("flushed_events");
+
+    private static final RubySymbol LAST_FLUSH_INTERVAL_IN_MILLIS =
+        RubyUtil.RUBY.newSymbol("last_flush_interval_in_millis");
+
+    private static final RubySymbol LAST_FLUSH_DURATION_IN_MILLIS =
+        RubyUtil.RUBY.newSymbol("last_flush_duration_in_millis");
+
     private static final RubySymbol PAGE_CAPACITY_IN_BYTES =
         RubyUtil.RUBY.newSymbol("page_capacity_in_bytes");
 
@@ -332,11 +345,33 @@ public class AbstractPipelineExt extends RubyBasicObject {
             );
             dataMetrics.gauge(context, STORAGE_TYPE, context.runtime.newString(fileStore.type()));
             dataMetrics.gauge(context, PATH, dirPath);
+            if (inner.ruby_is_group_commit(context).isTrue()) {
+                final AbstractNamespacedMetricExt flushMetrics =
+                    pipelineMetric.namespace(context, FLUSH_NAMESPACE);
+                flushMetrics.gauge(context, FLUSHES, inner.ruby_flush_count(context));
+                flushMetrics.gauge(context, FLUSHED_EVENTS, inner.ruby_flushed_event_count(context));
+                flushMetrics.gauge(
+                    context, LAST_FLUSH_INTERVAL_IN_MILLIS, inner.ruby_last_flush_interval_in_millis(context)
+                );
+                flushMetrics.gauge(
+                    context, LAST_FLUSH_DURATION_IN_MILLIS, inner.ruby_last_flush_duration_in_millis(context)
+                );
+            }
             pipelineMetric.gauge(context, MetricKeys.EVENTS_KEY, inner.ruby_unread_count(context));
         }
+        collectPluginStats(context);
         return context.nil;
     }
 
+    /**
+     * publish the metrics kept by the plugins themselves, called with the queue stats.
+     *
+     * @param context the thread context
+     */
+    protected void collectPluginStats(final ThreadContext context) {
+        // no plugin keeps its own metrics by default
+    }
+
     @JRubyMethod(name = "input_queue_client")
     public final JRubyAbstractQueueWriteClientExt inputQueueClient() {
         return inputQueueClient;
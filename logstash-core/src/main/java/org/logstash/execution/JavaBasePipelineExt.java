@@ -14,6 +14,8 @@ import org.jruby.runtime.builtin.IRubyObject;
 import org.logstash.RubyUtil;
 import org.logstash.common.IncompleteSourceWithMetadataException;
 import org.logstash.config.ir.CompiledPipeline;
+import org.logstash.config.ir.compiler.AbstractFilterDelegatorExt;
+import org.logstash.config.ir.compiler.JavaFilterDelegatorExt;
 import org.logstash.execution.queue.QueueWriter;
 import org.logstash.ext.JRubyWrappedWriteClientExt;
 import org.logstash.plugins.PluginFactoryExt;
@@ -70,6 +72,18 @@ public final class JavaBasePipelineExt extends AbstractPipelineExt {
         return this;
     }
 
+    @Override
+    protected void collectPluginStats(final ThreadContext context) {
+        if (lirExecution == null) {
+            return;
+        }
+        for (final AbstractFilterDelegatorExt filter : lirExecution.filters()) {
+            if (filter instanceof JavaFilterDelegatorExt) {
+                ((JavaFilterDelegatorExt) filter).collectStats(context);
+            }
+        }
+    }
+
     @JRubyMethod(name = "lir_execution")
     public IRubyObject lirExecution(final ThreadContext context) {
         return JavaUtil.convertJavaToUsableRubyObject(context.runtime, lirExecution);
@@ -1,7 +1,9 @@
 package org.logstash.ext;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.jruby.Ruby;
@@ -63,9 +65,12 @@ public final class JrubyAckedWriteClientExt extends JRubyAbstractQueueWriteClien
     protected JRubyAbstractQueueWriteClientExt doPushBatch(final ThreadContext context,
         final Collection<JrubyEventExtLibrary.RubyEvent> batch) {
         ensureOpen();
+        // the whole batch is serialized then written under a single queue lock acquisition
+        final List<Event> events = new ArrayList<>(batch.size());
         for (final IRubyObject event : batch) {
-            queue.rubyWrite(context, ((JrubyEventExtLibrary.RubyEvent) event).getEvent());
+            events.add(((JrubyEventExtLibrary.RubyEvent) event).getEvent());
         }
+        queue.rubyWriteBatch(context, events);
         return this;
     }
 
@@ -0,0 +1,19 @@
+package org.logstash.instrument.metrics;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Implemented by a Java plugin which keeps its own {@link Metric}s. The pipeline periodically publishes their
+ * current values as gauges under the plugin namespace of the pipeline stats.
+ */
+public interface MetricSource {
+
+    /**
+     * pass each metric of the plugin to the collector.
+     *
+     * @param collector takes the namespace of the metric, relative to the plugin namespace and empty for a metric of
+     * the plugin itself, and the metric
+     */
+    void collectMetrics(BiConsumer<List<String>, Metric<?>> collector);
+}
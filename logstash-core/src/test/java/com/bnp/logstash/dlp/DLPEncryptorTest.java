@@ -0,0 +1,84 @@
+package com.bnp.logstash.dlp;
+
+import co.elastic.logstash.api.Event;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.logstash.plugins.ConfigurationImpl;
+import org.logstash.plugins.ContextImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DLPEncryptorTest {
+
+    private static final String ID = "dlp_encryptor_test_id";
+
+    @Test
+    public void hashesSourceField() {
+        final DLPEncryptor encryptor = encryptor(Collections.emptyMap());
+        final Event event = new org.logstash.Event();
+        event.setField("message", "4970é");
+        encryptor.filter(Collections.singletonList(event), e -> { });
+        Assert.assertEquals(DigestUtils.sha256Hex("4970é"), event.getField("message"));
+    }
+
+    @Test
+    public void hashesEveryConfiguredField() {
+        final DLPEncryptor encryptor = encryptor(Collections.singletonMap(
+            DLPEncryptor.FIELDS_CONFIG.name(), Arrays.asList("[user][name]", "[user][card]", "missing")));
+        final Event event = new org.logstash.Event();
+        event.setField("message", "clear");
+        event.setField("[user][name]", "bob");
+        event.setField("[user][card]", "4970");
+        final List<Event> matched = new ArrayList<>();
+        encryptor.filter(Collections.singletonList(event), matched::add);
+        Assert.assertEquals("clear", event.getField("message"));
+        Assert.assertEquals(DigestUtils.sha256Hex("bob"), event.getField("[user][name]"));
+        Assert.assertEquals(DigestUtils.sha256Hex("4970"), event.getField("[user][card]"));
+        Assert.assertEquals(1, matched.size());
+    }
+
+    @Test
+    public void instancesKeepTheirOwnAlgorithm() {
+        final DLPEncryptor sha1 = encryptor(Collections.singletonMap(DLPEncryptor.HASH_ALGORITHM_CONFIG.name(), "SHA1"));
+        final DLPEncryptor md5 = encryptor(Collections.singletonMap(DLPEncryptor.HASH_ALGORITHM_CONFIG.name(), "MD5"));
+        final Event first = new org.logstash.Event();
+        first.setField("message", "bob");
+        final Event second = new org.logstash.Event();
+        second.setField("message", "bob");
+        sha1.filter(Collections.singletonList(first), e -> { });
+        md5.filter(Collections.singletonList(second), e -> { });
+        Assert.assertEquals(DigestUtils.sha1Hex("bob"), first.getField("message"));
+        Assert.assertEquals(DigestUtils.md5Hex("bob"), second.getField("message"));
+    }
+
+    @Test
+    public void parallelBatchesHashLikeSerialOnes() {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPEncryptor.HASH_ALGORITHM_CONFIG.name(), "SHA512");
+        config.put(DLPEncryptor.PARALLEL_BATCH_SIZE_CONFIG.name(), 16L);
+        final DLPEncryptor encryptor = encryptor(config);
+        final List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final Event event = new org.logstash.Event();
+            event.setField("message", "value-" + i);
+            events.add(event);
+        }
+        final List<Event> matched = new ArrayList<>();
+        encryptor.filter(events, matched::add);
+        for (int i = 0; i < events.size(); i++) {
+            Assert.assertEquals(DigestUtils.sha512Hex("value-" + i), events.get(i).getField("message"));
+        }
+        Assert.assertEquals(events, matched);
+    }
+
+    private static DLPEncryptor encryptor(final Map<String, Object> extraConfig) {
+        final Map<String, Object> rawConfig = new HashMap<>(extraConfig);
+        return new DLPEncryptor(ID, new ConfigurationImpl(rawConfig), new ContextImpl(null));
+    }
+}
@@ -0,0 +1,118 @@
+package com.bnp.logstash.dlp;
+
+import co.elastic.logstash.api.Event;
+import org.junit.Assert;
+import org.junit.Test;
+import org.logstash.plugins.ConfigurationImpl;
+import org.logstash.plugins.ContextImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DLPPatternDetectorTest {
+
+    private static final String ID = "dlp_pattern_detector_test_id";
+
+    @Test
+    public void masksValidatedCandidatesOfBuiltInDetectors() {
+        final DLPPatternDetector detector = detector(Collections.emptyMap());
+        Assert.assertEquals("card=################ iban=###########################, mail <####################>",
+            filter(detector, "card=4111111111111111 iban=FR1420041010050500013M02606, mail <john.doe@example.com>"));
+        Assert.assertEquals("paid with ################### from ###########################",
+            filter(detector, "paid with 4111-1111-1111-1111 from GB82 WEST 1234 5698 7654 32"));
+        Assert.assertEquals(5L, detector.getValuesMasked().getValue().longValue());
+    }
+
+    @Test
+    public void leavesCandidatesFailingTheirChecksum() {
+        final DLPPatternDetector detector = detector(Collections.emptyMap());
+        final String message = "order 4111111111111112 to FR1420041010050500013M02607 at 20240101120000";
+        final List<Event> matched = new ArrayList<>();
+        final Event event = event(message);
+        detector.filter(Collections.singletonList(event), matched::add);
+        Assert.assertEquals(message, event.getField("message"));
+        Assert.assertTrue(matched.isEmpty());
+        Assert.assertEquals(0L, detector.getValuesMasked().getValue().longValue());
+    }
+
+    @Test
+    public void combinesCustomPatternsWithSelectedDetectors() {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPPatternDetector.DETECTORS_CONFIG.name(), Collections.singletonList(PatternTokenScanner.CREDIT_CARD));
+        config.put(DLPPatternDetector.PATTERNS_CONFIG.name(), Collections.singletonMap("employee", "\\bE\\d{6}\\b"));
+        config.put(DLPPatternDetector.MASKING_STRATEGY_CONFIG.name(), TokenMaskers.KEEP_LAST);
+        Assert.assertEquals("###3456 paid by ############1111, john@example.com, XE123456",
+            filter(detector(config), "E123456 paid by 4111111111111111, john@example.com, XE123456"));
+    }
+
+    @Test
+    public void triesCustomPatternsWhereBuiltInCandidatesFailTheirChecksum() {
+        final Map<String, String> custom = new LinkedHashMap<>();
+        custom.put("order", "\\b\\d{16}\\b");
+        custom.put("branch", "\\d{5}M");
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPPatternDetector.PATTERNS_CONFIG.name(), custom);
+        // the same span as a failing card, inside a failing iban
+        Assert.assertEquals("order ################ to FR14200410100505######02607",
+            filter(detector(config), "order 4111111111111112 to FR1420041010050500013M02607"));
+        // a valid card is still reported by the built-in detector first
+        Assert.assertEquals("################",
+            filter(detector(config), "4111111111111111"));
+    }
+
+    @Test
+    public void rejectsNumberedBackReferences() {
+        for (final String pattern : Arrays.asList("(\\w)\\1", "(a)(b)\\2")) {
+            try {
+                new PatternTokenScanner(Collections.singletonMap("repeated", pattern), Collections.emptyMap());
+                Assert.fail("numbered back reference accepted in " + pattern);
+            } catch (IllegalArgumentException expected) {
+                Assert.assertTrue(expected.getMessage().contains("repeated"));
+            }
+        }
+        // escaped backslashes, quoted sections and named back references are accepted
+        new PatternTokenScanner(Collections.singletonMap("literal", "a\\\\1\\Q\\1\\E(?<c>\\w)\\k<c>"), Collections.emptyMap());
+    }
+
+    @Test
+    public void masksEveryConfiguredField() {
+        final DLPPatternDetector detector = detector(Collections.singletonMap(
+            DLPPatternDetector.FIELDS_CONFIG.name(), Arrays.asList("[user][mail]", "[user][card]")));
+        final Event event = event("john@example.com");
+        event.setField("[user][mail]", "john@example.com");
+        event.setField("[user][card]", "4111 1111 1111 1111");
+        detector.filter(Collections.singletonList(event), e -> { });
+        Assert.assertEquals("john@example.com", event.getField("message"));
+        Assert.assertEquals("################", event.getField("[user][mail]"));
+        Assert.assertEquals("###################", event.getField("[user][card]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownValidators() {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPPatternDetector.PATTERNS_CONFIG.name(), Collections.singletonMap("employee", "E\\d{6}"));
+        config.put(DLPPatternDetector.VALIDATORS_CONFIG.name(), Collections.singletonMap("employee", "crc"));
+        detector(config);
+    }
+
+    private static DLPPatternDetector detector(final Map<String, Object> rawConfig) {
+        return new DLPPatternDetector(ID, new ConfigurationImpl(new HashMap<>(rawConfig)), new ContextImpl(null));
+    }
+
+    private static String filter(final DLPPatternDetector detector, final String message) {
+        final Event event = event(message);
+        detector.filter(Collections.singletonList(event), e -> { });
+        return (String) event.getField("message");
+    }
+
+    private static Event event(final String message) {
+        final Event event = new org.logstash.Event();
+        event.setField("message", message);
+        return event;
+    }
+}
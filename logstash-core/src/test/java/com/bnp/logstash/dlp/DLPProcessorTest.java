@@ -0,0 +1,320 @@
+package com.bnp.logstash.dlp;
+
+import co.elastic.logstash.api.Configuration;
+import co.elastic.logstash.api.Event;
+import co.elastic.logstash.api.FilterMatchListener;
+import com.google.common.base.Splitter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.logstash.plugins.ConfigurationImpl;
+import org.logstash.plugins.ContextImpl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class DLPProcessorTest {
+
+    private static final String ID = "dlp_processor_test_id";
+    private static final FilterMatchListener NO_OP_MATCH_LISTENER = e -> { };
+
+    private static final List<String> SENSITIVE = Arrays.asList("brown", "river", "4970é", "a\nb", "😀x");
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void masksSensitiveTokens() throws IOException {
+        final DLPProcessor processor = processor("masks_sensitive_tokens");
+        Assert.assertEquals("The quick ##### fox jump in the #####",
+            filter(processor, "masks_sensitive_tokens", "The quick brown fox jump in the river"));
+    }
+
+    @Test
+    public void outputIsIdenticalToSplitterJoin() throws IOException {
+        final String app = "identical_to_splitter";
+        final DLPProcessor processor = processor(app);
+        final Set<String> referential = SENSITIVE.stream().map(DigestUtils::sha256Hex).collect(Collectors.toSet());
+        for (final String message : Arrays.asList(
+            "", " ", "  brown  ", "\tbrown river\t", "brown  river", "x 4970é y",
+            "a\nb", " a\nb ", "😀x river", "river\r\n", "no sensitive data here", "   ")) {
+            final String expected = String.join(" ", Splitter.on(" ").trimResults().splitToList(message).stream()
+                .map(token -> referential.contains(DigestUtils.sha256Hex(token)) ? token.replaceAll(".", "#") : token)
+                .collect(Collectors.toList()));
+            Assert.assertEquals(expected, filter(processor, app, message));
+        }
+    }
+
+    @Test
+    public void masksEachEventAgainstItsOwnApplicationReferential() throws IOException {
+        final DLPProcessor processor = processor("mixed_first");
+        Files.write(temporaryFolder.getRoot().toPath().resolve("mixed_second.data"),
+            Collections.singletonList(DigestUtils.sha256Hex("fox")), StandardCharsets.ISO_8859_1);
+        final List<Event> events = Arrays.asList(
+            event("mixed_first", "brown fox"), event("mixed_second", "brown fox"),
+            event("mixed_first", "the river"), event(null, "brown fox"), event("missing", "brown fox"));
+        final List<String> matched = new ArrayList<>();
+        processor.filter(events, e -> matched.add((String) e.getField("message")));
+        Assert.assertEquals(
+            Arrays.asList("##### fox", "brown ###", "the #####", "brown fox", "brown fox"),
+            events.stream().map(e -> (String) e.getField("message")).collect(Collectors.toList()));
+        Assert.assertEquals(3, matched.size());
+    }
+
+    @Test
+    public void eventsLeftUnmaskedAreTagged() throws IOException {
+        final DLPProcessor processor = processor("tags_unmasked");
+        final org.logstash.Event numericApp = new org.logstash.Event();
+        numericApp.setField("app", 42L);
+        numericApp.setField("message", "brown fox");
+        final org.logstash.Event noMessage = new org.logstash.Event();
+        final List<Event> events = Arrays.asList(
+            event(null, "brown fox"), numericApp, event("tags_unmasked_missing", "brown fox"),
+            event("tags_unmasked", "brown fox"), noMessage);
+        processor.filter(events, NO_OP_MATCH_LISTENER);
+        Assert.assertEquals(Arrays.asList(true, true, true, false, false), events.stream()
+            .map(e -> e.includes("tags") && ((List<?>) e.getField("tags")).contains("_dlp_unmasked"))
+            .collect(Collectors.toList()));
+        Assert.assertEquals("brown fox", events.get(2).getField("message"));
+        Assert.assertEquals(3L, processor.getEventsUnmasked().getValue().longValue());
+    }
+
+    @Test
+    public void masksWithConfiguredStrategy() throws IOException {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPProcessor.MASKING_STRATEGY_CONFIG.name(), TokenMaskers.KEEP_LAST);
+        config.put(DLPProcessor.MASKING_LENGTH_CONFIG.name(), 2L);
+        final DLPProcessor processor = processor("masking_strategy", config);
+        Assert.assertEquals("The quick ###wn fox jump in the ###er",
+            filter(processor, "masking_strategy", "The quick brown fox jump in the river"));
+    }
+
+    @Test
+    public void delimiterTokenizerMasksInsideStructuredMessages() throws IOException {
+        final DLPProcessor processor = processor("delimiter_tokenizer", Collections.singletonMap(
+            DLPProcessor.TOKENIZER_CONFIG.name(), "delimiters"));
+        Assert.assertEquals("{\"name\": \"#####\",\tplace=#####}  ",
+            filter(processor, "delimiter_tokenizer", "{\"name\": \"brown\",\tplace=river}  "));
+    }
+
+    @Test
+    public void masksEveryConfiguredFieldWithItsOwnStrategy() throws IOException {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPProcessor.FIELDS_CONFIG.name(), Arrays.asList("message", "[user][name]", "[user][id]"));
+        config.put(DLPProcessor.FIELD_MASKING_STRATEGIES_CONFIG.name(),
+            Collections.singletonMap("[user][name]", TokenMaskers.KEEP_LAST + ":1"));
+        final DLPProcessor processor = processor("multi_field", config);
+        final Event event = event("multi_field", "brown fox");
+        event.setField("[user][name]", "river brown");
+        event.setField("[user][id]", 42L);
+        final List<Event> matched = new ArrayList<>();
+        processor.filter(Collections.singletonList(event), matched::add);
+        Assert.assertEquals("##### fox", event.getField("message"));
+        Assert.assertEquals("####r ####n", event.getField("[user][name]"));
+        Assert.assertEquals(42L, event.getField("[user][id]"));
+        Assert.assertEquals(1, matched.size());
+    }
+
+    @Test
+    public void masksWithReferentialProducedByKeyedEncryptor() throws IOException {
+        final String app = "hmac";
+        final Map<String, Object> keyConfig = new HashMap<>();
+        keyConfig.put(DLPProcessor.HASHING_MODE_CONFIG.name(), HashingKey.HMAC);
+        keyConfig.put(DLPProcessor.KEYSTORE_FILE_CONFIG.name(), HashingKeyTest.keystore(temporaryFolder.newFolder().toPath()));
+        final DLPEncryptor encryptor = new DLPEncryptor(ID, new ConfigurationImpl(keyConfig), new ContextImpl(null));
+        final List<Event> values = Arrays.asList(event(app, "brown"), event(app, "river"));
+        encryptor.filter(values, NO_OP_MATCH_LISTENER);
+        Files.write(temporaryFolder.getRoot().toPath().resolve(app + ".data"),
+            values.stream().map(e -> (String) e.getField("message")).collect(Collectors.toList()), StandardCharsets.ISO_8859_1);
+        final Map<String, Object> rawConfig = new HashMap<>(keyConfig);
+        rawConfig.put(DLPProcessor.HASH_REFERENCE_PATH_CONFIG.name(), temporaryFolder.getRoot().getAbsolutePath() + "/");
+        rawConfig.put(DLPProcessor.APPLICATION_CODE_FIELD_CONFIG.name(), "app");
+        final DLPProcessor processor = new DLPProcessor(ID, new ConfigurationImpl(rawConfig), new ContextImpl(null));
+        Assert.assertEquals("The quick ##### fox jump in the #####",
+            filter(processor, app, "The quick brown fox jump in the river"));
+    }
+
+    @Test
+    public void tokensOutsideReferentialShapeAreNotHashed() throws IOException {
+        final String app = "token_shape";
+        final Path values = temporaryFolder.newFile("token_shape.values").toPath();
+        Files.write(values, Arrays.asList("brown", "river"), StandardCharsets.UTF_8);
+        final DLPProcessor processor = processor(app, pruningConfig());
+        TokenShape.convert(values, temporaryFolder.getRoot().toPath().resolve(app + TokenShape.STATS_EXTENSION));
+        ReferentialHash.getInstance().getReferentialHash(temporaryFolder.getRoot().getAbsolutePath() + "/", app).refresh();
+        Assert.assertEquals("The quick ##### fox jump in the #####",
+            filter(processor, app, "The quick brown fox jump in the river"));
+        // only quick, brown and river have five lowercase letters
+        Assert.assertEquals(5L, processor.getTokensPruned().getValue().longValue());
+    }
+
+    @Test
+    public void tokenShapeOlderThanReferentialIsIgnored() throws IOException {
+        final String app = "stale_token_shape";
+        final Path values = temporaryFolder.newFile("stale_token_shape.values").toPath();
+        Files.write(values, Arrays.asList("brown", "river"), StandardCharsets.UTF_8);
+        final Path stats = temporaryFolder.getRoot().toPath().resolve(app + TokenShape.STATS_EXTENSION);
+        TokenShape.convert(values, stats);
+        final DLPProcessor processor = processor(app, pruningConfig());
+        Files.setLastModifiedTime(stats, FileTime.fromMillis(System.currentTimeMillis() - 60_000L));
+        final Path data = temporaryFolder.getRoot().toPath().resolve(app + ".data");
+        Files.write(data, Collections.singletonList(DigestUtils.sha256Hex("Fox42")), StandardCharsets.ISO_8859_1,
+            StandardOpenOption.APPEND);
+        final Referential referential = ReferentialHash.getInstance()
+            .getReferentialHash(temporaryFolder.getRoot().getAbsolutePath() + "/", app);
+        referential.refresh();
+        Assert.assertNull(referential.getTokenShape());
+        // the appended value does not have the shape of the stats, it is still masked
+        Assert.assertEquals("##### #####", filter(processor, app, "brown Fox42"));
+        Assert.assertEquals(0L, processor.getTokensPruned().getValue().longValue());
+    }
+
+    @Test
+    public void substringTokenizerMasksEmbeddedValues() throws IOException {
+        final String app = "substring";
+        final Path values = temporaryFolder.newFile("substring.values").toPath();
+        Files.write(values, SENSITIVE, StandardCharsets.UTF_8);
+        final DLPProcessor processor = processor(app, Collections.singletonMap(
+            DLPProcessor.TOKENIZER_CONFIG.name(), "substring"));
+        // without token shape values are only found between delimiters
+        Assert.assertEquals("GET /u/brown?q=##### k=4970é1",
+            filter(processor, app, "GET /u/brown?q=river k=4970é1"));
+        TokenShape.convert(values, temporaryFolder.getRoot().toPath().resolve(app + TokenShape.STATS_EXTENSION));
+        ReferentialHash.getInstance().getReferentialHash(temporaryFolder.getRoot().getAbsolutePath() + "/", app).refresh();
+        Assert.assertEquals("GET /u/#####?q=##### k=#####1",
+            filter(processor, app, "GET /u/brown?q=river k=4970é1"));
+    }
+
+    @Test
+    public void substringTokenizerKeepsLengthRangeOfStaleTokenShape() throws IOException {
+        final String app = "stale_substring";
+        final Path values = temporaryFolder.newFile("stale_substring.values").toPath();
+        Files.write(values, Arrays.asList("brown", "river"), StandardCharsets.UTF_8);
+        final Path stats = temporaryFolder.getRoot().toPath().resolve(app + TokenShape.STATS_EXTENSION);
+        TokenShape.convert(values, stats);
+        final DLPProcessor processor = processor(app, Collections.singletonMap(
+            DLPProcessor.TOKENIZER_CONFIG.name(), "substring"));
+        Files.setLastModifiedTime(stats, FileTime.fromMillis(System.currentTimeMillis() - 60_000L));
+        Files.write(temporaryFolder.getRoot().toPath().resolve(app + ".data"),
+            Collections.singletonList(DigestUtils.sha256Hex("Fox42")), StandardCharsets.ISO_8859_1,
+            StandardOpenOption.APPEND);
+        ReferentialHash.getInstance().getReferentialHash(temporaryFolder.getRoot().getAbsolutePath() + "/", app).refresh();
+        Assert.assertEquals("GET /u/#####?q=#####&k=#####",
+            filter(processor, app, "GET /u/brown?q=Fox42&k=river"));
+    }
+
+    @Test
+    public void substringTokenizerFindsValuesOfNewLengthsAsWholeTokens() throws IOException {
+        final String app = "stale_substring_length";
+        final Path values = temporaryFolder.newFile("stale_substring_length.values").toPath();
+        Files.write(values, Arrays.asList("brown", "river"), StandardCharsets.UTF_8);
+        final Path stats = temporaryFolder.getRoot().toPath().resolve(app + TokenShape.STATS_EXTENSION);
+        TokenShape.convert(values, stats);
+        final DLPProcessor processor = processor(app, Collections.singletonMap(
+            DLPProcessor.TOKENIZER_CONFIG.name(), "substring"));
+        Files.setLastModifiedTime(stats, FileTime.fromMillis(System.currentTimeMillis() - 60_000L));
+        Files.write(temporaryFolder.getRoot().toPath().resolve(app + ".data"),
+            Collections.singletonList(DigestUtils.sha256Hex("kingfisher")), StandardCharsets.ISO_8859_1,
+            StandardOpenOption.APPEND);
+        final Referential referential = ReferentialHash.getInstance()
+            .getReferentialHash(temporaryFolder.getRoot().getAbsolutePath() + "/", app);
+        referential.refresh();
+        Assert.assertTrue(referential.getTokenShapeStale().getValue());
+        // windows keep the lengths of the stale shape, the new value is only found between delimiters
+        Assert.assertEquals("user=########## q=x#####x k=xkingfisherx",
+            filter(processor, app, "user=kingfisher q=xbrownx k=xkingfisherx"));
+        TokenShape.convert(values, stats);
+        referential.refresh();
+        Assert.assertFalse(referential.getTokenShapeStale().getValue());
+    }
+
+    @Test
+    public void tokenCacheIsInvalidatedWhenReferentialChanges() throws IOException {
+        final String app = "token_cache";
+        final DLPProcessor processor = processor(app);
+        Assert.assertEquals("##### fox", filter(processor, app, "brown fox"));
+        Assert.assertEquals("##### fox", filter(processor, app, "brown fox"));
+        Assert.assertEquals(1L, processor.getTokenCacheHits().getValue().longValue());
+        Assert.assertEquals(3L, processor.getTokenCacheMisses().getValue().longValue());
+        Files.write(temporaryFolder.getRoot().toPath().resolve(app + ".data"),
+            Collections.singletonList(DigestUtils.sha256Hex("fox")), StandardCharsets.ISO_8859_1,
+            StandardOpenOption.APPEND);
+        ReferentialHash.getInstance().getReferentialHash(temporaryFolder.getRoot().getAbsolutePath() + "/", app).refresh();
+        Assert.assertEquals("##### ###", filter(processor, app, "brown fox"));
+        Assert.assertEquals(1L, processor.getTokenCacheHits().getValue().longValue());
+    }
+
+    @Test
+    public void tokenCacheCanBeDisabled() throws IOException {
+        final String app = "token_cache_disabled";
+        final DLPProcessor processor = processor(app, Collections.singletonMap(
+            DLPProcessor.TOKEN_CACHE_SIZE_CONFIG.name(), 0L));
+        Assert.assertEquals("##### fox", filter(processor, app, "brown fox"));
+        Assert.assertEquals("##### fox", filter(processor, app, "brown fox"));
+        Assert.assertEquals(0L, processor.getTokenCacheHits().getValue() + processor.getTokenCacheMisses().getValue().longValue());
+    }
+
+    @Test
+    public void collectsFilterAndReferentialMetrics() throws IOException {
+        final String app = "collects_metrics";
+        final DLPProcessor processor = processor(app);
+        filter(processor, app, "brown fox");
+        final Map<String, Object> metrics = new HashMap<>();
+        processor.collectMetrics((namespace, metric) ->
+            metrics.put(String.join("/", namespace) + (namespace.isEmpty() ? "" : "/") + metric.getName(), metric.getValue()));
+        Assert.assertEquals(2L, metrics.get("token_cache_misses"));
+        Assert.assertEquals(0L, metrics.get("events_unmasked"));
+        Assert.assertEquals((long) SENSITIVE.size(), ((Number) metrics.get("referentials/" + app + "/size")).longValue());
+        Assert.assertTrue(metrics.containsKey("referentials/" + app + "/reloads"));
+    }
+
+    private static Map<String, Object> pruningConfig() {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DLPProcessor.PRUNE_TOKENS_CONFIG.name(), true);
+        config.put(DLPProcessor.TOKEN_CACHE_SIZE_CONFIG.name(), 0L);
+        return config;
+    }
+
+    private DLPProcessor processor(final String app) throws IOException {
+        return processor(app, Collections.emptyMap());
+    }
+
+    private DLPProcessor processor(final String app, final Map<String, Object> extraConfig) throws IOException {
+        Files.write(temporaryFolder.getRoot().toPath().resolve(app + ".data"),
+            SENSITIVE.stream().map(DigestUtils::sha256Hex).collect(Collectors.toList()), StandardCharsets.ISO_8859_1);
+        final Map<String, Object> rawConfig = new HashMap<>();
+        rawConfig.put(DLPProcessor.HASH_REFERENCE_PATH_CONFIG.name(), temporaryFolder.getRoot().getAbsolutePath() + "/");
+        rawConfig.put(DLPProcessor.APPLICATION_CODE_FIELD_CONFIG.name(), "app");
+        rawConfig.putAll(extraConfig);
+        final Configuration config = new ConfigurationImpl(rawConfig);
+        return new DLPProcessor(ID, config, new ContextImpl(null));
+    }
+
+    private static String filter(final DLPProcessor processor, final String app, final String message) {
+        final Event filtered = processor.filter(Collections.singletonList(event(app, message)), NO_OP_MATCH_LISTENER).iterator().next();
+        return (String) filtered.getField("message");
+    }
+
+    private static Event event(final String app, final String message) {
+        final org.logstash.Event e = new org.logstash.Event();
+        if (app != null) {
+            e.setField("app", app);
+        }
+        e.setField("message", message);
+        return e;
+    }
+}
@@ -0,0 +1,55 @@
+package com.bnp.logstash.dlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public final class DelimiterTokenScannerTest {
+
+    private static final TokenScanner SCANNER = new DelimiterTokenScanner(DelimiterTokenScanner.DEFAULT_DELIMITERS);
+
+    @Test
+    public void masksTokensNextToDelimiters() {
+        assertThat(scan("{\"card\":\"4970\",user=bob;\tid='bob'}", "4970", "bob"),
+            is("{\"card\":\"####\",user=###;\tid='###'}"));
+    }
+
+    @Test
+    public void preservesMessageOutsideMaskedTokens() {
+        for (final String message : Arrays.asList("", " ", "  a  b\t\tc \r\n", "[x](y)", "a　b", "a,,b")) {
+            assertThat(scan(message), is(message));
+        }
+    }
+
+    @Test
+    public void asksMatcherOnceForEveryNonEmptyToken() {
+        final List<String> tokens = new ArrayList<>();
+        SCANNER.scan(" a=b,, c d ", (message, start, end) -> {
+            tokens.add(message.subSequence(start, end).toString());
+            return false;
+        }, TokenMaskers.FULL_MASKER, new StringBuilder());
+        assertThat(tokens, is(Arrays.asList("a", "b", "c", "d")));
+    }
+
+    @Test
+    public void onlyConfiguredDelimitersAndWhitespaceSplit() {
+        final TokenScanner scanner = new DelimiterTokenScanner("=");
+        final StringBuilder out = new StringBuilder();
+        scanner.scan("k=v,w x", (message, start, end) -> "v,w".contentEquals(message.subSequence(start, end)),
+            TokenMaskers.FULL_MASKER, out);
+        assertThat(out.toString(), is("k=### x"));
+    }
+
+    private static String scan(final String message, final String... sensitive) {
+        final List<String> values = Arrays.asList(sensitive);
+        final StringBuilder out = new StringBuilder();
+        SCANNER.scan(message, (m, start, end) -> values.contains(m.subSequence(start, end).toString()),
+            TokenMaskers.FULL_MASKER, out);
+        return out.toString();
+    }
+}
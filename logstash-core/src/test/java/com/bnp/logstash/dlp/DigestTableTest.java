@@ -0,0 +1,136 @@
+package com.bnp.logstash.dlp;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DigestTableTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void addAndContains() {
+        final DigestTable table = DigestTable.allocate(32, 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(table.add(DigestUtils.sha256("value" + i)), is(true));
+        }
+        assertThat(table.add(DigestUtils.sha256("value1")), is(false));
+        assertThat(table.size(), is(1000));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(table.contains(DigestUtils.sha256("value" + i)), is(true));
+        }
+        assertThat(table.contains(DigestUtils.sha256("missing")), is(false));
+        assertThat(table.contains(DigestUtils.sha1("value1")), is(false));
+    }
+
+    @Test
+    public void zeroDigest() {
+        final DigestTable table = DigestTable.allocate(16, 10);
+        assertThat(table.contains(new byte[16]), is(false));
+        assertThat(table.add(new byte[16]), is(true));
+        assertThat(table.contains(new byte[16]), is(true));
+        assertThat(table.size(), is(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addBeyondCapacityThrows() {
+        final DigestTable table = DigestTable.allocate(20, 10);
+        for (int i = 0; i <= table.capacity(); i++) {
+            table.add(DigestUtils.sha1(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void convertTextReferentialToMappedIndex() throws IOException {
+        final Path data = temporaryFolder.newFile("app.data").toPath();
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            lines.add(DigestUtils.sha256Hex("value" + i));
+        }
+        lines.addAll(Arrays.asList("", DigestUtils.sha256Hex("value1"), "not a digest", DigestUtils.sha256Hex("crlf") + "\r"));
+        Files.write(data, lines, StandardCharsets.ISO_8859_1);
+
+        final Path index = ReferentialConverter.indexPathFor(data);
+        assertThat(index.getFileName().toString(), is("app" + ReferentialConverter.INDEX_EXTENSION));
+        ReferentialConverter.convert(data, index);
+
+        final DigestTable mapped = DigestTable.open(index);
+        assertThat(mapped.size(), is(5001));
+        assertThat(mapped.digestLength(), is(32));
+        for (int i = 0; i < 5000; i++) {
+            assertThat(mapped.contains(DigestUtils.sha256("value" + i)), is(true));
+        }
+        assertThat(mapped.contains(DigestUtils.sha256("crlf")), is(true));
+        assertThat(mapped.contains(DigestUtils.sha256("missing")), is(false));
+    }
+
+    @Test
+    public void writeReplacesMappedTableAtomically() throws IOException {
+        final Path index = temporaryFolder.getRoot().toPath().resolve("app" + ReferentialConverter.INDEX_EXTENSION);
+        final DigestTable first = DigestTable.allocate(32, 100);
+        first.add(DigestUtils.sha256("first"));
+        first.write(index);
+        final DigestTable mapped = DigestTable.open(index);
+
+        final DigestTable second = DigestTable.allocate(32, 10);
+        second.add(DigestUtils.sha256("second"));
+        second.write(index);
+
+        // the mapped table still reads the file it was opened from
+        assertThat(mapped.contains(DigestUtils.sha256("first")), is(true));
+        assertThat(DigestTable.open(index).contains(DigestUtils.sha256("second")), is(true));
+        assertThat(Files.exists(index.resolveSibling(index.getFileName() + ".tmp")), is(false));
+    }
+
+    @Test(expected = IOException.class)
+    public void openRejectsOverloadedTable() throws IOException {
+        final Path index = writeTable(16);
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            // size at offset 12 equal to the capacity, no empty slot left
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 16), 12L);
+        }
+        DigestTable.open(index);
+    }
+
+    @Test(expected = IOException.class)
+    public void openRejectsNonPowerOfTwoCapacity() throws IOException {
+        final Path index = writeTable(16);
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            // capacity at offset 8
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 15), 8L);
+        }
+        DigestTable.open(index);
+    }
+
+    private Path writeTable(final int capacity) throws IOException {
+        final DigestTable table = DigestTable.allocate(32, 1);
+        assertThat(table.capacity(), is(capacity));
+        table.add(DigestUtils.sha256("value"));
+        final Path index = temporaryFolder.getRoot().toPath().resolve("app" + ReferentialConverter.INDEX_EXTENSION);
+        table.write(index);
+        return index;
+    }
+
+    @Test(expected = IOException.class)
+    public void openRejectsForeignFile() throws IOException {
+        final Path file = temporaryFolder.newFile("app.hidx").toPath();
+        Files.write(file, new byte[DigestTable.HEADER_SIZE + 64]);
+        DigestTable.open(file);
+    }
+}
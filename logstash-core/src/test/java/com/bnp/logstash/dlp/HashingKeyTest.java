@@ -0,0 +1,74 @@
+package com.bnp.logstash.dlp;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.HmacAlgorithms;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.logstash.secret.SecretIdentifier;
+import org.logstash.secret.store.SecretStoreFactory;
+import org.logstash.secret.store.SecureConfig;
+import org.logstash.secret.store.backend.JavaKeyStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HashingKeyTest {
+
+    private static final String KEY_ID = "dlp.hashing.key";
+    private static final String SECRET = "s3cr3t-k3y";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void hmacDigestsMatchHmacUtils() throws IOException {
+        final HashingKey key = HashingKey.load(HashingKey.HMAC, TokenDigester.SHA256, keystore(), KEY_ID,
+            SecretStoreFactory.withEnvironment(Collections.emptyMap()));
+        final TokenDigester first = new TokenDigester(TokenDigester.SHA256, key);
+        final TokenDigester second = new TokenDigester(TokenDigester.SHA256, key);
+        final HmacUtils hmac = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, SECRET);
+        for (final String value : new String[]{"", "4970é", "😀x"}) {
+            assertEquals(hmac.hmacHex(value), first.hexDigest(value));
+            assertEquals(hmac.hmacHex(value), second.hexDigest(value));
+        }
+        assertEquals(32, first.digestLength());
+    }
+
+    @Test
+    public void saltedDigestsPrependTheKey() {
+        final TokenDigester digester = new TokenDigester(TokenDigester.SHA1,
+            HashingKey.of(HashingKey.SALTED, TokenDigester.SHA1, SECRET.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(DigestUtils.sha1Hex("s3cr3t-k3ybrown"), digester.hexDigest("brown"));
+    }
+
+    @Test
+    public void plainModeNeedsNoKey() {
+        assertNull(HashingKey.load(HashingKey.PLAIN, TokenDigester.SHA256, "", KEY_ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingKeyIsRejected() throws IOException {
+        HashingKey.load(HashingKey.HMAC, TokenDigester.SHA256, keystore(), "unknown.key",
+            SecretStoreFactory.withEnvironment(Collections.emptyMap()));
+    }
+
+    private String keystore() throws IOException {
+        return keystore(temporaryFolder.newFolder().toPath());
+    }
+
+    static String keystore(final Path folder) {
+        final String file = folder.resolve("logstash.keystore").toString();
+        final SecureConfig secureConfig = new SecureConfig();
+        secureConfig.add("keystore.file", file.toCharArray());
+        // the keystore wipes the secret it is given
+        new JavaKeyStore().create(secureConfig).persistSecret(new SecretIdentifier(KEY_ID), SECRET.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,45 @@
+package com.bnp.logstash.dlp;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public final class PatternValidatorsTest {
+
+    @Test
+    public void luhnAcceptsOnlyValidCardNumbers() {
+        for (final String card : Arrays.asList("4111111111111111", "4111-1111-1111-1111", "5500 0000 0000 0004",
+            "378282246310005", "6011111111111117")) {
+            assertThat(card, validates(PatternValidators.LUHN_VALIDATOR, card), is(true));
+        }
+        for (final String card : Arrays.asList("4111111111111112", "411111111111", "0000000000000000000000",
+            "4111x11111111111")) {
+            assertThat(card, validates(PatternValidators.LUHN_VALIDATOR, card), is(false));
+        }
+    }
+
+    @Test
+    public void mod97AcceptsOnlyValidIbans() {
+        for (final String iban : Arrays.asList("FR1420041010050500013M02606", "GB82 WEST 1234 5698 7654 32",
+            "DE89370400440532013000", "de89370400440532013000")) {
+            assertThat(iban, validates(PatternValidators.MOD_97_VALIDATOR, iban), is(true));
+        }
+        for (final String iban : Arrays.asList("FR1420041010050500013M02607", "GB82", "DE8937040044053201300!",
+            "DE00370400440532013000")) {
+            assertThat(iban, validates(PatternValidators.MOD_97_VALIDATOR, iban), is(false));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownValidator() {
+        PatternValidators.of("crc32");
+    }
+
+    private static boolean validates(final TokenMatcher validator, final String value) {
+        final String message = "[" + value + "]";
+        return validator.matches(message, 1, message.length() - 1);
+    }
+}
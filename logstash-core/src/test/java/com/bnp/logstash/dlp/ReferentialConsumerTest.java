@@ -0,0 +1,107 @@
+package com.bnp.logstash.dlp;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ReferentialConsumerTest {
+
+    private static final String TOPIC = "wm_hashed_data";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void appendsConsumedHashesAndRefreshesReferential() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("app.data");
+        Files.write(file, Collections.singletonList(DigestUtils.sha256Hex("brown")), StandardCharsets.ISO_8859_1);
+        final String hashPath = temporaryFolder.getRoot().getAbsolutePath() + "/";
+        final Referential referential = ReferentialHash.getInstance().getReferentialHash(hashPath, "app");
+
+        final MockConsumer<String, String> kafka = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafka.schedulePollTask(() -> {
+            kafka.rebalance(Collections.singletonList(PARTITION));
+            kafka.updateBeginningOffsets(Collections.singletonMap(PARTITION, 0L));
+            kafka.addRecord(record(0L, "{\"app_id\": \"app\", \"iban\": \"" + DigestUtils.sha256Hex("fox") + "\"}"));
+            kafka.addRecord(record(1L, "not json"));
+            kafka.addRecord(record(2L, "{\"app_id\": \"app\", \"name\": \"" + DigestUtils.sha256Hex("brown") + "\", \"card\": \""
+                + DigestUtils.sha256Hex("river") + "\"}"));
+        });
+
+        final ConsumerSettings settings = new ConsumerSettings("mock:9092", TOPIC, "test", file.toString());
+        final ReferentialConsumer consumer = ReferentialConsumer.ensureRunning(settings, s -> kafka);
+        try {
+            waitFor(() -> referential.contains(DigestUtils.sha256("river")));
+            assertThat(referential.contains(DigestUtils.sha256("fox")), is(true));
+            final List<String> lines = Files.readAllLines(file, StandardCharsets.ISO_8859_1);
+            assertThat(lines, is(Arrays.asList(
+                DigestUtils.sha256Hex("brown"), DigestUtils.sha256Hex("fox"), DigestUtils.sha256Hex("river"))));
+            waitFor(() -> {
+                final OffsetAndMetadata committed = kafka.committed(PARTITION);
+                return committed != null && committed.offset() == 3L;
+            });
+            assertThat(consumer.getConsumedRecords().getValue(), is(3L));
+            assertThat(consumer.getAppendedHashes().getValue(), is(2L));
+            assertThat(ReferentialConsumer.ensureRunning(settings, s -> {
+                throw new AssertionError("consumer must be reused");
+            }), is(consumer));
+        } finally {
+            consumer.close();
+        }
+        assertThat(kafka.closed(), is(true));
+    }
+
+    @Test
+    public void leavesUnloadedReferentialToTheFilters() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("unloaded.data");
+        final String hashPath = temporaryFolder.getRoot().getAbsolutePath() + "/";
+        final MockConsumer<String, String> kafka = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafka.schedulePollTask(() -> {
+            kafka.rebalance(Collections.singletonList(PARTITION));
+            kafka.updateBeginningOffsets(Collections.singletonMap(PARTITION, 0L));
+            kafka.addRecord(record(0L, "{\"app_id\": \"unloaded\", \"iban\": \"" + DigestUtils.sha256Hex("fox") + "\"}"));
+        });
+        final ReferentialConsumer consumer = ReferentialConsumer.ensureRunning(
+            new ConsumerSettings("mock:9092", TOPIC, "test", file.toString()), s -> kafka);
+        try {
+            waitFor(() -> consumer.getAppendedHashes().getValue() == 1L);
+            assertThat(Files.readAllLines(file, StandardCharsets.ISO_8859_1),
+                is(Collections.singletonList(DigestUtils.sha256Hex("fox"))));
+            assertThat(ReferentialHash.getInstance().getLoadedReferentialHash(hashPath, "unloaded"), nullValue());
+        } finally {
+            consumer.close();
+        }
+    }
+
+    private static ConsumerRecord<String, String> record(final long offset, final String value) {
+        return new ConsumerRecord<>(TOPIC, 0, offset, null, value);
+    }
+
+    private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(20L);
+        }
+        assertThat(condition.getAsBoolean(), is(true));
+    }
+}
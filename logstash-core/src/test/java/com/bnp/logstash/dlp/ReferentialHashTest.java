@@ -0,0 +1,91 @@
+package com.bnp.logstash.dlp;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ReferentialHashTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void concurrentLookupsLoadEachReferentialOnce() throws Exception {
+        final String hashPath = temporaryFolder.getRoot().getAbsolutePath() + "/";
+        final List<String> apps = Arrays.asList("app1", "app2", "app3");
+        for (final String app : apps) {
+            Files.write(temporaryFolder.getRoot().toPath().resolve(app + ReferentialConverter.DATA_EXTENSION),
+                Collections.singletonList(DigestUtils.sha256Hex(app)), StandardCharsets.ISO_8859_1);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            final List<Callable<Referential>> lookups = new ArrayList<>();
+            for (int i = 0; i < 48; i++) {
+                final String app = apps.get(i % apps.size());
+                lookups.add(() -> ReferentialHash.getInstance().getReferentialHash(hashPath, app));
+            }
+            final List<Future<Referential>> results = executor.invokeAll(lookups);
+            for (int i = 0; i < results.size(); i++) {
+                final Referential referential = results.get(i).get();
+                assertThat(referential, notNullValue());
+                assertThat(referential, sameInstance(results.get(i % apps.size()).get()));
+                assertThat(referential.getReloads().getValue(), is(1L));
+                assertThat(referential.contains(DigestUtils.sha256(apps.get(i % apps.size()))), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sameApplicationCodeInDifferentPathsAreDistinct() throws IOException {
+        final String first = temporaryFolder.newFolder("first").getAbsolutePath() + "/";
+        final String second = temporaryFolder.newFolder("second").getAbsolutePath() + "/";
+        Files.write(temporaryFolder.getRoot().toPath().resolve("first/app.data"),
+            Collections.singletonList(DigestUtils.sha256Hex("brown")), StandardCharsets.ISO_8859_1);
+        Files.write(temporaryFolder.getRoot().toPath().resolve("second/app.data"),
+            Collections.singletonList(DigestUtils.sha256Hex("river")), StandardCharsets.ISO_8859_1);
+        ReferentialHash.getInstance().preload(first, Collections.singletonList("app"));
+        assertThat(ReferentialHash.getInstance().getReferentialHash(first, "app").contains(DigestUtils.sha256("brown")), is(true));
+        assertThat(ReferentialHash.getInstance().getReferentialHash(second, "app").contains(DigestUtils.sha256("brown")), is(false));
+    }
+
+    @Test
+    public void loadedLookupNeverLoads() throws IOException {
+        final String hashPath = temporaryFolder.getRoot().getAbsolutePath() + "/";
+        Files.write(temporaryFolder.getRoot().toPath().resolve("lazy.data"),
+            Collections.singletonList(DigestUtils.sha256Hex("brown")), StandardCharsets.ISO_8859_1);
+        assertThat(ReferentialHash.getInstance().getLoadedReferentialHash(hashPath, "lazy"), nullValue());
+        assertThat(ReferentialHash.getInstance().getLoadedReferentialHash(hashPath, "lazy"), nullValue());
+        final Referential referential = ReferentialHash.getInstance().getReferentialHash(hashPath, "lazy");
+        assertThat(ReferentialHash.getInstance().getLoadedReferentialHash(hashPath, "lazy"), sameInstance(referential));
+    }
+
+    @Test
+    public void failedLoadIsRetried() throws IOException {
+        final String hashPath = temporaryFolder.getRoot().getAbsolutePath() + "/";
+        assertThat(ReferentialHash.getInstance().getReferentialHash(hashPath, "late"), nullValue());
+        Files.write(temporaryFolder.getRoot().toPath().resolve("late.data"),
+            Collections.singletonList(DigestUtils.sha256Hex("brown")), StandardCharsets.ISO_8859_1);
+        assertThat(ReferentialHash.getInstance().getReferentialHash(hashPath, "late").contains(DigestUtils.sha256("brown")), is(true));
+    }
+}
@@ -0,0 +1,68 @@
+package com.bnp.logstash.dlp;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.logstash.instrument.metrics.gauge.NumberGauge;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public final class ReferentialLoaderTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parsesRangesSplitOnLineBoundaries() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        final Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 2000; i++) {
+            final String hex = DigestUtils.sha256Hex("value-" + i);
+            expected.add(hex);
+            text.append(i % 3 == 0 ? "  " + hex + "\r\n" : hex + "\n");
+            if (i % 100 == 0) {
+                text.append("\n").append("not-a-digest\n").append(hex).append('\n');
+            }
+        }
+        text.append(DigestUtils.sha256Hex("last"));
+        expected.add(DigestUtils.sha256Hex("last"));
+        final Path source = temporaryFolder.newFile("loader.data").toPath();
+        Files.write(source, text.toString().getBytes(StandardCharsets.ISO_8859_1));
+        final NumberGauge progress = new NumberGauge("progress", 0L);
+        final ShardedDigestTable table = ReferentialLoader.load(source, 100L, progress);
+        assertThat(table.size(), is(expected.size()));
+        for (final String hex : expected) {
+            assertThat(hex, table.contains(digest(hex)), is(true));
+        }
+        assertThat(table.contains(digest(DigestUtils.sha256Hex("value-2000"))), is(false));
+        assertThat(progress.getValue().longValue(), is(100L));
+        final DigestTable single = table.toTable();
+        assertThat(single.size(), is(expected.size()));
+        for (final String hex : expected) {
+            assertThat(single.contains(digest(hex)), is(true));
+        }
+    }
+
+    @Test
+    public void loadsEmptyFiles() throws IOException {
+        final Path source = temporaryFolder.newFile("empty.data").toPath();
+        final ShardedDigestTable table = ReferentialLoader.load(source, null);
+        assertThat(table.size(), is(0));
+        assertThat(table.digestLength(), is(32));
+    }
+
+    private static byte[] digest(final String hex) {
+        final byte[] digest = new byte[hex.length() / 2];
+        assertThat(ReferentialConverter.decodeHex(hex, digest), is(true));
+        return digest;
+    }
+}
@@ -0,0 +1,159 @@
+package com.bnp.logstash.dlp;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ReferentialTest {
+
+    private static final String APP = "app";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String hashPath;
+    private Path data;
+
+    @Before
+    public void setUp() throws IOException {
+        hashPath = temporaryFolder.getRoot().getAbsolutePath() + "/";
+        data = temporaryFolder.getRoot().toPath().resolve(APP + ReferentialConverter.DATA_EXTENSION);
+        Files.write(data, Arrays.asList(DigestUtils.sha256Hex("brown"), DigestUtils.sha256Hex("river")), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void appendsAreAppliedIncrementally() throws IOException {
+        final Referential referential = Referential.load(hashPath, APP);
+        final long generation = referential.generation();
+        assertThat(referential.size(), is(2));
+        assertThat(referential.contains(DigestUtils.sha256("fox")), is(false));
+
+        append(DigestUtils.sha256Hex("fox") + "\n" + DigestUtils.sha256Hex("brown") + "\n" + DigestUtils.sha256Hex("dog").substring(0, 10));
+        referential.refresh();
+        assertThat(referential.contains(DigestUtils.sha256("fox")), is(true));
+        assertThat(referential.contains(DigestUtils.sha256("brown")), is(true));
+        assertThat(referential.size(), is(3));
+        assertThat(referential.getReloads().getValue(), is(1L));
+        assertThat(referential.getAppends().getValue(), is(1L));
+        assertThat(referential.generation() > generation, is(true));
+
+        // the incomplete line is picked up once the writer terminates it
+        append(DigestUtils.sha256Hex("dog").substring(10) + "\n");
+        referential.refresh();
+        assertThat(referential.contains(DigestUtils.sha256("dog")), is(true));
+        assertThat(referential.getReloads().getValue(), is(1L));
+        assertThat(referential.getSize().getValue(), is(4));
+    }
+
+    @Test
+    public void rewrittenFileIsFullyReloaded() throws IOException {
+        final Referential referential = Referential.load(hashPath, APP);
+        Files.write(data, Collections.singletonList(DigestUtils.sha256Hex("fox")), StandardCharsets.ISO_8859_1);
+        referential.refresh();
+        assertThat(referential.contains(DigestUtils.sha256("fox")), is(true));
+        assertThat(referential.contains(DigestUtils.sha256("brown")), is(false));
+        assertThat(referential.getReloads().getValue(), is(2L));
+    }
+
+    @Test
+    public void newIndexIsMapped() throws IOException {
+        final Referential referential = Referential.load(hashPath, APP);
+        append(DigestUtils.sha256Hex("fox") + "\n");
+        final Path index = ReferentialConverter.indexPathFor(data);
+        ReferentialConverter.convert(data, index);
+        Files.setLastModifiedTime(index, Files.getLastModifiedTime(data));
+        referential.refresh();
+        assertThat(referential.contains(DigestUtils.sha256("fox")), is(true));
+        assertThat(referential.getReloads().getValue(), is(2L));
+    }
+
+    @Test
+    public void snapshotIsMappedWhileTextFileIsUnchanged() throws IOException {
+        Referential.load(hashPath, APP);
+        final Path snapshot = data.resolveSibling(APP + ReferentialSnapshot.SNAPSHOT_EXTENSION);
+        assertThat(Files.exists(snapshot), is(true));
+        // same size and mtime, different content: only the snapshot can still know brown
+        final FileTime modified = Files.getLastModifiedTime(data);
+        Files.write(data, Arrays.asList(DigestUtils.sha256Hex("fox"), DigestUtils.sha256Hex("dog")), StandardCharsets.ISO_8859_1);
+        Files.setLastModifiedTime(data, modified);
+        final Referential mapped = Referential.load(hashPath, APP);
+        assertThat(mapped.contains(DigestUtils.sha256("brown")), is(true));
+        assertThat(mapped.contains(DigestUtils.sha256("fox")), is(false));
+    }
+
+    @Test
+    public void staleSnapshotIsRebuiltFromTextFile() throws IOException {
+        Referential.load(hashPath, APP);
+        append(DigestUtils.sha256Hex("fox") + "\n");
+        final Referential reloaded = Referential.load(hashPath, APP);
+        assertThat(reloaded.contains(DigestUtils.sha256("fox")), is(true));
+        assertThat(ReferentialSnapshot.read(reloaded.getSnapshotFile(), Files.size(data), Files.getLastModifiedTime(data))
+            .contains(DigestUtils.sha256("fox")), is(true));
+    }
+
+    @Test
+    public void corruptedSnapshotFallsBackToTextFile() throws IOException {
+        final Path snapshot = Referential.load(hashPath, APP).getSnapshotFile();
+        final byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshot, bytes);
+        final Referential reloaded = Referential.load(hashPath, APP);
+        assertThat(reloaded.contains(DigestUtils.sha256("brown")), is(true));
+        assertThat(reloaded.size(), is(2));
+        assertThat(Files.readAllBytes(snapshot)[bytes.length - 1] == bytes[bytes.length - 1], is(false));
+    }
+
+    @Test
+    public void watcherRefreshesOnAppend() throws Exception {
+        final Referential referential = Referential.load(hashPath, APP);
+        try (ReferentialWatcher watcher = new ReferentialWatcher(temporaryFolder.getRoot().toPath())) {
+            watcher.register(referential);
+            append(DigestUtils.sha256Hex("fox") + "\n");
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (!referential.contains(DigestUtils.sha256("fox")) && System.nanoTime() < deadline) {
+                Thread.sleep(50L);
+            }
+            assertThat(referential.contains(DigestUtils.sha256("fox")), is(true));
+        }
+    }
+
+    @Test
+    public void watcherReloadsRewrittenTokenShape() throws Exception {
+        final Path stats = TokenShape.statsPathFor(data);
+        TokenShape.of(Arrays.asList("brown", "river")).write(stats);
+        final Referential referential = Referential.load(hashPath, APP);
+        assertThat(referential.getTokenShape().getMaxLength(), is(5));
+        try (ReferentialWatcher watcher = new ReferentialWatcher(temporaryFolder.getRoot().toPath())) {
+            watcher.register(referential);
+            TokenShape.of(Arrays.asList("brown", "river", "kingfisher")).write(stats);
+            Files.setLastModifiedTime(stats, FileTime.fromMillis(Files.getLastModifiedTime(data).toMillis() + 1000L));
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            // the shape is dropped while the sidecar is half written
+            while ((referential.getTokenShape() == null || referential.getTokenShape().getMaxLength() != 10)
+                && System.nanoTime() < deadline) {
+                Thread.sleep(50L);
+            }
+            assertThat(referential.getTokenShape().getMaxLength(), is(10));
+            assertThat(referential.getReloads().getValue(), is(1L));
+        }
+    }
+
+    private void append(final String content) throws IOException {
+        Files.write(data, content.getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+    }
+}
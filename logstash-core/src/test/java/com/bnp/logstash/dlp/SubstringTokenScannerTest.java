@@ -0,0 +1,87 @@
+package com.bnp.logstash.dlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public final class SubstringTokenScannerTest {
+
+    @Test
+    public void masksValuesEmbeddedInLongerTokens() {
+        final List<String> values = Arrays.asList("4970123412341234", "bob");
+        assertThat(scan(values, "GET /cards/4970123412341234/owner?name=bob&x=1"),
+            is("GET /cards/################/owner?name=###&x=1"));
+        assertThat(scan(values, "card=4970123412341234,user=bobby"), is("card=################,user=###by"));
+    }
+
+    @Test
+    public void preservesMessageWithoutValues() {
+        final List<String> values = Arrays.asList("brown", "4970");
+        for (final String message : Arrays.asList("", " ", "bro", "  a  b\t\tc \r\n", "brow n 497 0", "a　b")) {
+            assertThat(scan(values, message), is(message));
+        }
+    }
+
+    @Test
+    public void prefersLongestValueAndNeverOverlaps() {
+        assertThat(scan(Arrays.asList("abc", "abcdef", "efgh", "gh"), "xabcdefgh"), is("x########"));
+        assertThat(scan(Arrays.asList("aa"), "aaaaa"), is("####a"));
+    }
+
+    @Test
+    public void onlyConfirmsWindowsOfTheValuesShape() {
+        final List<String> values = Arrays.asList("4970", "1234");
+        final List<String> windows = new ArrayList<>();
+        SubstringTokenScanner.of(TokenShape.of(values), null).scan("x=49701234;y=5555", (message, start, end) -> {
+            windows.add(message.subSequence(start, end).toString());
+            return values.contains(message.subSequence(start, end).toString());
+        }, TokenMaskers.FULL_MASKER, new StringBuilder());
+        assertThat(windows, is(Arrays.asList("4970", "1234")));
+    }
+
+    @Test
+    public void unprunedShapeFindsValuesAddedAfterTheSidecar() {
+        final TokenShape shape = TokenShape.of(Arrays.asList("4970", "123456"));
+        // a value of another length and character class added to the referential later
+        final List<String> values = Arrays.asList("4970", "123456", "ab_cd");
+        assertThat(scan(shape, values, "x=ab_cd;y=4970"), is("x=ab_cd;y=####"));
+        assertThat(scan(shape.unpruned(), values, "x=ab_cd;y=4970"), is("x=#####;y=####"));
+    }
+
+    @Test
+    public void confirmsWholeTokensOfLengthsTheShapeDoesNotKnow() {
+        final TokenShape shape = TokenShape.of(Arrays.asList("4970", "123456"));
+        final List<String> values = Arrays.asList("4970", "123456", "kingfisher", "ab");
+        final DelimiterTokenScanner tokens = new DelimiterTokenScanner(DelimiterTokenScanner.DEFAULT_DELIMITERS);
+        final StringBuilder out = new StringBuilder();
+        SubstringTokenScanner.of(shape, tokens, true).scan("x=kingfisher;y=ab49701;z=xkingfisher ab",
+            (m, start, end) -> values.contains(m.subSequence(start, end).toString()), TokenMaskers.FULL_MASKER, out);
+        assertThat(out.toString(), is("x=##########;y=ab####1;z=xkingfisher ##"));
+        assertThat(scan(shape, values, "x=kingfisher;y=ab"), is("x=kingfisher;y=ab"));
+    }
+
+    @Test
+    public void fallsBackWithoutUsableShape() {
+        final TokenScanner fallback = SpaceTokenScanner.INSTANCE;
+        assertThat(SubstringTokenScanner.of(null, fallback), sameInstance(fallback));
+        assertThat(SubstringTokenScanner.of(new TokenShape(1, Integer.MAX_VALUE, TokenShape.ALL_CLASSES), fallback),
+            sameInstance(fallback));
+    }
+
+    private static String scan(final List<String> values, final String message) {
+        return scan(TokenShape.of(values), values, message);
+    }
+
+    private static String scan(final TokenShape shape, final List<String> values, final String message) {
+        final StringBuilder out = new StringBuilder();
+        SubstringTokenScanner.of(shape, null).scan(message,
+            (m, start, end) -> values.contains(m.subSequence(start, end).toString()), TokenMaskers.FULL_MASKER, out);
+        return out.toString();
+    }
+}
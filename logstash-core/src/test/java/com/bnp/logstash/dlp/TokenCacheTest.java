@@ -0,0 +1,47 @@
+package com.bnp.logstash.dlp;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public final class TokenCacheTest {
+
+    @Test
+    public void findsAddedTokensInsideLargerMessages() {
+        final TokenCache cache = new TokenCache(16);
+        final String message = "the quick fox";
+        cache.add(TokenCache.hash(message, 4, 9), message, 4, 9);
+        assertThat(cache.contains(TokenCache.hash("quick", 0, 5), "quick", 0, 5, 0L), is(true));
+        assertThat(cache.contains(TokenCache.hash(message, 0, 3), message, 0, 3, 0L), is(false));
+    }
+
+    @Test
+    public void generationChangeEmptiesTheCache() {
+        final TokenCache cache = new TokenCache(16);
+        cache.add(TokenCache.hash("fox", 0, 3), "fox", 0, 3);
+        assertThat(cache.contains(TokenCache.hash("fox", 0, 3), "fox", 0, 3, 1L), is(false));
+        assertThat(cache.contains(TokenCache.hash("fox", 0, 3), "fox", 0, 3, 1L), is(false));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTokenOfASet() {
+        final TokenCache cache = new TokenCache(2);
+        assertThat(cache.capacity(), is(2));
+        add(cache, "a");
+        add(cache, "b");
+        assertThat(contains(cache, "a"), is(true));
+        add(cache, "c");
+        assertThat(contains(cache, "a"), is(true));
+        assertThat(contains(cache, "b"), is(false));
+        assertThat(contains(cache, "c"), is(true));
+    }
+
+    private static void add(final TokenCache cache, final String token) {
+        cache.add(TokenCache.hash(token, 0, token.length()), token, 0, token.length());
+    }
+
+    private static boolean contains(final TokenCache cache, final String token) {
+        return cache.contains(TokenCache.hash(token, 0, token.length()), token, 0, token.length(), 0L);
+    }
+}
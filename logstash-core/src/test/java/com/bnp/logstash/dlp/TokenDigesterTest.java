@@ -0,0 +1,56 @@
+package com.bnp.logstash.dlp;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TokenDigesterTest {
+
+    private static final List<String> TOKENS = Arrays.asList(
+        "", "brown", "FR7630006000011234567890189", "é€", "😀x", "lone\uD800", "\uDC00lone", "\uD83D", "a߿bࠀc"
+    );
+
+    @Test
+    public void digestsMatchDigestUtils() {
+        final TokenDigester sha256 = new TokenDigester(TokenDigester.SHA256);
+        final TokenDigester sha1 = new TokenDigester(TokenDigester.SHA1);
+        final TokenDigester sha512 = new TokenDigester(TokenDigester.SHA512);
+        final TokenDigester md5 = new TokenDigester(TokenDigester.MD5);
+        for (final String token : TOKENS) {
+            assertArrayEquals(token, DigestUtils.sha256(token), sha256.digest(token, 0, token.length()));
+            assertArrayEquals(token, DigestUtils.sha1(token), sha1.digest(token, 0, token.length()));
+            assertArrayEquals(token, DigestUtils.sha512(token), sha512.digest(token, 0, token.length()));
+            assertArrayEquals(token, DigestUtils.md5(token), md5.digest(token, 0, token.length()));
+        }
+    }
+
+    @Test
+    public void digestsRangeOfMessage() {
+        final TokenDigester digester = new TokenDigester(TokenDigester.SHA256);
+        final String message = "The quick brown fox";
+        assertArrayEquals(DigestUtils.sha256("brown"), digester.digest(message, 10, 15));
+    }
+
+    @Test
+    public void hexDigestsMatchDigestUtils() {
+        final TokenDigester digester = new TokenDigester(TokenDigester.MD5);
+        for (final String value : Arrays.asList("", "brown", "4970é", "😀x")) {
+            assertEquals(DigestUtils.md5Hex(value), digester.hexDigest(value));
+            final StringBuilder out = new StringBuilder();
+            digester.appendHexDigest("[" + value + "]", 1, value.length() + 1, out);
+            assertEquals(DigestUtils.md5Hex(value), out.toString());
+        }
+    }
+
+    @Test
+    public void unknownAlgorithmFallsBackToSha256() {
+        final TokenDigester digester = new TokenDigester("CRC32");
+        assertEquals(32, digester.digestLength());
+        assertArrayEquals(DigestUtils.sha256("brown"), digester.digest("brown", 0, 5));
+    }
+}
@@ -0,0 +1,53 @@
+package com.bnp.logstash.dlp;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public final class TokenMaskersTest {
+
+    @Test
+    public void fullMaskIsIdenticalToReplaceAll() {
+        for (final String token : new String[]{"", "brown", "4970é", "a\nb", "😀x", "x \r\n"}) {
+            assertThat(mask(TokenMaskers.FULL_MASKER, token), is(token.replaceAll(".", "#")));
+        }
+    }
+
+    @Test
+    public void keepLastKeepsTrailingCodePoints() {
+        final TokenMasker masker = TokenMaskers.keepLast(4);
+        assertThat(mask(masker, "4970123456781234"), is("############1234"));
+        assertThat(mask(masker, "abc😀x😀"), is("##c😀x😀"));
+        assertThat(mask(masker, "1234"), is("####"));
+        assertThat(mask(masker, "😀"), is("#"));
+        assertThat(mask(TokenMaskers.keepLast(0), "brown"), is("#####"));
+    }
+
+    @Test
+    public void fixedLengthHidesTokenLength() {
+        final TokenMasker masker = TokenMaskers.fixedLength(3);
+        assertThat(mask(masker, "brown"), is("###"));
+        assertThat(mask(masker, "a"), is("###"));
+    }
+
+    @Test
+    public void hashWritesReferentialDigest() {
+        final TokenDigester digester = new TokenDigester(TokenDigester.SHA256);
+        final TokenMasker masker = TokenMaskers.of(TokenMaskers.HASH, 0, () -> digester);
+        assertThat(mask(masker, "4970é"), is(DigestUtils.sha256Hex("4970é")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownStrategy() {
+        TokenMaskers.of("partial", 4, () -> null);
+    }
+
+    private static String mask(final TokenMasker masker, final String token) {
+        final StringBuilder out = new StringBuilder(">");
+        final String message = "[" + token + "]";
+        masker.mask(message, 1, message.length() - 1, out);
+        return out.substring(1);
+    }
+}
@@ -0,0 +1,82 @@
+package com.bnp.logstash.dlp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public final class TokenShapeTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void acceptsOnlyTokensOfTheValuesShape() {
+        final TokenShape shape = TokenShape.of(Arrays.asList("4970123412341234", "FR7630006000011234567890189"));
+        assertThat(shape.getMinLength(), is(16));
+        assertThat(shape.getMaxLength(), is(27));
+        assertThat(shape.getClasses(), is(TokenShape.DIGIT | TokenShape.UPPER));
+        assertThat(accepts(shape, "4970999988887777"), is(true));
+        assertThat(accepts(shape, "GB29NWBK60161331926819"), is(true));
+        assertThat(accepts(shape, "a"), is(false));
+        assertThat(accepts(shape, "4970-9999-8888-7777"), is(false));
+        assertThat(accepts(shape, "gb29nwbk60161331926819"), is(false));
+        assertThat(accepts(shape, "4970999988887777999988887777"), is(false));
+    }
+
+    @Test
+    public void roundTripsThroughSidecar() throws IOException {
+        final Path values = temporaryFolder.newFile("values.txt").toPath();
+        Files.write(values, Arrays.asList("brown", "", "Ré-7"), StandardCharsets.UTF_8);
+        final Path stats = temporaryFolder.getRoot().toPath().resolve("app" + TokenShape.STATS_EXTENSION);
+        final TokenShape written = TokenShape.convert(values, stats);
+        final TokenShape read = TokenShape.read(stats);
+        assertThat(read.getMinLength(), is(4));
+        assertThat(read.getMaxLength(), is(5));
+        assertThat(read.getClasses(), is(written.getClasses()));
+        assertThat(read.getClasses(), is(TokenShape.ALL_CLASSES));
+    }
+
+    @Test
+    public void sidecarKeepsWindowLengthsAndFingerprints() throws IOException {
+        final Path stats = temporaryFolder.getRoot().toPath().resolve("windows" + TokenShape.STATS_EXTENSION);
+        TokenShape.of(Arrays.asList("4970123412341234", "bob", "alice")).write(stats);
+        final TokenShape read = TokenShape.read(stats);
+        assertThat(read.windowLengths(), is(new int[] {16, 5, 3}));
+        assertThat(read.getFingerprints().mightContain(WindowFingerprints.hash("alice", 0, 5), 5), is(true));
+        assertThat(new TokenShape(2, 4, TokenShape.DIGIT).windowLengths(), is(new int[] {4, 3, 2}));
+        assertThat(new TokenShape(0, Integer.MAX_VALUE, TokenShape.DIGIT).windowLengths(), is(nullValue()));
+    }
+
+    @Test
+    public void missingKeysDoNotPrune() throws IOException {
+        final Path stats = temporaryFolder.newFile("partial" + TokenShape.STATS_EXTENSION).toPath();
+        Files.write(stats, Collections.singletonList("min_length=2"), StandardCharsets.ISO_8859_1);
+        final TokenShape shape = TokenShape.read(stats);
+        assertThat(accepts(shape, "a"), is(false));
+        assertThat(accepts(shape, "any token, even long ones é"), is(true));
+        assertThat(TokenShape.read(temporaryFolder.getRoot().toPath().resolve("missing.stats")), is(nullValue()));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownClasses() throws IOException {
+        final Path stats = temporaryFolder.newFile("invalid" + TokenShape.STATS_EXTENSION).toPath();
+        Files.write(stats, Collections.singletonList("char_classes=digit,emoji"), StandardCharsets.ISO_8859_1);
+        TokenShape.read(stats);
+    }
+
+    private static boolean accepts(final TokenShape shape, final String token) {
+        final String message = " " + token + " ";
+        return shape.accepts(message, 1, message.length() - 1);
+    }
+}
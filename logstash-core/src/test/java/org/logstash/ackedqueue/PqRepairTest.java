@@ -15,6 +15,8 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.logstash.ackedqueue.io.MmapPageIOV3;
+import org.logstash.ackedqueue.io.PageCodec;
 
 import static org.logstash.ackedqueue.QueueTestHelpers.computeCapacityForMmapPageIO;
 
@@ -75,6 +77,24 @@ public final class PqRepairTest {
         verifyQueue(0, 1, 4, 5);
     }
 
+    @Test
+    public void testRecreateMissingCheckPointOfCompressedPage() throws Exception {
+        dataPath = temporaryFolder.newFolder("compressed").toPath();
+        testSettings = SettingsImpl.builder(TestSettings.persistedQueueSettings(
+            computeCapacityForMmapPageIO(TEST_ELEMENTS.get(0), 4), dataPath.toString()
+        )).compression(PageCodec.LZ4).build();
+        try (final Queue q = new Queue(testSettings)) {
+            q.open();
+            for (final Queueable e : TEST_ELEMENTS) {
+                q.write(e);
+            }
+        }
+        Assertions.assertThat(QueueUpgrade.pageVersion(dataPath.resolve("page.1"))).isEqualTo(MmapPageIOV3.VERSION_THREE);
+        Files.delete(dataPath.resolve("checkpoint.1"));
+        PqRepair.repair(dataPath);
+        verifyQueue();
+    }
+
     private void verifyQueue() throws IOException {
         verifyQueue(IntStream.range(0, 6).toArray());
     }
@@ -1,13 +1,20 @@
 package org.logstash.ackedqueue;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
@@ -24,7 +31,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.Ignore;
 import org.junit.rules.TemporaryFolder;
+import org.logstash.ackedqueue.io.FileCheckpointIO;
 import org.logstash.ackedqueue.io.MmapPageIOV2;
+import org.logstash.ackedqueue.io.MmapPageIOV3;
+import org.logstash.ackedqueue.io.PageCodec;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -225,6 +235,227 @@ public class QueueTest {
         }
     }
 
+    @Test
+    public void batchWriteSpansPages() throws IOException {
+        List<Queueable> elements = Arrays.asList(new StringElement("foobarbaz1"), new StringElement("foobarbaz2"),
+            new StringElement("foobarbaz3"), new StringElement("foobarbaz4"), new StringElement("foobarbaz5"));
+        try (Queue q = new Queue(
+            TestSettings.persistedQueueSettings(computeCapacityForMmapPageIO(elements.get(0), 2), dataPath))) {
+            q.open();
+
+            assertThat(q.write(elements), is(5L));
+
+            // total of 3 pages: 2 full tail pages and 1 head page
+            assertThat(q.tailPages.size(), is(2));
+            assertThat(q.headPage.getElementCount(), is(1));
+            assertThat(q.getUnreadCount(), is(5L));
+
+            final List<String> read = new ArrayList<>();
+            for (Batch b = q.nonBlockReadBatch(10); b != null; b = q.nonBlockReadBatch(10)) {
+                b.getElements().forEach(e -> read.add(e.toString()));
+                b.close();
+            }
+            assertThat(read, is(Arrays.asList("foobarbaz1", "foobarbaz2", "foobarbaz3", "foobarbaz4", "foobarbaz5")));
+            assertThat(q.write(Collections.singletonList(new StringElement("foobarbaz6"))), is(6L));
+            assertThat(q.write(Collections.emptyList()), is(6L));
+        }
+    }
+
+    @Test
+    public void batchWriteIsRecoveredAfterReopen() throws IOException {
+        final List<Queueable> elements = new ArrayList<>();
+        for (int i = 0; i < 125; i++) {
+            elements.add(new StringElement("element" + i));
+        }
+        final Settings settings = SettingsImpl.builder(TestSettings.persistedQueueSettings(
+            computeCapacityForMmapPageIO(elements.get(0), 50), dataPath)).checkpointMaxWrites(1).build();
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            q.write(elements);
+            // checkpoints are written once per page touched by the batch
+            assertThat(q.headPage.lastCheckpoint.getElementCount(), is(q.headPage.getElementCount()));
+        }
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            assertThat(q.getUnreadCount(), is(125L));
+            try (Batch b = q.readBatch(125, 500L)) {
+                assertThat(b.getElements().get(0).toString(), is("element0"));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void batchWriteRejectsElementsBiggerThanPage() throws IOException {
+        try (Queue q = new Queue(TestSettings.persistedQueueSettings(MmapPageIOV2.MIN_CAPACITY + 8, dataPath))) {
+            q.open();
+            q.write(Arrays.asList(new StringElement("a"), new StringElement("foobarbaz1foobarbaz1")));
+        }
+    }
+
+    @Test(timeout = 50_000)
+    public void concurrentTailPageReadsAndWrites() throws Exception {
+        final Queueable element = new StringElement("foobarbaz");
+        final int total = 2000;
+        final int writers = 2;
+        final ExecutorService writerPool = Executors.newFixedThreadPool(writers);
+        try (Queue q = new Queue(
+            TestSettings.persistedQueueSettings(computeCapacityForMmapPageIO(element, 10), dataPath))) {
+            q.open();
+            // a backlog spread over tail pages
+            for (int i = 0; i < total / 2; i++) {
+                q.write(new StringElement(String.format("backlog%05d", i)));
+            }
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                final int writer = i;
+                futures.add(writerPool.submit(() -> {
+                    for (int j = 0; j < total / 2 / writers; j++) {
+                        q.write(new StringElement(String.format("writer%d-%04d", writer, j)));
+                    }
+                    return null;
+                }));
+            }
+            final List<String> read = new ArrayList<>();
+            while (read.size() < total) {
+                try (Batch b = q.readBatch(7, 500L)) {
+                    for (Queueable e : b.getElements()) {
+                        read.add(e.toString());
+                    }
+                }
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            // every element is read once, the backlog first, whether it is on a tail page or the head page
+            assertThat(read.size(), is(total));
+            for (int i = 0; i < total / 2; i++) {
+                assertThat(read.get(i), is(String.format("backlog%05d", i)));
+            }
+            assertThat(new HashSet<>(read).size(), is(total));
+            assertThat(q.getUnreadCount(), is(0L));
+            assertThat(q.unreadTailPages.isEmpty(), is(true));
+            assertThat(q.getUnackedCount(), is(0L));
+        } finally {
+            writerPool.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 50_000)
+    public void closeUnblocksWaitingReader() throws Exception {
+        final Queue q = new Queue(TestSettings.persistedQueueSettings(100, dataPath));
+        q.open();
+        final Future<Batch> read = executor.submit(() -> q.readBatch(1, TimeUnit.MINUTES.toMillis(10L)));
+        // give the reader time to block on the empty head page
+        Thread.sleep(200L);
+        q.close();
+        assertThat(read.get(10L, TimeUnit.SECONDS).size(), is(0));
+    }
+
+    @Test(timeout = 50_000)
+    public void groupCommitSharesFlushesBetweenWriters() throws Exception {
+        final int writers = 4;
+        final int writesPerWriter = 50;
+        final Settings settings = SettingsImpl.builder(TestSettings.persistedQueueSettings(100 * 1024, dataPath))
+            .groupCommitLatency(20L).build();
+        final ExecutorService writerPool = Executors.newFixedThreadPool(writers);
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                futures.add(writerPool.submit(() -> {
+                    for (int j = 0; j < writesPerWriter; j++) {
+                        final long seqNum = q.write(new StringElement("foobarbaz"));
+                        // a group commit write only returns once its element is checkpointed
+                        assertThat(q.headPage.lastCheckpoint.maxSeqNum() >= seqNum, is(true));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            assertThat(q.getFlushedEventCount(), is((long) writers * writesPerWriter));
+            assertThat(q.getFlushCount() < writers * writesPerWriter, is(true));
+        } finally {
+            writerPool.shutdownNow();
+        }
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            assertThat(q.getUnreadCount(), is((long) writers * writesPerWriter));
+        }
+    }
+
+    @Test(timeout = 50_000)
+    public void groupCommitPersistsBatchWrites() throws IOException {
+        final List<Queueable> elements = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            elements.add(new StringElement("element" + i));
+        }
+        final Settings settings = SettingsImpl.builder(TestSettings.persistedQueueSettings(100 * 1024, dataPath))
+            .groupCommitLatency(1L).build();
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            final long seqNum = q.write(elements);
+            assertThat(q.headPage.lastCheckpoint.maxSeqNum(), is(seqNum));
+            assertThat(q.getFlushCount(), is(1L));
+            assertThat(q.getFlushedEventCount(), is(10L));
+        }
+    }
+
+    @Test(timeout = 50_000)
+    public void groupCommitFlushesOnceAllWritersWait() throws IOException {
+        // a lone writer never waits for the latency, no other write can share its flush
+        final Settings settings = SettingsImpl.builder(TestSettings.persistedQueueSettings(100 * 1024, dataPath))
+            .groupCommitLatency(TimeUnit.MINUTES.toMillis(10L)).build();
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            for (int i = 0; i < 3; i++) {
+                final long seqNum = q.write(new StringElement("foobarbaz"));
+                assertThat(q.headPage.lastCheckpoint.maxSeqNum(), is(seqNum));
+            }
+            assertThat(q.getFlushCount(), is(3L));
+        }
+    }
+
+    @Test(timeout = 50_000)
+    public void groupCommitFlushesWhileWritersReplacePagesAndReadersAck() throws Exception {
+        // the flusher persists the head page outside of the queue lock while writers fill and replace head pages
+        // and a reader acks, forcing checkpoints of its own
+        final int writers = 4;
+        final int writesPerWriter = 200;
+        final Queueable element = new StringElement("foobarbaz");
+        final Settings settings = SettingsImpl.builder(
+            TestSettings.persistedQueueSettings(computeCapacityForMmapPageIO(element, 10), dataPath))
+            .groupCommitLatency(1L).checkpointMaxAcks(3).build();
+        final ExecutorService writerPool = Executors.newFixedThreadPool(writers);
+        long acked = 0L;
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                futures.add(writerPool.submit(() -> {
+                    for (int j = 0; j < writesPerWriter; j++) {
+                        q.write(element);
+                    }
+                    return null;
+                }));
+            }
+            while (acked < writers * writesPerWriter / 2) {
+                try (Batch b = q.readBatch(7, 500L)) {
+                    acked += b.size();
+                }
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            writerPool.shutdownNow();
+        }
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            assertThat(q.getUnreadCount(), is(writers * writesPerWriter - acked));
+        }
+    }
 
     @Test
     public void writeMultiPageWithInOrderAcking() throws IOException {
@@ -1014,6 +1245,183 @@ public class QueueTest {
         }
     }
 
+    @Test
+    public void compressionMigratesExistingPages() throws IOException {
+        final List<Queueable> elements = new ArrayList<>();
+        for (int i = 0; i < 35; i++) {
+            elements.add(new StringElement(String.format("{\"message\":\"GET /index.html HTTP/1.1 200\",\"id\":%04d}", i)));
+        }
+        final Settings uncompressed =
+            TestSettings.persistedQueueSettings(computeCapacityForMmapPageIO(elements.get(0), 10), dataPath);
+        try (Queue q = new Queue(uncompressed)) {
+            q.open();
+            for (final Queueable e : elements.subList(0, 25)) {
+                q.write(e);
+            }
+        }
+        assertThat(QueueUpgrade.pageVersion(Paths.get(dataPath, "page.0")), is(MmapPageIOV2.VERSION_TWO));
+
+        final Settings compressed = SettingsImpl.builder(uncompressed).compression(PageCodec.LZ4).build();
+        try (Queue q = new Queue(compressed)) {
+            q.open();
+            assertThat(QueueUpgrade.pageVersion(Paths.get(dataPath, "page.0")), is(MmapPageIOV3.VERSION_THREE));
+            assertThat(QueueUpgrade.pageVersion(Paths.get(dataPath, "page.1")), is(MmapPageIOV3.VERSION_THREE));
+            assertThat(q.getUnreadCount(), is(25L));
+            for (final Queueable e : elements.subList(25, 30)) {
+                q.write(e);
+            }
+        }
+        assertThat(Paths.get(dataPath, ".migration").toFile().exists(), is(false));
+
+        // pages keep their format when compression is turned off again
+        try (Queue q = new Queue(uncompressed)) {
+            q.open();
+            for (final Queueable e : elements.subList(30, 35)) {
+                q.write(e);
+            }
+            final List<Queueable> read = new ArrayList<>();
+            Batch b;
+            while ((b = q.nonBlockReadBatch(7)) != null) {
+                read.addAll(b.getElements());
+                b.close();
+            }
+            assertThat(read, is(elements));
+        }
+    }
+
+    @Test(timeout = 50_000)
+    public void fullyAckedPageFileIsReusedForANewHeadPage() throws Exception {
+        final Queueable element = new StringElement("foobarba0");
+        final Settings settings =
+            TestSettings.persistedQueueSettings(computeCapacityForMmapPageIO(element, 2), dataPath);
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            q.write(new StringElement("foobarba1"));
+            q.write(new StringElement("foobarba2"));
+            final Object pageFileKey = fileKey("page.0");
+            try (Batch b = q.nonBlockReadBatch(2)) {
+                assertThat(b.size(), is(2));
+            }
+            // page.0 is full and fully acked, its file is moved to the page pool
+            q.write(new StringElement("foobarba3"));
+            assertThat(Paths.get(dataPath, "page.0").toFile().exists(), is(false));
+
+            // wait for the pool to zero the page.0 file and make it a spare
+            final Path poolPath = Paths.get(dataPath, PagePool.POOL_DIR);
+            while (!spareFileKeys(poolPath).contains(pageFileKey)) {
+                Thread.sleep(10L);
+            }
+
+            // page.1 is full and not fully acked, the new head page takes the page.0 file
+            q.write(new StringElement("foobarba4"));
+            q.write(new StringElement("foobarba5"));
+            assertThat(fileKey("page.2"), is(pageFileKey));
+        }
+
+        // nothing of the former page.0 content is recovered
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            assertThat(q.getUnreadCount(), is(3L));
+            final List<Queueable> read = new ArrayList<>();
+            Batch b;
+            while ((b = q.nonBlockReadBatch(10)) != null) {
+                read.addAll(b.getElements());
+                b.close();
+            }
+            assertThat(read, is(Arrays.asList(
+                new StringElement("foobarba3"), new StringElement("foobarba4"), new StringElement("foobarba5")
+            )));
+        }
+    }
+
+    @Test(timeout = 50_000)
+    public void fullyAckedTailPageFileIsZeroedWhenRecycledOnOpen() throws Exception {
+        final Queueable element = new StringElement("foobarba0");
+        final Settings settings =
+            TestSettings.persistedQueueSettings(computeCapacityForMmapPageIO(element, 2), dataPath);
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            q.write(new StringElement("foobarba1"));
+            q.write(new StringElement("foobarba2"));
+            q.write(new StringElement("foobarba3"));
+        }
+        final Object pageFileKey = fileKey("page.0");
+
+        // page.0 was fully acked but not purged before the queue stopped, it is purged without being opened
+        final FileCheckpointIO checkpointIO = new FileCheckpointIO(Paths.get(dataPath));
+        final Checkpoint checkpoint = checkpointIO.read(checkpointIO.tailFileName(0));
+        checkpointIO.write(checkpointIO.tailFileName(0), 0, 0,
+            checkpoint.getMinSeqNum() + checkpoint.getElementCount(), checkpoint.getMinSeqNum(),
+            checkpoint.getElementCount());
+
+        try (Queue q = new Queue(settings)) {
+            q.open();
+            assertThat(q.getUnreadCount(), is(1L));
+            // the former page.0 file becomes a spare once zeroed, the new head page may already have taken it
+            final Path poolPath = Paths.get(dataPath, PagePool.POOL_DIR);
+            Path recycled;
+            while ((recycled = fileWithKey(poolPath, "spare.*", pageFileKey)) == null
+                && (recycled = fileWithKey(Paths.get(dataPath), "page.*", pageFileKey)) == null) {
+                Thread.sleep(10L);
+            }
+            final String content = new String(Files.readAllBytes(recycled), StandardCharsets.ISO_8859_1);
+            assertThat(content.contains("foobarba1"), is(false));
+            assertThat(content.contains("foobarba2"), is(false));
+        }
+    }
+
+    @Test
+    public void sparePageFilesAreKeptAcrossQueueRestarts() throws IOException {
+        final Queueable element = new StringElement("foobarbaz");
+        final Settings settings =
+            TestSettings.persistedQueueSettings(computeCapacityForMmapPageIO(element, 2), dataPath);
+        for (int i = 0; i < 3; i++) {
+            try (Queue q = new Queue(settings)) {
+                q.open();
+                q.write(element);
+                q.write(element);
+                try (Batch b = q.nonBlockReadBatch(2)) {
+                    assertThat(b.size(), is(2));
+                }
+            }
+        }
+        final File[] spares = Paths.get(dataPath, PagePool.POOL_DIR).toFile().listFiles();
+        assertThat(spares.length > 0 && spares.length <= PagePool.MAX_SPARE_PAGES, is(true));
+        for (final File spare : spares) {
+            assertThat(spare.getName().startsWith("spare."), is(true));
+            assertThat(spare.length(), is((long) computeCapacityForMmapPageIO(element, 2)));
+        }
+    }
+
+    private static List<Object> spareFileKeys(final Path poolPath) throws IOException {
+        final List<Object> keys = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(poolPath, "spare.*")) {
+            for (final Path file : files) {
+                keys.add(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+            }
+        } catch (NoSuchFileException e) {
+            // a spare was taken while listing
+        }
+        return keys;
+    }
+
+    private static Path fileWithKey(final Path dir, final String glob, final Object fileKey) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob)) {
+            for (final Path file : files) {
+                if (fileKey.equals(Files.readAttributes(file, BasicFileAttributes.class).fileKey())) {
+                    return file;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // moved while listing
+        }
+        return null;
+    }
+
+    private Object fileKey(final String fileName) throws IOException {
+        return Files.readAttributes(Paths.get(dataPath, fileName), BasicFileAttributes.class).fileKey();
+    }
+
     @Test(expected = IOException.class)
     public void throwsWhenNotEnoughDiskFree() throws Exception {
         Settings settings = SettingsImpl.builder(TestSettings.persistedQueueSettings(100, dataPath))
@@ -0,0 +1,92 @@
+package org.logstash.ackedqueue.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class Lz4PageCodecTest {
+
+    @Test
+    public void roundTripsCompressibleData() throws IOException {
+        final StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            json.append("{\"@timestamp\":\"2018-06-01T10:00:00.000Z\",\"message\":\"GET /index.html 200\",\"id\":")
+                .append(i).append('}');
+        }
+        final byte[] data = json.toString().getBytes(StandardCharsets.UTF_8);
+        final int compressed = assertRoundTrip(data);
+        assertThat(compressed < data.length / 5, is(true));
+    }
+
+    @Test
+    public void roundTripsIncompressibleData() throws IOException {
+        final byte[] data = new byte[10_000];
+        new Random(42L).nextBytes(data);
+        assertThat(assertRoundTrip(data) <= new Lz4PageCodec().maxCompressedLength(data.length), is(true));
+    }
+
+    @Test
+    public void roundTripsLongRunsAndShortInputs() throws IOException {
+        // runs longer than 15 + 255 bytes need several length continuation bytes
+        final byte[] run = new byte[5000];
+        Arrays.fill(run, (byte) 'a');
+        assertRoundTrip(run);
+        assertRoundTrip(new byte[0]);
+        assertRoundTrip("short".getBytes(StandardCharsets.UTF_8));
+        assertRoundTrip("abcdabcdabcdabcd".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void rejectsMalformedBlocks() {
+        final Lz4PageCodec codec = new Lz4PageCodec();
+        final byte[] data = "abcdabcdabcdabcdabcdabcdabcdabcd".getBytes(StandardCharsets.UTF_8);
+        final byte[] compressed = new byte[codec.maxCompressedLength(data.length)];
+        final int length = codec.compress(data, 0, data.length, compressed, 0);
+        try {
+            codec.decompress(compressed, 0, length - 2, new byte[data.length], 0, data.length);
+            fail("a truncated block must be rejected");
+        } catch (IOException expected) {
+            // expected
+        }
+        try {
+            codec.decompress(compressed, 0, length, new byte[data.length + 1], 0, data.length + 1);
+            fail("a block decompressing to an unexpected length must be rejected");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectsBlocksEndingInsideAMatch() {
+        // one literal then a match with an extended length, followed by bytes of the surrounding scratch array
+        final byte[] scratch = {(byte) 0x1F, 'a', 0x01, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00};
+        assertTruncated(scratch, 3);
+        assertTruncated(scratch, 4);
+    }
+
+    private static void assertTruncated(final byte[] src, final int length) {
+        try {
+            new Lz4PageCodec().decompress(src, 0, length, new byte[20], 0, 20);
+            fail("a block ending inside a match must be rejected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("malformed lz4 block: truncated"));
+        }
+    }
+
+    private static int assertRoundTrip(final byte[] data) throws IOException {
+        final Lz4PageCodec codec = new Lz4PageCodec();
+        final byte[] compressed = new byte[codec.maxCompressedLength(data.length) + 3];
+        // offsets other than 0 must be honoured
+        final int length = codec.compress(data, 0, data.length, compressed, 3);
+        final byte[] restored = new byte[data.length + 1];
+        codec.decompress(compressed, 3, length, restored, 1, data.length);
+        assertThat(Arrays.copyOfRange(restored, 1, restored.length), is(data));
+        return length;
+    }
+}
@@ -7,6 +7,11 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -39,4 +44,87 @@ public class MmapPageIOTest {
             assertThat(io2.getCapacity(), is(equalTo(ORIGINAL_CAPACITY)));
         }
     }
+
+    @Test
+    public void batchWriteIsRecoverable() throws IOException {
+        final List<byte[]> elements = Arrays.asList("foo".getBytes(StandardCharsets.UTF_8),
+            "barbaz".getBytes(StandardCharsets.UTF_8), "x".getBytes(StandardCharsets.UTF_8));
+        try (PageIO io1 = new MmapPageIOV2(0, 1024, dir)) {
+            io1.create();
+            io1.write(elements.subList(0, 1), 1L);
+            io1.write(elements.subList(1, 3), 2L);
+            assertThat(io1.getElementCount(), is(3));
+            assertThat(io1.getHead(), is(MmapPageIOV2.HEADER_SIZE + io1.persistedByteCount(3)
+                + io1.persistedByteCount(6) + io1.persistedByteCount(1)));
+        }
+
+        try (PageIO io2 = new MmapPageIOV2(0, 1024, dir)) {
+            io2.recover();
+            assertThat(io2.getMinSeqNum(), is(1L));
+            assertThat(io2.getElementCount(), is(3));
+            assertThat(new String(io2.read(2L, 2).getElements().get(1), StandardCharsets.UTF_8), is("x"));
+        }
+    }
+
+    @Test
+    public void compressedPageIsRecoverableAndSmaller() throws IOException {
+        final List<byte[]> elements = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            elements.add(String.format("{\"message\":\"GET /index.html 200\",\"id\":%d}", i)
+                .getBytes(StandardCharsets.UTF_8));
+        }
+        final int head;
+        try (PageIO io1 = new MmapPageIOV3(0, 1024 * 1024, dir, PageCodec.forName(PageCodec.LZ4))) {
+            io1.create();
+            io1.write(elements.get(0), 1L);
+            // spans several blocks
+            io1.write(elements.subList(1, elements.size()), 2L);
+            assertThat(io1.getElementCount(), is(elements.size()));
+            head = io1.getHead();
+        }
+        final int uncompressed = elements.stream().mapToInt(e -> new MmapPageIOV2(0, 0, dir).persistedByteCount(e.length)).sum();
+        assertThat(head < uncompressed / 4, is(true));
+
+        // the codec is read from the page header
+        try (PageIO io2 = new MmapPageIOV3(0, 1024 * 1024, dir)) {
+            io2.recover();
+            assertThat(io2.getMinSeqNum(), is(1L));
+            assertThat(io2.getElementCount(), is(elements.size()));
+            assertThat(io2.getHead(), is(head));
+            final List<byte[]> read = io2.read(2000L, 1500).getElements();
+            assertThat(read.size(), is(1001));
+            assertThat(read.get(0), is(elements.get(1999)));
+            assertThat(read.get(1000), is(elements.get(2999)));
+        }
+
+        try (PageIO io3 = new MmapPageIOV3(0, 1024 * 1024, dir)) {
+            io3.open(1L, 10);
+            assertThat(io3.read(10L, 5).getElements().size(), is(1));
+            assertThat(io3.read(1L, 1).getElements().get(0), is(elements.get(0)));
+        }
+    }
+
+    @Test
+    public void compressedPageRecoveryStopsAtCorruptBlock() throws IOException {
+        try (PageIO io1 = new MmapPageIOV3(0, 1024, dir, PageCodec.forName(PageCodec.LZ4))) {
+            io1.create();
+            io1.write("foo".getBytes(StandardCharsets.UTF_8), 1L);
+            io1.write("bar".getBytes(StandardCharsets.UTF_8), 2L);
+        }
+        // flip the first compressed byte of the second block
+        try (RandomAccessFile raf = new RandomAccessFile(dir.resolve("page.0").toFile(), "rw")) {
+            final long first = MmapPageIOV3.HEADER_SIZE;
+            raf.seek(first + MmapPageIOV3.SEQNUM_SIZE + MmapPageIOV3.COUNT_SIZE + MmapPageIOV3.LENGTH_SIZE);
+            final int firstCompressedLength = raf.readInt();
+            final long second = first + MmapPageIOV3.BLOCK_OVERHEAD + firstCompressedLength;
+            raf.seek(second + MmapPageIOV3.BLOCK_HEADER_SIZE);
+            final int b = raf.read();
+            raf.seek(second + MmapPageIOV3.BLOCK_HEADER_SIZE);
+            raf.write(b ^ 0xFF);
+        }
+        try (PageIO io2 = new MmapPageIOV3(0, 1024, dir)) {
+            io2.recover();
+            assertThat(io2.getElementCount(), is(1));
+        }
+    }
 }
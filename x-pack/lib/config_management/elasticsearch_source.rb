@@ -31,6 +31,8 @@ module LogStash
         queue.type
         queue.max_bytes
         queue.checkpoint.writes
+        queue.checkpoint.group_commit_latency
+        queue.compression
       )
 
       def initialize(settings)